@@ -1,12 +1,18 @@
 package org.zaploink.eclipse.pmd.acanda;
 
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.ui.IStartup;
+import org.zaploink.pmd.rules.intref.config.RuleConfigReader;
 
 public class FragmentActivator implements IStartup {
 
 	@Override
 	public void earlyStartup() {
-		// TODO set rule config selection strategy on Zaploink instance here
+		ProjectRuleConfigStrategy strategy = ProjectRuleConfigStrategy.getInstance();
+		RuleConfigReader.setStrategy(strategy);
+		ResourcesPlugin.getWorkspace().addResourceChangeListener(strategy, IResourceChangeEvent.POST_CHANGE
+				| IResourceChangeEvent.PRE_CLOSE | IResourceChangeEvent.PRE_DELETE);
 	}
 
 }
@@ -0,0 +1,134 @@
+package org.zaploink.eclipse.pmd.acanda;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.QualifiedName;
+import org.zaploink.pmd.rules.intref.config.RuleConfigData;
+import org.zaploink.pmd.rules.intref.config.RuleConfigReader;
+import org.zaploink.pmd.rules.intref.config.RuleConfigReader.RuleConfigReaderStrategy;
+import org.zaploink.pmd.rules.intref.config.RuleConfigReaderException;
+
+/**
+ * Assigns the source files of a project the rule config selected on its {@link ZaploinkPmdPropertyPage}. Source files
+ * of projects without a selection use the global rule config (see {@link RuleConfigReader.DefaultStrategy}).
+ *
+ * <p>
+ * The config file of each project is cached. The rule compiles each config file once and only checks it again after
+ * {@link RuleConfigReader#invalidate()}, which is called when a cached config file changes (resource change event) or
+ * the selection of a project changes, so saving a Java file does not reload anything.
+ */
+public class ProjectRuleConfigStrategy implements RuleConfigReaderStrategy, IResourceChangeListener {
+	static final QualifiedName CONFIG_PROPERTY = new QualifiedName("zaploink-pmd", "intref.config");
+
+	private static final ProjectRuleConfigStrategy INSTANCE = new ProjectRuleConfigStrategy();
+
+	// config file per project, empty if the project uses the global config
+	private final Map<IProject, Optional<Path>> configFiles = new ConcurrentHashMap<>();
+
+	private ProjectRuleConfigStrategy() {
+	}
+
+	public static ProjectRuleConfigStrategy getInstance() {
+		return INSTANCE;
+	}
+
+	@Override
+	public RuleConfigData readConfig() throws RuleConfigReaderException {
+		return RuleConfigReader.DEFAULT_STRATEGY.readConfig();
+	}
+
+	@Override
+	public Path getConfigFile() {
+		return RuleConfigReader.DEFAULT_STRATEGY.getConfigFile();
+	}
+
+	@Override
+	public Path getConfigFile(File sourceFile) {
+		IFile file = ResourcesPlugin.getWorkspace().getRoot()
+				.getFileForLocation(new org.eclipse.core.runtime.Path(sourceFile.getAbsolutePath()));
+		if (file == null) {
+			return null;
+		}
+		return this.configFiles.computeIfAbsent(file.getProject(), ProjectRuleConfigStrategy::readConfigFile)
+				.orElse(null);
+	}
+
+	private static Optional<Path> readConfigFile(IProject project) {
+		try {
+			String configPath = project.getPersistentProperty(CONFIG_PROPERTY);
+			if (configPath == null || configPath.trim().isEmpty()) {
+				return Optional.empty();
+			}
+			IPath location = project.getFile(configPath.trim()).getLocation();
+			return (location == null) ? Optional.empty() : Optional.of(location.toFile().toPath());
+		}
+		catch (CoreException ex) {
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Called when the config selection of a project has changed (or the project is closed or deleted).
+	 */
+	public void projectConfigChanged(IProject project) {
+		this.configFiles.remove(project);
+		RuleConfigReader.invalidate();
+	}
+
+	@Override
+	public void resourceChanged(IResourceChangeEvent event) {
+		if (event.getType() == IResourceChangeEvent.PRE_CLOSE || event.getType() == IResourceChangeEvent.PRE_DELETE) {
+			if (event.getResource() instanceof IProject) {
+				projectConfigChanged((IProject) event.getResource());
+			}
+			return;
+		}
+		Set<Path> cachedFiles = this.configFiles.values().stream()
+				.filter(Optional::isPresent)
+				.map(Optional::get)
+				.collect(Collectors.toSet());
+		if (event.getDelta() == null || cachedFiles.isEmpty()) {
+			return;
+		}
+		boolean[] changed = new boolean[1];
+		try {
+			event.getDelta().accept(delta -> {
+				IResource resource = delta.getResource();
+				if (resource.getType() == IResource.PROJECT) {
+					return this.configFiles.containsKey(resource); // only projects with a cached config file
+				}
+				if (resource.getType() == IResource.FILE) {
+					IPath location = resource.getLocation();
+					boolean markersOnly = delta.getKind() == IResourceDelta.CHANGED
+							&& delta.getFlags() == IResourceDelta.MARKERS;
+					if (!markersOnly && location != null && cachedFiles.contains(location.toFile().toPath())) {
+						changed[0] = true;
+					}
+					return false;
+				}
+				return !changed[0];
+			});
+		}
+		catch (CoreException ex) {
+			changed[0] = true; // check the config files anyway
+		}
+		if (changed[0]) {
+			RuleConfigReader.invalidate();
+		}
+	}
+}
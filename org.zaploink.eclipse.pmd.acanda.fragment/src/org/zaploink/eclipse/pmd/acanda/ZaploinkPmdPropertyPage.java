@@ -24,7 +24,7 @@ import org.eclipse.swt.widgets.Text;
 import org.eclipse.ui.IWorkbenchPropertyPage;
 import org.eclipse.ui.dialogs.FilteredResourcesSelectionDialog;
 import org.eclipse.ui.dialogs.PropertyPage;
-import org.zaploink.pmd.rules.intref.DomainConfig;
+import org.zaploink.pmd.rules.intref.config.RuleConfigReader;
 
 import com.google.common.base.Charsets;
 
@@ -32,7 +32,7 @@ import ch.acanda.eclipse.pmd.builder.PMDNature;
 
 public class ZaploinkPmdPropertyPage extends PropertyPage implements IWorkbenchPropertyPage {
 
-	private static final QualifiedName REF2INT_CONFIG = new QualifiedName("zaploink-pmd", "intref.config");
+	private static final QualifiedName REF2INT_CONFIG = ProjectRuleConfigStrategy.CONFIG_PROPERTY;
 
 	private Text ruleConfigPath;
 
@@ -44,6 +44,7 @@ public class ZaploinkPmdPropertyPage extends PropertyPage implements IWorkbenchP
 	@Override
 	public boolean performOk() {
 		setProperty(REF2INT_CONFIG, this.ruleConfigPath.getText());
+		ProjectRuleConfigStrategy.getInstance().projectConfigChanged(getProject());
 		return true;
 	}
 
@@ -151,7 +152,7 @@ public class ZaploinkPmdPropertyPage extends PropertyPage implements IWorkbenchP
 	private boolean probe(IFile ruleConfig) {
 		boolean ok;
 		try (BufferedReader r = new BufferedReader(new InputStreamReader(ruleConfig.getContents(), Charsets.UTF_8))) {
-			ok = (DomainConfig.readConfig(r) != null);
+			ok = (RuleConfigReader.DEFAULT_STRATEGY.readConfig(r) != null);
 		}
 		catch (Exception ex) {
 			// TODO: actually we should differentiate between "not a rule config" and "does not exist"
@@ -0,0 +1,104 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zaploink.pmd.rules.intref.ReferenceToInternalAnalyzer.Options;
+import org.zaploink.pmd.rules.intref.config.RuleConfigReader;
+
+/**
+ * {@link ReferenceToInternalAnalyzer} runs (one thread) over the JDK sources of <code>java.util</code>,
+ * <code>java.io</code> and <code>java.nio</code> in the directory given by <code>-p sources=...</code> (e.g. the
+ * extracted <code>src.zip</code> of a JDK 8), without an {@link AnalysisCache} (<code>off</code>) and with a cache that
+ * already holds the results of all files (<code>warm</code>, i.e. a run over an unchanged code base). The configs are
+ * the ones of {@link JdkSourcesBenchmark}. Time is reported per run over all files, including parsing.
+ *
+ * @author kvg
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class AnalysisCacheBenchmark {
+	private static final String[] PACKAGES = { "java/util", "java/io", "java/nio" };
+	private static final String JDK_CONFIG = "{ \"version\" : 1, \"automaticDomainRecognition\" : {"
+			+ " \"publicPackages\" : [ \"java\\\\.([^\\\\.]+)\" ],"
+			+ " \"privatePackages\" : [ \"java\\\\.([^\\\\.]+)\\\\..+\" ] } }";
+
+	@Param({ "" })
+	private String sources;
+
+	@Param({ "jdk", "acme" })
+	private String config;
+
+	@Param({ "off", "warm" })
+	private String cache;
+
+	private Path cacheDir;
+	private Path reportFile;
+	private ReferenceToInternalAnalyzer analyzer;
+
+	@Setup
+	public void setUp() throws IOException {
+		Path dir = Paths.get(this.sources);
+		if (!Files.isDirectory(dir)) {
+			throw new IllegalArgumentException("Not a source directory (-p sources=...): " + this.sources);
+		}
+		String json = "jdk".equals(this.config) ? JDK_CONFIG : new SyntheticConfig(1000, 0).getJson();
+		DomainResolver resolver = new DomainResolver(
+				RuleConfigReader.DEFAULT_STRATEGY.readConfig(new StringReader(json)));
+		ReferenceToInternal.Dependencies dependencies = new ReferenceToInternal.Dependencies(resolver);
+		if ("warm".equals(this.cache)) {
+			this.cacheDir = Files.createTempDirectory("ReferenceToInternal");
+			dependencies.analysisCache(AnalysisCache.open(this.cacheDir, resolver.getConfigFingerprint()));
+		}
+		ReferenceToInternal rule = new ReferenceToInternal(dependencies);
+		rule.setMessage("Reference to internal class of module ''{0}'': {1}");
+
+		this.reportFile = Files.createTempFile("ReferenceToInternal", ".txt");
+		String roots = Stream.of(PACKAGES).map(pkg -> dir.resolve(pkg).toString()).collect(Collectors.joining(","));
+		this.analyzer = new ReferenceToInternalAnalyzer(rule,
+				Options.parse(new String[] { "-d", roots, "-r", this.reportFile.toString(), "-threads", "1" }));
+		if (this.cacheDir != null) {
+			analyze(); // fills the cache
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(this.reportFile);
+		if (this.cacheDir != null) {
+			try (Stream<Path> files = Files.list(this.cacheDir)) {
+				for (Path file : files.collect(Collectors.toList())) {
+					Files.delete(file);
+				}
+			}
+			Files.delete(this.cacheDir);
+		}
+	}
+
+	@Benchmark
+	public int analyze() throws IOException {
+		return this.analyzer.analyze();
+	}
+}
@@ -0,0 +1,78 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.zaploink.pmd.rules.intref.config.RuleConfigData;
+
+/**
+ * Import resolution throughput of {@link DomainResolver} for configs of varying size, with and without resolution
+ * cache. Time is reported per resolved import.
+ *
+ * @author kvg
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DomainResolverBenchmark {
+	private static final int IMPORTS = 1000;
+
+	@Param({ "10", "100", "1000", "5000" })
+	private int domains;
+
+	@Param({ "0", "10", "50", "200" })
+	private int regexes;
+
+	@Param({ "10000", "0" })
+	private int cacheSize;
+
+	private RuleConfigData ruleConfig;
+	private DomainResolver resolver;
+	private String[] importedNames;
+	private int[] packageLengths;
+
+	@Setup
+	public void setUp() throws IOException {
+		SyntheticConfig config = new SyntheticConfig(this.domains, this.regexes);
+		this.ruleConfig = config.read();
+		this.resolver = new DomainResolver(this.ruleConfig, this.cacheSize);
+		this.importedNames = config.importedNames(IMPORTS, 42);
+		this.packageLengths = new int[IMPORTS];
+		for (int i = 0; i < IMPORTS; i++) {
+			this.packageLengths[i] = this.importedNames[i].lastIndexOf('.');
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(IMPORTS)
+	public void resolveImports(Blackhole bh) {
+		for (int i = 0; i < IMPORTS; i++) {
+			String importedName = this.importedNames[i];
+			if (this.resolver.mightHaveDomain(importedName)) {
+				bh.consume(this.resolver.resolve(importedName, this.packageLengths[i]));
+			}
+		}
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public DomainResolver compileConfig() {
+		return new DomainResolver(this.ruleConfig, this.cacheSize);
+	}
+}
@@ -0,0 +1,66 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.java.ast.ASTAnnotationTypeDeclaration;
+import net.sourceforge.pmd.lang.java.ast.ASTClassOrInterfaceDeclaration;
+import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
+import net.sourceforge.pmd.lang.java.ast.ASTEnumDeclaration;
+import net.sourceforge.pmd.lang.java.ast.ASTImportDeclaration;
+import net.sourceforge.pmd.lang.java.ast.ASTPackageDeclaration;
+import net.sourceforge.pmd.lang.java.ast.ASTTypeDeclaration;
+import net.sourceforge.pmd.lang.java.rule.AbstractJavaRule;
+
+/**
+ * The import-only pass of {@link ReferenceToInternal}, the baseline of the rule benchmarks: resolves the imports of a
+ * file and checks them against the domains of its top level types, without looking at the type bodies.
+ *
+ * @author kvg
+ */
+public final class ImportsOnlyRule extends AbstractJavaRule {
+	private final DomainResolver resolver;
+
+	public ImportsOnlyRule(DomainResolver resolver) {
+		this.resolver = resolver;
+		addRuleChainVisit(ASTCompilationUnit.class);
+	}
+
+	@Override
+	public Object visit(ASTCompilationUnit node, Object data) {
+		ASTPackageDeclaration packageDecl = node.getFirstChildOfType(ASTPackageDeclaration.class);
+		String packageName = (packageDecl == null) ? "" : packageDecl.getPackageNameImage();
+		List<ResolvedDomain> typeDomains = new ArrayList<>(1);
+		for (ASTTypeDeclaration typeDecl : node.findChildrenOfType(ASTTypeDeclaration.class)) {
+			Node type = declaredType(typeDecl);
+			if (type != null) {
+				typeDomains.add(this.resolver.resolveType(packageName, type.getImage()));
+			}
+		}
+		for (ASTImportDeclaration importDecl : node.findChildrenOfType(ASTImportDeclaration.class)) {
+			if (this.resolver.mightHaveDomain(DomainResolver.importedName(importDecl))) {
+				ResolvedDomain domain = this.resolver.resolveImport(importDecl);
+				for (ResolvedDomain typeDomain : typeDomains) {
+					if (domain.hasDomain() && !this.resolver.mayAccess(typeDomain, domain)) {
+						Object[] args = new Object[] { domain.getDomain(), importDecl.getImportedName() };
+						addViolation(data, importDecl, args);
+						break;
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	private static Node declaredType(ASTTypeDeclaration typeDecl) {
+		for (int i = 0; i < typeDecl.jjtGetNumChildren(); i++) {
+			Node child = typeDecl.jjtGetChild(i);
+			if (child instanceof ASTClassOrInterfaceDeclaration || child instanceof ASTEnumDeclaration
+					|| child instanceof ASTAnnotationTypeDeclaration) {
+				return child;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,221 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zaploink.pmd.rules.intref.config.RuleConfigReader;
+
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.lang.LanguageRegistry;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.LanguageVersionHandler;
+import net.sourceforge.pmd.lang.Parser;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.java.JavaLanguageModule;
+import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
+import net.sourceforge.pmd.lang.java.rule.AbstractJavaRule;
+
+/**
+ * {@link ReferenceToInternal} rule runs over real code: the JDK sources of <code>java.util</code>,
+ * <code>java.io</code> and <code>java.nio</code> (from the <code>src.zip</code> of the running JDK 8, or from the
+ * directory or zip file given by <code>-p sources=...</code>). With the <code>jdk</code> config, each top level
+ * package of <code>java</code> is a domain (its sub-packages are private), so most names are resolved. With the
+ * <code>acme</code> config, the domains are the ones of a code base that uses the JDK (1000 explicitly declared
+ * domains below <code>com.acme</code>), so no name of the JDK sources belongs to a domain. Time is reported per run
+ * over all files.
+ *
+ * <p>
+ * The rule cost is the time of a rule minus the time of the <code>none</code> rule (PMD applying a rule that does
+ * nothing). The cost of the <code>full</code> rule is compared to the cost of the <code>imports</code> rule, which only
+ * resolves and checks the imports (see {@link ImportsOnlyRule}): the difference divided by the number of files is what
+ * checking the type bodies costs per file. The <code>recording</code> rule is the full rule with an
+ * {@link AnalysisCache}, as in a PMD run over an unchanged code base: the results of the files are recorded by the
+ * first run, later runs find them cached (only with sources from a directory, the cache needs the source files). The
+ * rule reads its config once per JVM, hence every parameter combination runs in its own fork.
+ *
+ * @author kvg
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class JdkSourcesBenchmark {
+	private static final String CONFIG_PROP = "org.zaploink.pmd.intref.configFile";
+	private static final String[] PACKAGES = { "java/util/", "java/io/", "java/nio/" };
+	private static final String JDK_CONFIG = "{ \"version\" : 1, \"automaticDomainRecognition\" : {"
+			+ " \"publicPackages\" : [ \"java\\\\.([^\\\\.]+)\" ],"
+			+ " \"privatePackages\" : [ \"java\\\\.([^\\\\.]+)\\\\..+\" ] } }";
+
+	@Param({ "" })
+	private String sources;
+
+	@Param({ "jdk", "acme" })
+	private String config;
+
+	@Param({ "none", "imports", "full", "recording" })
+	private String rule;
+
+	private Path configFile;
+	private LanguageVersion languageVersion;
+	private LanguageVersionHandler handler;
+	private final List<String> fileNames = new ArrayList<>();
+	// the source files, null entries for files read from a zip file
+	private final List<File> sourceFiles = new ArrayList<>();
+	private final List<Node> compilationUnits = new ArrayList<>();
+	private RuleSets ruleSets;
+	private Path cacheDir;
+
+	@Setup
+	public void setUp() throws IOException {
+		this.languageVersion = LanguageRegistry.getLanguage(JavaLanguageModule.NAME).getDefaultVersion();
+		this.handler = this.languageVersion.getLanguageVersionHandler();
+		Path path = this.sources.isEmpty() ? Paths.get(System.getProperty("java.home"), "..", "src.zip")
+				: Paths.get(this.sources);
+		if (Files.isDirectory(path)) {
+			for (String pkg : PACKAGES) {
+				List<Path> files;
+				try (Stream<Path> walk = Files.walk(path.resolve(pkg))) {
+					files = walk.filter(f -> f.toString().endsWith(".java")).sorted().collect(Collectors.toList());
+				}
+				for (Path file : files) {
+					parse(path.relativize(file).toString(), Files.newBufferedReader(file, StandardCharsets.UTF_8));
+					this.sourceFiles.set(this.sourceFiles.size() - 1, file.toFile());
+				}
+			}
+		}
+		else {
+			try (ZipFile zip = new ZipFile(path.toFile())) {
+				for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();) {
+					ZipEntry entry = entries.nextElement();
+					if (entry.getName().endsWith(".java") && isIncluded(entry.getName())) {
+						parse(entry.getName(),
+								new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8));
+					}
+				}
+			}
+		}
+
+		String json = "jdk".equals(this.config) ? JDK_CONFIG : new SyntheticConfig(1000, 0).getJson();
+		this.configFile = Files.createTempFile("ReferenceToInternal", ".ruleConfig");
+		Files.write(this.configFile, json.getBytes(StandardCharsets.UTF_8));
+		System.setProperty(CONFIG_PROP, this.configFile.toString());
+		AbstractJavaRule benchmarkedRule;
+		if ("none".equals(this.rule)) {
+			benchmarkedRule = new NoRule();
+		}
+		else if ("imports".equals(this.rule)) {
+			benchmarkedRule = new ImportsOnlyRule(
+					new DomainResolver(RuleConfigReader.DEFAULT_STRATEGY.readConfig(new StringReader(json))));
+		}
+		else if ("recording".equals(this.rule)) {
+			DomainResolver resolver = new DomainResolver(
+					RuleConfigReader.DEFAULT_STRATEGY.readConfig(new StringReader(json)));
+			this.cacheDir = Files.createTempDirectory("ReferenceToInternal");
+			benchmarkedRule = new ReferenceToInternal(new ReferenceToInternal.Dependencies(resolver)
+					.analysisCache(AnalysisCache.open(this.cacheDir, resolver.getConfigFingerprint())));
+		}
+		else {
+			benchmarkedRule = new ReferenceToInternal();
+		}
+		benchmarkedRule.setMessage("Reference to internal class of module ''{0}'': {1}");
+		this.ruleSets = new RuleSets(RuleSet.createFor("benchmark", benchmarkedRule));
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(this.configFile);
+		if (this.cacheDir != null) {
+			try (Stream<Path> files = Files.list(this.cacheDir)) {
+				for (Path file : files.collect(Collectors.toList())) {
+					Files.delete(file);
+				}
+			}
+			Files.delete(this.cacheDir);
+		}
+	}
+
+	private static boolean isIncluded(String fileName) {
+		for (String pkg : PACKAGES) {
+			if (fileName.startsWith(pkg)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void parse(String fileName, Reader source) throws IOException {
+		try (Reader reader = source) {
+			Parser parser = this.handler.getParser(this.handler.getDefaultParserOptions());
+			Node compilationUnit = parser.parse(fileName, reader);
+			// scopes are needed to report violations
+			this.handler.getSymbolFacade().start(compilationUnit);
+			this.fileNames.add(fileName);
+			this.sourceFiles.add(null);
+			this.compilationUnits.add(compilationUnit);
+		}
+	}
+
+	/**
+	 * Applies the rule to the already parsed files (rule cost only).
+	 */
+	@Benchmark
+	public Report applyRule() {
+		RuleContext ctx = new RuleContext();
+		ctx.setReport(new Report());
+		ctx.setLanguageVersion(this.languageVersion);
+		this.ruleSets.start(ctx);
+		for (int i = 0; i < this.compilationUnits.size(); i++) {
+			ctx.setSourceCodeFilename(this.fileNames.get(i));
+			ctx.setSourceCodeFile(this.sourceFiles.get(i));
+			this.ruleSets.apply(this.compilationUnits.subList(i, i + 1), ctx, this.languageVersion.getLanguage());
+		}
+		this.ruleSets.end(ctx);
+		return ctx.getReport();
+	}
+
+	/**
+	 * A rule chain rule that does nothing: the cost of PMD applying a rule.
+	 */
+	public static final class NoRule extends AbstractJavaRule {
+		public NoRule() {
+			addRuleChainVisit(ASTCompilationUnit.class);
+		}
+
+		@Override
+		public Object visit(ASTCompilationUnit node, Object data) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.lang.LanguageRegistry;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.LanguageVersionHandler;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.java.JavaLanguageModule;
+
+/**
+ * {@link ReferenceToInternal} rule runs over files with deeply nested types and several top level types. The imports
+ * of a file are checked once, not once per (nested) class, so the time per file (reported) grows linearly with the
+ * number of nested types, i.e. the time per nested type stays about the same.
+ *
+ * @author kvg
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NestedTypesBenchmark {
+	private static final int FILES = 50;
+	private static final int IMPORTS_PER_FILE = 30;
+	private static final int TOP_LEVEL_TYPES = 3;
+
+	@Param({ "1", "10", "100" })
+	private int nestedTypes;
+
+	private LanguageVersion languageVersion;
+	private List<Node> compilationUnits;
+	private RuleSets ruleSets;
+
+	@Setup
+	public void setUp() throws IOException {
+		SyntheticConfig config = new SyntheticConfig(100, 10);
+		this.languageVersion = LanguageRegistry.getLanguage(JavaLanguageModule.NAME).getDefaultVersion();
+		LanguageVersionHandler handler = this.languageVersion.getLanguageVersionHandler();
+		this.compilationUnits = new ArrayList<>(FILES);
+		for (int i = 0; i < FILES; i++) {
+			String source = nestedSource(i, config.importedNames(IMPORTS_PER_FILE, i));
+			Node compilationUnit = handler.getParser(handler.getDefaultParserOptions())
+					.parse(fileName(i), new StringReader(source));
+			// scopes are needed to report violations
+			handler.getSymbolFacade().start(compilationUnit);
+			this.compilationUnits.add(compilationUnit);
+		}
+
+		ReferenceToInternal rule = new ReferenceToInternal(
+				new ReferenceToInternal.Dependencies(new DomainResolver(config.read())));
+		rule.setMessage("Reference to internal class of module ''{0}'': {1}");
+		// applied like PMD does (the rule uses the rule chain)
+		this.ruleSets = new RuleSets(RuleSet.createFor("benchmark", rule));
+	}
+
+	/**
+	 * @return source with the given imports, a top level class with a chain of nested classes (each using the
+	 *         imported types) and further top level classes
+	 */
+	private String nestedSource(int fileIndex, String[] importedNames) {
+		StringBuilder sb = new StringBuilder(String.format("package com.acme.client%d;%n%n", fileIndex));
+		for (String importedName : importedNames) {
+			sb.append("import ").append(importedName).append(";\n");
+		}
+		sb.append(String.format("%npublic class Nested%d {%n", fileIndex));
+		for (int depth = 0; depth < this.nestedTypes; depth++) {
+			String simpleName = importedNames[depth % importedNames.length];
+			simpleName = simpleName.substring(simpleName.lastIndexOf('.') + 1);
+			sb.append(String.format("class Inner%d {%n\tprivate %s ref;%n", depth, simpleName));
+		}
+		for (int depth = 0; depth < this.nestedTypes; depth++) {
+			sb.append("}\n");
+		}
+		sb.append("}\n");
+		for (int i = 1; i < TOP_LEVEL_TYPES; i++) {
+			sb.append(String.format("%nclass Helper%d {%n}%n", i));
+		}
+		return sb.toString();
+	}
+
+	private static String fileName(int fileIndex) {
+		return String.format("Nested%d.java", fileIndex);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FILES)
+	public Report applyRule() {
+		RuleContext ctx = new RuleContext();
+		ctx.setReport(new Report());
+		ctx.setLanguageVersion(this.languageVersion);
+		this.ruleSets.start(ctx);
+		for (int i = 0; i < FILES; i++) {
+			ctx.setSourceCodeFilename(fileName(i));
+			this.ruleSets.apply(this.compilationUnits.subList(i, i + 1), ctx, this.languageVersion.getLanguage());
+		}
+		this.ruleSets.end(ctx);
+		return ctx.getReport();
+	}
+}
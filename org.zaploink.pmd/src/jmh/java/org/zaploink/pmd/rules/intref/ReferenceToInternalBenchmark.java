@@ -0,0 +1,159 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.lang.LanguageRegistry;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.LanguageVersionHandler;
+import net.sourceforge.pmd.lang.Parser;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.java.JavaLanguageModule;
+import net.sourceforge.pmd.lang.java.rule.AbstractJavaRule;
+
+/**
+ * Full {@link ReferenceToInternal} rule runs over a generated source tree, compared to the import-only pass
+ * ({@link ImportsOnlyRule}). Time is reported per file.
+ *
+ * <p>
+ * The rule reads its config once per JVM, hence every parameter combination runs in its own fork.
+ *
+ * @author kvg
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReferenceToInternalBenchmark {
+	private static final String CONFIG_PROP = "org.zaploink.pmd.intref.configFile";
+	private static final int FILES = 200;
+	private static final int IMPORTS_PER_FILE = 30;
+
+	@Param({ "10", "1000", "5000" })
+	private int domains;
+
+	@Param({ "0", "50" })
+	private int regexes;
+
+	@Param({ "full", "imports" })
+	private String rule;
+
+	private Path configFile;
+	private LanguageVersion languageVersion;
+	private LanguageVersionHandler handler;
+	private Parser parser;
+	private List<String> sources;
+	private List<Node> compilationUnits;
+	private RuleSets ruleSets;
+
+	@Setup
+	public void setUp() throws IOException {
+		SyntheticConfig config = new SyntheticConfig(this.domains, this.regexes);
+		this.configFile = Files.createTempFile("ReferenceToInternal", ".ruleConfig");
+		Files.write(this.configFile, config.getJson().getBytes(StandardCharsets.UTF_8));
+		System.setProperty(CONFIG_PROP, this.configFile.toString());
+
+		this.languageVersion = LanguageRegistry.getLanguage(JavaLanguageModule.NAME).getDefaultVersion();
+		this.handler = this.languageVersion.getLanguageVersionHandler();
+		this.parser = this.handler.getParser(this.handler.getDefaultParserOptions());
+
+		this.sources = new ArrayList<>(FILES);
+		this.compilationUnits = new ArrayList<>(FILES);
+		for (int i = 0; i < FILES; i++) {
+			String source = config.javaSource(i, config.importedNames(IMPORTS_PER_FILE, i));
+			this.sources.add(source);
+			this.compilationUnits.add(parse(i, source));
+		}
+
+		// the import-only pass is the baseline of the full rule
+		AbstractJavaRule benchmarkedRule = "imports".equals(this.rule)
+				? new ImportsOnlyRule(new DomainResolver(config.read())) : new ReferenceToInternal();
+		benchmarkedRule.setMessage("Reference to internal class of module ''{0}'': {1}");
+		// applied like PMD does (the rule uses the rule chain)
+		this.ruleSets = new RuleSets(RuleSet.createFor("benchmark", benchmarkedRule));
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(this.configFile);
+	}
+
+	private Node parse(int fileIndex, String source) {
+		Node compilationUnit = this.parser.parse(fileName(fileIndex), new StringReader(source));
+		// scopes are needed to report violations
+		this.handler.getSymbolFacade().start(compilationUnit);
+		return compilationUnit;
+	}
+
+	private static String fileName(int fileIndex) {
+		return String.format("Generated%d.java", fileIndex);
+	}
+
+	private RuleContext newRuleContext() {
+		RuleContext ctx = new RuleContext();
+		ctx.setReport(new Report());
+		ctx.setLanguageVersion(this.languageVersion);
+		return ctx;
+	}
+
+	/**
+	 * Applies the rule to the already parsed files (rule cost only).
+	 */
+	@Benchmark
+	@OperationsPerInvocation(FILES)
+	public Report applyRule() {
+		RuleContext ctx = newRuleContext();
+		this.ruleSets.start(ctx);
+		for (int i = 0; i < FILES; i++) {
+			ctx.setSourceCodeFilename(fileName(i));
+			this.ruleSets.apply(this.compilationUnits.subList(i, i + 1), ctx, this.languageVersion.getLanguage());
+		}
+		this.ruleSets.end(ctx);
+		return ctx.getReport();
+	}
+
+	/**
+	 * Parses the files and applies the rule (as a PMD run with only this rule would do).
+	 */
+	@Benchmark
+	@OperationsPerInvocation(FILES)
+	public Report parseAndApplyRule() {
+		RuleContext ctx = newRuleContext();
+		this.ruleSets.start(ctx);
+		List<Node> nodes = new ArrayList<>(1);
+		for (int i = 0; i < FILES; i++) {
+			nodes.clear();
+			nodes.add(parse(i, this.sources.get(i)));
+			ctx.setSourceCodeFilename(fileName(i));
+			this.ruleSets.apply(nodes, ctx, this.languageVersion.getLanguage());
+		}
+		this.ruleSets.end(ctx);
+		return ctx.getReport();
+	}
+}
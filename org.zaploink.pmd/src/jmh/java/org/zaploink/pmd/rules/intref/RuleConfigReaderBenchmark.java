@@ -0,0 +1,92 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zaploink.pmd.rules.intref.config.RuleConfigData;
+import org.zaploink.pmd.rules.intref.config.RuleConfigReader;
+
+/**
+ * Parsing of rule configs of varying size with {@link RuleConfigReader.DefaultStrategy#readConfig(java.io.Reader)},
+ * and loading them (parsing and compiling) by binding the whole config first or in a single pass with
+ * {@link RuleConfigStreamReader}, or from its precompiled form (see {@link RuleConfigCompiler}): reading the binary
+ * file (including the index of the explicit domain declarations) and compiling the rest of the config.
+ * Run with <code>-prof gc</code> (as <code>gradle jmh</code> does) to compare the memory allocated per load
+ * (<code>gc.alloc.rate.norm</code>).
+ *
+ * @author kvg
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RuleConfigReaderBenchmark {
+	private static final int CACHE_SIZE = 10000;
+
+	@Param({ "10", "100", "1000", "5000" })
+	private int domains;
+
+	@Param({ "0", "200" })
+	private int regexes;
+
+	private String json;
+	private Path configFile;
+
+	@Setup
+	public void setUp() throws IOException {
+		this.json = new SyntheticConfig(this.domains, this.regexes).getJson();
+		this.configFile = Files.createTempFile("ReferenceToInternal", ".ruleConfig");
+		Files.write(this.configFile, this.json.getBytes(StandardCharsets.UTF_8));
+		RuleConfigCompiler.compile(this.configFile, RuleConfigCompiler.binaryFileOf(this.configFile));
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.delete(RuleConfigCompiler.binaryFileOf(this.configFile));
+		Files.delete(this.configFile);
+	}
+
+	@Benchmark
+	public RuleConfigData readConfig() throws IOException {
+		return RuleConfigReader.DEFAULT_STRATEGY.readConfig(new StringReader(this.json));
+	}
+
+	@Benchmark
+	public DomainResolver loadBoundConfig() throws IOException {
+		RuleConfigData ruleConfig = RuleConfigReader.DEFAULT_STRATEGY.readConfig(new StringReader(this.json));
+		return new DomainResolver(ruleConfig, CACHE_SIZE, null);
+	}
+
+	@Benchmark
+	public DomainResolver loadStreamedConfig() throws IOException {
+		return RuleConfigStreamReader.read(new StringReader(this.json), CACHE_SIZE, null);
+	}
+
+	@Benchmark
+	public IndexedRuleConfig readPrecompiledConfig() {
+		return RuleConfigCompiler.load(this.configFile);
+	}
+
+	@Benchmark
+	public DomainResolver loadPrecompiledConfig() {
+		return RuleConfigCompiler.load(this.configFile).compile(CACHE_SIZE, null);
+	}
+}
@@ -0,0 +1,126 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.zaploink.pmd.rules.intref.config.RuleConfigData;
+import org.zaploink.pmd.rules.intref.config.RuleConfigReader;
+
+/**
+ * Generates rule configs, imported names and Java sources of a given size for the benchmarks.
+ *
+ * <p>
+ * Each domain <code>dN</code> explicitly declares a public package <code>com.acme.dN.api</code> and a private package
+ * <code>com.acme.dN.impl</code> plus one public and one private class. Each recognition pattern <code>K</code>
+ * recognizes public domains below <code>com.acme.rK</code> (even patterns) or private domains below
+ * <code>com.acme.rK.&lt;domain&gt;</code> (odd patterns).
+ *
+ * @author kvg
+ */
+public final class SyntheticConfig {
+	private static final String[] FOREIGN_IMPORTS = { "java.util.List", "java.util.Map", "java.util.ArrayList",
+			"java.io.IOException", "java.nio.file.Path", "javax.inject.Inject", "org.slf4j.Logger",
+			"org.springframework.stereotype.Service", "com.google.common.collect.ImmutableList",
+			"org.apache.commons.lang3.StringUtils" };
+
+	private final int domains;
+	private final int regexes;
+	private final String json;
+
+	public SyntheticConfig(int domains, int regexes) {
+		this.domains = domains;
+		this.regexes = regexes;
+		this.json = createJson();
+	}
+
+	private String createJson() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\n\t\"version\" : 1,\n\t\"automaticDomainRecognition\" : {\n");
+		List<String> publicRecs = new ArrayList<>();
+		List<String> privateRecs = new ArrayList<>();
+		for (int k = 0; k < this.regexes; k++) {
+			if (k % 2 == 0) {
+				publicRecs.add(String.format("\"com\\\\.acme\\\\.r%d\\\\.([^\\\\.]+)\"", k));
+			}
+			else {
+				privateRecs.add(String.format("\"com\\\\.acme\\\\.r%d\\\\.([^\\\\.]+)\\\\..+\"", k));
+			}
+		}
+		sb.append("\t\t\"publicPackages\" : [ ").append(String.join(", ", publicRecs)).append(" ],\n");
+		sb.append("\t\t\"privatePackages\" : [ ").append(String.join(", ", privateRecs)).append(" ]\n\t},\n");
+		sb.append("\t\"explicitDomainDeclarations\" : {\n");
+		for (int n = 0; n < this.domains; n++) {
+			sb.append(String.format("\t\t\"d%1$d\" : {\n"
+					+ "\t\t\t\"publicParts\" : { \"packages\" : [ \"com.acme.d%1$d.api\" ], "
+					+ "\"classes\" : [ \"com.acme.d%1$d.impl.Facade\" ] },\n"
+					+ "\t\t\t\"privateParts\" : { \"packages\" : [ \"com.acme.d%1$d.impl\" ], "
+					+ "\"classes\" : [ \"com.acme.d%1$d.Helper\" ] }\n"
+					+ "\t\t}%2$s\n", n, (n < this.domains - 1) ? "," : ""));
+		}
+		sb.append("\t}\n}\n");
+		return sb.toString();
+	}
+
+	public String getJson() {
+		return this.json;
+	}
+
+	public RuleConfigData read() throws IOException {
+		return RuleConfigReader.DEFAULT_STRATEGY.readConfig(new StringReader(this.json));
+	}
+
+	/**
+	 * Returns <code>count</code> imported names, about half of them do not belong to any domain (JDK and third-party
+	 * libraries), the rest is spread over explicitly declared and recognized domains.
+	 */
+	public String[] importedNames(int count, long seed) {
+		Random random = new Random(seed);
+		String[] names = new String[count];
+		for (int i = 0; i < count; i++) {
+			int kind = random.nextInt(4);
+			if (kind <= 1 || (this.domains == 0 && this.regexes == 0)) {
+				names[i] = FOREIGN_IMPORTS[random.nextInt(FOREIGN_IMPORTS.length)];
+			}
+			else if (kind == 2 && this.domains > 0) {
+				int n = random.nextInt(this.domains);
+				names[i] = random.nextBoolean()
+						? String.format("com.acme.d%d.api.Api%d", n, random.nextInt(10))
+						: String.format("com.acme.d%d.impl.Impl%d", n, random.nextInt(10));
+			}
+			else if (this.regexes > 0) {
+				int k = random.nextInt(this.regexes);
+				names[i] = (k % 2 == 0)
+						? String.format("com.acme.r%d.dom%d.Api", k, random.nextInt(20))
+						: String.format("com.acme.r%d.dom%d.internal.Impl", k, random.nextInt(20));
+			}
+			else {
+				names[i] = String.format("com.acme.d%d.api.Api", random.nextInt(this.domains));
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Returns the source of a compilation unit in a domain package that imports the given names and also references
+	 * the first few of them by their fully qualified name.
+	 */
+	public String javaSource(int fileIndex, String[] importedNames) {
+		StringBuilder sb = new StringBuilder();
+		int domain = (this.domains == 0) ? 0 : fileIndex % this.domains;
+		sb.append(String.format("package com.acme.d%d.api;%n%n", domain));
+		for (String importedName : importedNames) {
+			sb.append("import ").append(importedName).append(";\n");
+		}
+		sb.append(String.format("%npublic class Generated%d {%n", fileIndex));
+		sb.append("\tprivate final List<String> values = new ArrayList<>();\n");
+		for (int i = 0; i < Math.min(3, importedNames.length); i++) {
+			sb.append(String.format("\tprivate %s ref%d;%n", importedNames[i], i));
+		}
+		sb.append("\n");
+		sb.append("\tpublic int size() {\n\t\treturn this.values.size();\n\t}\n}\n");
+		return sb.toString();
+	}
+}
@@ -0,0 +1,124 @@
+package org.zaploink.pmd.rules;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Hands log records over to a single writer thread that publishes them to the target handler, so logging threads
+ * (e.g. PMD threads with debug logging on) neither format records nor wait for each other or the log file.
+ *
+ * <p>
+ * The records are queued in a bounded, lock-free queue. If the queue is full, records are dropped (and the number of
+ * dropped records is logged) rather than blocking the logging thread. Closing the handler (e.g. by the
+ * {@link java.util.logging.LogManager} at JVM shutdown) writes the queued records and closes the target handler.
+ *
+ * @author kvg
+ */
+final class AsyncLogHandler extends Handler {
+	private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+
+	private final Handler target;
+	private final int capacity;
+	private final Queue<LogRecord> queue = new ConcurrentLinkedQueue<>();
+	// number of queued records, may briefly exceed the capacity while a record is being rejected
+	private final AtomicInteger size = new AtomicInteger();
+	private final AtomicLong dropped = new AtomicLong();
+	private final Thread writer;
+	private volatile boolean closed;
+
+	/**
+	 * @param capacity
+	 *            maximal number of queued records
+	 */
+	AsyncLogHandler(Handler target, int capacity) {
+		this.target = target;
+		this.capacity = Math.max(1, capacity);
+		setLevel(target.getLevel());
+		this.writer = new Thread(this::write, "zaploink-pmd-log-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	@Override
+	public void publish(LogRecord record) {
+		if (this.closed || !isLoggable(record)) {
+			return;
+		}
+		if (this.size.incrementAndGet() > this.capacity) {
+			this.size.decrementAndGet();
+			this.dropped.incrementAndGet();
+			return;
+		}
+		this.queue.offer(record);
+		LockSupport.unpark(this.writer);
+	}
+
+	private void write() {
+		while (!this.closed) {
+			if (!drain()) {
+				LockSupport.parkNanos(this, IDLE_NANOS);
+			}
+		}
+		drain(); // records queued while closing
+	}
+
+	/**
+	 * @return <code>true</code> if any record was written
+	 */
+	private boolean drain() {
+		boolean written = false;
+		LogRecord record;
+		while ((record = this.queue.poll()) != null) {
+			this.size.decrementAndGet();
+			this.target.publish(record);
+			written = true;
+		}
+		long droppedRecords = this.dropped.getAndSet(0);
+		if (droppedRecords > 0) {
+			LogRecord warning = new LogRecord(Level.WARNING, "Log queue full, dropped {0} log records");
+			warning.setParameters(new Object[] { droppedRecords });
+			this.target.publish(warning);
+			written = true;
+		}
+		if (written) {
+			this.target.flush();
+		}
+		return written;
+	}
+
+	/**
+	 * @return number of records that have been dropped and not reported yet
+	 */
+	long getDroppedCount() {
+		return this.dropped.get();
+	}
+
+	@Override
+	public void flush() {
+		LockSupport.unpark(this.writer); // the writer flushes the target whenever it has written records
+	}
+
+	@Override
+	public void close() {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		LockSupport.unpark(this.writer);
+		try {
+			this.writer.join(CLOSE_TIMEOUT_MILLIS);
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		this.target.close();
+	}
+}
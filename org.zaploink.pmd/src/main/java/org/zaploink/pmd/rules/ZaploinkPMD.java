@@ -7,9 +7,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.MessageFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.logging.FileHandler;
+import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
@@ -67,7 +69,10 @@ public class ZaploinkPMD {
 			FileHandler fileHandler = new FileHandler(pattern, 100 * 1024, 1, true);
 			fileHandler.setFormatter(new ZaploinkLogFormatter());
 			fileHandler.setLevel(CONFIG.logLevel());
-			LOGGER.addHandler(fileHandler);
+			Handler handler = CONFIG.isAsyncLoggingEnabled()
+					? new AsyncLogHandler(fileHandler, CONFIG.asyncLogQueueSize())
+					: fileHandler;
+			LOGGER.addHandler(handler);
 		}
 		catch (IOException ex) {
 			LOGGER.log(Level.WARNING, "Could not create file appender for zaploink-pmd log.", ex);
@@ -86,14 +91,19 @@ public class ZaploinkPMD {
 		return Paths.get(userHome, ZAPLOINK_CONFIG_DIR);
 	}
 
+	/**
+	 * Thread-safe without locking. The message is only formatted if it may contain a pattern: quotes are unescaped
+	 * even if the record has no parameters, as {@link MessageFormat} always did.
+	 */
 	public static class ZaploinkLogFormatter extends SimpleFormatter {
-		private static final SimpleDateFormat DATE = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-		private final Date dat = new Date();
+		private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+				.withZone(ZoneId.systemDefault());
 
 		@Override
-		public synchronized String format(LogRecord record) {
-			this.dat.setTime(record.getMillis());
-			String formattedMessage = MessageFormat.format(record.getMessage(), record.getParameters());
+		public String format(LogRecord record) {
+			String message = record.getMessage();
+			boolean pattern = message != null && (message.indexOf('\'') >= 0 || message.indexOf('{') >= 0);
+			String formattedMessage = pattern ? MessageFormat.format(message, record.getParameters()) : message;
 			String throwable = "";
 			if (record.getThrown() != null) {
 				StringWriter sw = new StringWriter();
@@ -103,8 +113,8 @@ public class ZaploinkPMD {
 				pw.close();
 				throwable = sw.toString();
 			}
-			return String.format("[%s][%s] %s%s\n", DATE.format(this.dat), record.getLevel(), formattedMessage,
-					throwable);
+			return String.format("[%s][%s] %s%s\n", DATE.format(Instant.ofEpochMilli(record.getMillis())),
+					record.getLevel(), formattedMessage, throwable);
 		}
 	}
 
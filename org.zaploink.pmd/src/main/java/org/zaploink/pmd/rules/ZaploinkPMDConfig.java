@@ -4,7 +4,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import java.util.logging.Level;
 
@@ -17,6 +20,17 @@ import java.util.logging.Level;
  *
  * <pre>
  * log.level={ERROR,WARN,INFO,DEBUG}
+ * log.async.enabled={true,false} (default: false)
+ * log.async.queueSize=&lt;max. number of queued log records, more are dropped&gt; (default: 8192)
+ * intref.resolutionCache.size=&lt;max. number of cached domain resolutions, 0 = disabled&gt; (default: 10000)
+ * intref.resolverRegistry.size=&lt;max. number of compiled rule configs kept per JVM&gt; (default: 8)
+ * intref.analysisCache.enabled={true,false} (default: false)
+ * intref.analysisCache.dir=&lt;directory of the persistent analysis cache&gt; (default: $USER_HOME/.zaploink-pmd/cache)
+ * intref.dependencyGraph.file=&lt;file the domain dependency graph is written to, .csv, .json or .dot&gt; (default: none)
+ * intref.typeResolution.enabled={true,false} (default: false)
+ * intref.typeResolution.cacheSize=&lt;max. number of classes with cached metadata, 0 = disabled&gt; (default: 10000)
+ * intref.sourceRoots=&lt;further source roots of the analyzed packages, comma separated&gt; (default: none)
+ * intref.metrics.enabled={true,false} (default: false)
  * </pre>
  *
  * <p>
@@ -67,6 +81,93 @@ public class ZaploinkPMDConfig {
 		}
 	}
 
+	/**
+	 * @return <code>true</code> if the log file is written by a background thread (see {@link AsyncLogHandler})
+	 */
+	public boolean isAsyncLoggingEnabled() {
+		return Boolean.parseBoolean(this.properties.getProperty("log.async.enabled", "false").trim());
+	}
+
+	public int asyncLogQueueSize() {
+		return intProperty("log.async.queueSize", 8192);
+	}
+
+	public int resolutionCacheSize() {
+		return intProperty("intref.resolutionCache.size", 10000);
+	}
+
+	/**
+	 * @return maximal number of compiled rule configs (of different config files or versions) kept in a JVM
+	 */
+	public int resolverRegistrySize() {
+		return intProperty("intref.resolverRegistry.size", 8);
+	}
+
+	public boolean isAnalysisCacheEnabled() {
+		return Boolean.parseBoolean(this.properties.getProperty("intref.analysisCache.enabled", "false").trim());
+	}
+
+	public Path analysisCacheDir() {
+		String dir = this.properties.getProperty("intref.analysisCache.dir");
+		return (dir == null) ? ZaploinkPMD.getConfigDir().resolve("cache") : Paths.get(dir.trim());
+	}
+
+	/**
+	 * @return file the domain dependency graph is written to at the end of a PMD run, <code>null</code> if disabled
+	 */
+	public Path dependencyGraphFile() {
+		String file = this.properties.getProperty("intref.dependencyGraph.file");
+		return (file == null || file.trim().isEmpty()) ? null : Paths.get(file.trim());
+	}
+
+	/**
+	 * @return <code>true</code> if references are checked by the types PMD resolves from the auxclasspath (in addition
+	 *         to the imported and fully qualified names)
+	 */
+	public boolean isTypeResolutionEnabled() {
+		return Boolean.parseBoolean(this.properties.getProperty("intref.typeResolution.enabled", "false").trim());
+	}
+
+	public int typeResolutionCacheSize() {
+		return intProperty("intref.typeResolution.cacheSize", 10000);
+	}
+
+	/**
+	 * @return source roots searched for the types of an analyzed file's package, in addition to the source roots of
+	 *         the file's module (e.g. generated sources outside of the module)
+	 */
+	public List<Path> sourceRoots() {
+		List<Path> sourceRoots = new ArrayList<>();
+		for (String root : this.properties.getProperty("intref.sourceRoots", "").split(",")) {
+			if (!root.trim().isEmpty()) {
+				sourceRoots.add(Paths.get(root.trim()));
+			}
+		}
+		return sourceRoots;
+	}
+
+	/**
+	 * @return <code>true</code> if the rule records metrics (exposed via JMX and logged at the end of a PMD run)
+	 */
+	public boolean isMetricsEnabled() {
+		return Boolean.parseBoolean(this.properties.getProperty("intref.metrics.enabled", "false").trim());
+	}
+
+	private int intProperty(String key, int defaultValue) {
+		String value = this.properties.getProperty(key);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		}
+		catch (NumberFormatException ex) {
+			String msg = MessageFormat.format("Invalid value for zaploink-pmd config {0}: {1}", key, value);
+			ZaploinkPMD.LOGGER.log(Level.WARNING, msg, ex);
+			return defaultValue;
+		}
+	}
+
 	public boolean isDebug() {
 		return logLevel().intValue() < Level.INFO.intValue();
 	}
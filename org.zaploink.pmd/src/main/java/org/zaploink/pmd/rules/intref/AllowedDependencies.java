@@ -0,0 +1,91 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Compiled form of the <code>allowedDependencies</code> of a rule config: the domains whose private parts a domain may
+ * access in addition to its own.
+ *
+ * <p>
+ * The domains that take part in an allowed dependency get a row and a column of a bit matrix (indexed by their
+ * {@link DomainIds ID}), so checking a reference costs two array reads and a bit test.
+ *
+ * @author kvg
+ */
+final class AllowedDependencies {
+	static final AllowedDependencies NONE = new AllowedDependencies();
+
+	// matrix index by domain ID, -1 if the domain has no allowed dependency
+	private final int[] indexes;
+	private final int size;
+	private final long[] matrix;
+
+	private AllowedDependencies() {
+		this.indexes = new int[0];
+		this.size = 0;
+		this.matrix = new long[0];
+	}
+
+	/**
+	 * @param allowedDependencies
+	 *            domains by the domain that may access their private parts
+	 */
+	AllowedDependencies(Map<String, List<String>> allowedDependencies, DomainIds ids) {
+		List<int[]> edges = new ArrayList<>();
+		int maxId = -1;
+		for (Entry<String, List<String>> entry : allowedDependencies.entrySet()) {
+			int from = ids.idOf(entry.getKey());
+			for (String domain : (entry.getValue() == null) ? Collections.<String> emptyList() : entry.getValue()) {
+				int to = ids.idOf(domain);
+				edges.add(new int[] { from, to });
+				maxId = Math.max(maxId, Math.max(from, to));
+			}
+		}
+		this.indexes = new int[maxId + 1];
+		Arrays.fill(this.indexes, -1);
+		int count = 0;
+		for (int[] edge : edges) {
+			for (int id : edge) {
+				if (this.indexes[id] < 0) {
+					this.indexes[id] = count++;
+				}
+			}
+		}
+		this.size = count;
+		this.matrix = new long[(int) ((((long) count) * count + 63) >>> 6)];
+		for (int[] edge : edges) {
+			long bit = bit(this.indexes[edge[0]], this.indexes[edge[1]]);
+			this.matrix[(int) (bit >>> 6)] |= 1L << bit;
+		}
+	}
+
+	private long bit(int fromIndex, int toIndex) {
+		return ((long) fromIndex) * this.size + toIndex;
+	}
+
+	/**
+	 * @return <code>true</code> if the domain with the first ID may access the private part of the domain with the
+	 *         second ID
+	 */
+	boolean allows(int fromId, int toId) {
+		if (fromId < 0 || toId < 0 || fromId >= this.indexes.length || toId >= this.indexes.length) {
+			return false;
+		}
+		int from = this.indexes[fromId];
+		int to = this.indexes[toId];
+		if (from < 0 || to < 0) {
+			return false;
+		}
+		long bit = bit(from, to);
+		return (this.matrix[(int) (bit >>> 6)] & (1L << bit)) != 0;
+	}
+
+	boolean isEmpty() {
+		return this.size == 0;
+	}
+}
@@ -0,0 +1,533 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.zaploink.pmd.rules.ZaploinkPMD;
+import org.zaploink.pmd.rules.intref.DomainElement.Type;
+import org.zaploink.pmd.rules.intref.config.RuleConfigFingerprint;
+
+import net.sourceforge.pmd.RuleViolation;
+
+/**
+ * Persistent cache of the per-file results of the {@link ReferenceToInternal} rule (resolved references and violations),
+ * so the standalone analyzer neither parses nor analyzes unchanged files (see
+ * {@link ReferenceToInternal#reportCachedResult}), a violation is cached with everything PMD reports about it. PMD runs
+ * record the results of changed files but do not report cached ones, they parse every file anyway.
+ *
+ * <p>
+ * Results are keyed by file path and validated with the modification time and size of the file (see
+ * {@link FileStamp}), so an unchanged file is neither read nor hashed. The result of a file that was modified just
+ * before it was analyzed is not cached, since a change within the same tick of the file system clock would go
+ * unnoticed. Entries of deleted files are dropped when the cache is saved.
+ *
+ * <p>
+ * There is one cache file per rule config and rule implementation (named after a hash of the config fingerprint and
+ * of the rule classes, see {@link #implementationFingerprint()}), so the whole cache is invalidated whenever the rule
+ * config or the rule itself changes, and one cache instance per cache file in a JVM. Since projects with different
+ * rule configs may take turns (e.g. in a Gradle daemon), the cache files of other configs are only deleted when they
+ * have not been used for a while.
+ *
+ * @author kvg
+ */
+final class AnalysisCache {
+	private static final Logger LOGGER = ZaploinkPMD.getLogger();
+	private static final String FILE_PREFIX = "ReferenceToInternal-";
+	private static final String FILE_SUFFIX = ".cache";
+	private static final int MAGIC = 0x5A504B43;
+	private static final long MAX_UNUSED_MILLIS = TimeUnit.DAYS.toMillis(7);
+	// files modified less than this before they are analyzed are not cached (coarsest common file time resolution)
+	private static final long RACY_MILLIS = 2000;
+	// opened caches, by cache file; guarded by itself
+	private static final Map<Path, WeakReference<AnalysisCache>> OPEN_CACHES = new HashMap<>();
+
+	private final Path cacheFile;
+	// hash of the config fingerprint and the rule implementation
+	private final String key;
+	private final ConcurrentHashMap<String, FileResult> results = new ConcurrentHashMap<>();
+	private volatile boolean dirty;
+
+	private AnalysisCache(Path cacheFile, String key) {
+		this.cacheFile = cacheFile;
+		this.key = key;
+	}
+
+	/**
+	 * Opens the cache for the given rule config in the given directory: the cache already opened in this JVM, or the
+	 * one loaded from the directory (deleting the caches of other rule configs that have not been used for a while).
+	 * Never fails: if the cache cannot be loaded, an empty cache is returned.
+	 *
+	 * @return the cache, <code>null</code> if the rule implementation cannot be fingerprinted (then a cached result
+	 *         might be outdated)
+	 */
+	static AnalysisCache open(Path cacheDir, String configFingerprint) {
+		String key = key(configFingerprint);
+		if (key == null) {
+			return null;
+		}
+		Path cacheFile = cacheFile(cacheDir, key);
+		synchronized (OPEN_CACHES) {
+			WeakReference<AnalysisCache> ref = OPEN_CACHES.get(cacheFile);
+			AnalysisCache cache = (ref == null) ? null : ref.get();
+			if (cache == null) {
+				OPEN_CACHES.values().removeIf(r -> r.get() == null);
+				cache = read(cacheDir, key);
+				OPEN_CACHES.put(cacheFile, new WeakReference<>(cache));
+				deleteStaleCaches(cacheDir);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * Loads the cache for the given rule config from the given directory, as a new instance. Never fails: if the cache
+	 * cannot be loaded, an empty cache is returned.
+	 *
+	 * @return the cache, <code>null</code> if the rule implementation cannot be fingerprinted
+	 */
+	static AnalysisCache load(Path cacheDir, String configFingerprint) {
+		String key = key(configFingerprint);
+		return (key == null) ? null : read(cacheDir, key);
+	}
+
+	private static AnalysisCache read(Path cacheDir, String key) {
+		AnalysisCache cache = new AnalysisCache(cacheFile(cacheDir, key), key);
+		try {
+			Files.createDirectories(cacheDir);
+			if (Files.exists(cache.cacheFile)) {
+				cache.load();
+				// the age of a cache file is the time since it was last used, see deleteStaleCaches
+				Files.setLastModifiedTime(cache.cacheFile, FileTime.fromMillis(System.currentTimeMillis()));
+			}
+		}
+		catch (IOException ex) {
+			String msg = MessageFormat.format("Could not load analysis cache {0}, starting with an empty cache.",
+					cache.cacheFile);
+			LOGGER.log(Level.WARNING, msg, ex);
+			cache.results.clear();
+		}
+		return cache;
+	}
+
+	private static Path cacheFile(Path cacheDir, String key) {
+		return cacheDir.resolve(FILE_PREFIX + key + FILE_SUFFIX).toAbsolutePath().normalize();
+	}
+
+	/**
+	 * @return hash of the given config fingerprint and the rule implementation, <code>null</code> if the rule
+	 *         implementation cannot be fingerprinted
+	 */
+	private static String key(String configFingerprint) {
+		String implementation = implementationFingerprint();
+		return (implementation == null) ? null
+				: RuleConfigFingerprint.sha256((implementation + configFingerprint).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Returns a fingerprint of the rule implementation: a hash of the jar file the rule is loaded from, or of its class
+	 * files if it is loaded from a directory (e.g. in tests). So results of another version of the rule are never
+	 * replayed, without having to bump a format version whenever the verdicts of the rule change. Computed once per
+	 * JVM.
+	 *
+	 * @return the fingerprint, <code>null</code> if the code source of the rule is unknown or cannot be read (e.g. a
+	 *         bundle of an OSGi container)
+	 */
+	static String implementationFingerprint() {
+		return Implementation.FINGERPRINT;
+	}
+
+	/**
+	 * @return <code>true</code> if the result of a file with the given stamp may be cached: a file that was modified
+	 *         just before it was analyzed may be changed again within the same tick of the file system clock, without
+	 *         changing its stamp
+	 */
+	static boolean isCacheable(FileStamp stamp) {
+		return stamp.getLastModified() < System.currentTimeMillis() - RACY_MILLIS;
+	}
+
+	/**
+	 * Deletes the cache files that are not open in this JVM and have not been used for a while.
+	 */
+	private static void deleteStaleCaches(Path cacheDir) {
+		long staleBefore = System.currentTimeMillis() - MAX_UNUSED_MILLIS;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(cacheDir, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+			for (Path file : files) {
+				if (!OPEN_CACHES.containsKey(file.toAbsolutePath().normalize())
+						&& Files.getLastModifiedTime(file).toMillis() < staleBefore) {
+					LOGGER.log(Level.FINE, "Deleting unused analysis cache {0}", file);
+					Files.deleteIfExists(file);
+				}
+			}
+		}
+		catch (IOException ex) {
+			LOGGER.log(Level.FINE, "Could not delete unused analysis caches in " + cacheDir, ex);
+		}
+	}
+
+	/**
+	 * @return the cached result of the given file if it is unchanged (has the same stamp), <code>null</code> otherwise
+	 */
+	FileResult get(String path, FileStamp stamp) {
+		FileResult result = this.results.get(path);
+		return (result != null && result.stamp.equals(stamp)) ? result : null;
+	}
+
+	void put(String path, FileResult result) {
+		this.results.put(path, result);
+		this.dirty = true;
+	}
+
+	int size() {
+		return this.results.size();
+	}
+
+	/**
+	 * Drops the results of files that have been deleted, then writes the cache to disk if anything changed since it was
+	 * loaded or saved.
+	 */
+	synchronized void save() {
+		boolean pruned = this.results.keySet().removeIf(path -> !Files.exists(Paths.get(path)));
+		if (!this.dirty && !pruned) {
+			return;
+		}
+		this.dirty = false;
+		try {
+			Path tmpFile = Files.createTempFile(this.cacheFile.getParent(), FILE_PREFIX, ".tmp");
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+				write(out);
+			}
+			Files.move(tmpFile, this.cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException ex) {
+			String msg = MessageFormat.format("Could not save analysis cache {0}", this.cacheFile);
+			LOGGER.log(Level.WARNING, msg, ex);
+		}
+	}
+
+	private void write(DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeUTF(this.key);
+		List<Entry<String, FileResult>> entries = new ArrayList<>(this.results.entrySet());
+		out.writeInt(entries.size());
+		for (Entry<String, FileResult> entry : entries) {
+			FileResult result = entry.getValue();
+			out.writeUTF(entry.getKey());
+			out.writeLong(result.stamp.getLastModified());
+			out.writeLong(result.stamp.getSize());
+			out.writeInt(result.classDomains.size());
+			for (String classDomain : result.classDomains) {
+				out.writeUTF(classDomain);
+			}
+			out.writeInt(result.imports.size());
+			for (ResolvedImport resolvedImport : result.imports) {
+				out.writeUTF(resolvedImport.importedName);
+				out.writeUTF(resolvedImport.domain);
+				out.writeBoolean(resolvedImport.type == Type.PUBLIC);
+			}
+			out.writeInt(result.violations.size());
+			for (Violation violation : result.violations) {
+				out.writeInt(violation.reference);
+				out.writeInt(violation.line);
+				out.writeInt(violation.column);
+				out.writeInt(violation.endLine);
+				out.writeInt(violation.endColumn);
+				writeString(violation.packageName, out);
+				writeString(violation.className, out);
+				writeString(violation.methodName, out);
+				writeString(violation.variableName, out);
+				out.writeBoolean(violation.suppressed);
+			}
+		}
+	}
+
+	private void load() throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.cacheFile)))) {
+			if (in.readInt() != MAGIC || !this.key.equals(in.readUTF())) {
+				LOGGER.log(Level.FINE, "Ignoring analysis cache {0} of an unknown format", this.cacheFile);
+				return;
+			}
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String path = in.readUTF();
+				FileResult.Builder result = new FileResult.Builder(new FileStamp(in.readLong(), in.readLong()));
+				int classDomains = in.readInt();
+				for (int k = 0; k < classDomains; k++) {
+					result.addClassDomain(in.readUTF());
+				}
+				int imports = in.readInt();
+				for (int k = 0; k < imports; k++) {
+					String importedName = in.readUTF();
+					String domain = in.readUTF();
+					result.addImport(importedName, domain, in.readBoolean() ? Type.PUBLIC : Type.PRIVATE);
+				}
+				int violations = in.readInt();
+				for (int k = 0; k < violations; k++) {
+					int reference = in.readInt();
+					if (reference < 0 || reference >= imports) {
+						throw new IOException("Corrupt analysis cache: invalid reference index " + reference);
+					}
+					result.addViolation(new Violation(reference, in.readInt(), in.readInt(), in.readInt(), in.readInt(),
+							readString(in), readString(in), readString(in), readString(in), in.readBoolean()));
+				}
+				this.results.put(path, result.build());
+			}
+		}
+		LOGGER.log(Level.FINE, "Loaded {0} cached file results from {1}",
+				new Object[] { this.results.size(), this.cacheFile });
+	}
+
+	private static void writeString(String string, DataOutputStream out) throws IOException {
+		out.writeBoolean(string != null);
+		if (string != null) {
+			out.writeUTF(string);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	/**
+	 * An imported or fully qualified type name (or package, for on-demand imports) that belongs to a domain.
+	 */
+	static final class ResolvedImport {
+		private final String importedName;
+		private final String domain;
+		private final Type type;
+
+		ResolvedImport(String importedName, String domain, Type type) {
+			this.importedName = importedName;
+			this.domain = domain;
+			this.type = type;
+		}
+
+		String getImportedName() {
+			return this.importedName;
+		}
+
+		String getDomain() {
+			return this.domain;
+		}
+
+		Type getType() {
+			return this.type;
+		}
+	}
+
+	/**
+	 * A reported violation, with the location and scope PMD determined from the violating node, so it can be reported
+	 * again without the AST (see {@link CachedRuleViolation}).
+	 */
+	static final class Violation {
+		private final int reference;
+		private final int line;
+		private final int column;
+		private final int endLine;
+		private final int endColumn;
+		private final String packageName;
+		private final String className;
+		private final String methodName;
+		private final String variableName;
+		private final boolean suppressed;
+
+		Violation(int reference, int line, int column, int endLine, int endColumn, String packageName,
+				String className, String methodName, String variableName, boolean suppressed) {
+			this.reference = reference;
+			this.line = line;
+			this.column = column;
+			this.endLine = endLine;
+			this.endColumn = endColumn;
+			this.packageName = packageName;
+			this.className = className;
+			this.methodName = methodName;
+			this.variableName = variableName;
+			this.suppressed = suppressed;
+		}
+
+		/**
+		 * @param reference
+		 *            index of the referenced name (see {@link FileResult.Builder#addImport(String, String, Type)})
+		 */
+		Violation(int reference, RuleViolation violation) {
+			this(reference, violation.getBeginLine(), violation.getBeginColumn(), violation.getEndLine(),
+					violation.getEndColumn(), violation.getPackageName(), violation.getClassName(),
+					violation.getMethodName(), violation.getVariableName(), violation.isSuppressed());
+		}
+
+		/**
+		 * @return index of the referenced name in {@link FileResult#getImports()}
+		 */
+		int getReference() {
+			return this.reference;
+		}
+
+		int getLine() {
+			return this.line;
+		}
+
+		int getColumn() {
+			return this.column;
+		}
+
+		int getEndLine() {
+			return this.endLine;
+		}
+
+		int getEndColumn() {
+			return this.endColumn;
+		}
+
+		String getPackageName() {
+			return this.packageName;
+		}
+
+		String getClassName() {
+			return this.className;
+		}
+
+		String getMethodName() {
+			return this.methodName;
+		}
+
+		String getVariableName() {
+			return this.variableName;
+		}
+
+		/**
+		 * @return <code>true</code> if the violation is suppressed (<code>@SuppressWarnings</code>)
+		 */
+		boolean isSuppressed() {
+			return this.suppressed;
+		}
+	}
+
+	static final class FileResult {
+		private final FileStamp stamp;
+		private final List<String> classDomains;
+		private final List<ResolvedImport> imports;
+		private final List<Violation> violations;
+
+		private FileResult(FileStamp stamp, List<String> classDomains, List<ResolvedImport> imports,
+				List<Violation> violations) {
+			this.stamp = stamp;
+			this.classDomains = Collections.unmodifiableList(classDomains);
+			this.imports = Collections.unmodifiableList(imports);
+			this.violations = Collections.unmodifiableList(violations);
+		}
+
+		/**
+		 * @return domains of the (top level) classes of the file, classes without a domain are omitted
+		 */
+		List<String> getClassDomains() {
+			return this.classDomains;
+		}
+
+		List<ResolvedImport> getImports() {
+			return this.imports;
+		}
+
+		List<Violation> getViolations() {
+			return this.violations;
+		}
+
+		static class Builder {
+			private final FileStamp stamp;
+			private final List<String> classDomains = new ArrayList<>();
+			private final List<ResolvedImport> imports = new ArrayList<>();
+			private final List<Violation> violations = new ArrayList<>();
+
+			Builder(FileStamp stamp) {
+				this.stamp = stamp;
+			}
+
+			Builder addClassDomain(String domain) {
+				this.classDomains.add(domain);
+				return this;
+			}
+
+			/**
+			 * @return index of the added import
+			 */
+			int addImport(String importedName, String domain, Type type) {
+				this.imports.add(new ResolvedImport(importedName, domain, type));
+				return this.imports.size() - 1;
+			}
+
+			Builder addViolation(Violation violation) {
+				this.violations.add(violation);
+				return this;
+			}
+
+			FileResult build() {
+				return new FileResult(this.stamp, this.classDomains, this.imports, this.violations);
+			}
+		}
+	}
+
+	// computed on first use, i.e. when the first analysis cache is opened
+	private static final class Implementation {
+		private static final String FINGERPRINT = compute();
+
+		private static String compute() {
+			CodeSource codeSource = AnalysisCache.class.getProtectionDomain().getCodeSource();
+			if (codeSource == null || codeSource.getLocation() == null) {
+				LOGGER.log(Level.WARNING, "Analysis cache disabled, the code source of the rule is unknown");
+				return null;
+			}
+			try {
+				Path location = Paths.get(codeSource.getLocation().toURI());
+				if (!Files.isDirectory(location)) {
+					return RuleConfigFingerprint.sha256(location);
+				}
+				// the classes of the rules (and not e.g. the tests next to them)
+				Path classes = location.resolve(ZaploinkPMD.class.getPackage().getName().replace('.', '/'));
+				List<Path> files;
+				try (Stream<Path> walk = Files.walk(classes)) {
+					files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+				}
+				MessageDigest digest = MessageDigest.getInstance("SHA-256");
+				for (Path file : files) {
+					digest.update(classes.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+					digest.update(Files.readAllBytes(file));
+				}
+				return RuleConfigFingerprint.sha256(digest.digest());
+			}
+			catch (IllegalArgumentException | FileSystemNotFoundException | SecurityException | URISyntaxException
+					| IOException | NoSuchAlgorithmException ex) {
+				LOGGER.log(Level.WARNING, ex,
+						() -> "Analysis cache disabled, the rule implementation is unknown: " + codeSource);
+				return null;
+			}
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, thread-safe cache, the base of the caches of the rules (domain resolutions, class metadata, layer ranks).
+ *
+ * <p>
+ * The cache never blocks readers: a hit costs a single hash lookup and does not allocate. If the cache is full, an
+ * arbitrary entry is evicted to make room for a new one. The number of entries is counted atomically, so the cache
+ * never holds more than its maximal size (apart from entries being added by other threads at the same time). Hits,
+ * misses and evictions are counted.
+ *
+ * <p>
+ * A value may be cached for a variant of its key, e.g. a qualified name split at a given position. It is only a hit
+ * for the same variant, a value of another variant is replaced.
+ *
+ * @author kvg
+ */
+final class BoundedCache<K, V> {
+	private final ConcurrentHashMap<K, Entry<V>> entries;
+	private final int maxSize;
+	private final AtomicInteger size = new AtomicInteger();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * @param maxSize
+	 *            maximal number of entries, <code>0</code> disables caching
+	 * @param initialCapacity
+	 *            initial capacity of the map (at most the maximal size is used)
+	 */
+	BoundedCache(int maxSize, int initialCapacity) {
+		this.maxSize = Math.max(0, maxSize);
+		this.entries = new ConcurrentHashMap<>(Math.min(this.maxSize, initialCapacity));
+	}
+
+	/**
+	 * @return the cached value of the given key, <code>null</code> if there is none (a miss)
+	 */
+	V get(K key) {
+		return get(key, 0);
+	}
+
+	/**
+	 * @return the value cached for the given variant of the key, <code>null</code> if there is none (a miss)
+	 */
+	V get(K key, int variant) {
+		Entry<V> entry = this.entries.get(key);
+		if (entry != null && entry.variant == variant) {
+			this.hits.increment();
+			return entry.value;
+		}
+		this.misses.increment();
+		return null;
+	}
+
+	void put(K key, V value) {
+		put(key, 0, value);
+	}
+
+	/**
+	 * Caches the value of the given variant of the key, evicts an arbitrary entry if the cache is full.
+	 */
+	void put(K key, int variant, V value) {
+		if (this.maxSize == 0) {
+			return;
+		}
+		if (this.entries.put(key, new Entry<>(variant, value)) == null) {
+			this.size.incrementAndGet();
+			evictOverflow();
+		}
+	}
+
+	private void evictOverflow() {
+		Iterator<K> it = this.entries.keySet().iterator();
+		while (this.size.get() > this.maxSize && it.hasNext()) {
+			if (this.entries.remove(it.next()) != null) {
+				this.size.decrementAndGet();
+				this.evictions.increment();
+			}
+		}
+	}
+
+	void clear() {
+		for (K key : this.entries.keySet()) {
+			if (this.entries.remove(key) != null) {
+				this.size.decrementAndGet();
+			}
+		}
+	}
+
+	int size() {
+		return this.size.get();
+	}
+
+	int getMaxSize() {
+		return this.maxSize;
+	}
+
+	long getHitCount() {
+		return this.hits.sum();
+	}
+
+	long getMissCount() {
+		return this.misses.sum();
+	}
+
+	long getEvictionCount() {
+		return this.evictions.sum();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("size=%d/%d, hits=%d, misses=%d, evictions=%d", size(), this.maxSize, getHitCount(),
+				getMissCount(), getEvictionCount());
+	}
+
+	private static final class Entry<V> {
+		private final int variant;
+		private final V value;
+
+		Entry(int variant, V value) {
+			this.variant = variant;
+			this.value = value;
+		}
+	}
+}
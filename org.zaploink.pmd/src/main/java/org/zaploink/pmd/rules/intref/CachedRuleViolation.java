@@ -0,0 +1,91 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.text.MessageFormat;
+
+import org.zaploink.pmd.rules.intref.AnalysisCache.Violation;
+
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.RuleViolation;
+
+/**
+ * A violation reported from the analysis cache without the AST of the file (see
+ * {@link ReferenceToInternal#reportCachedResult(RuleContext)}): the same as the violation reported when the file was
+ * analyzed, its message is formatted with the current message of the rule.
+ *
+ * @author kvg
+ */
+final class CachedRuleViolation implements RuleViolation {
+	private final Rule rule;
+	private final String fileName;
+	private final String description;
+	private final Violation violation;
+
+	CachedRuleViolation(Rule rule, RuleContext ctx, Violation violation, Object[] args) {
+		this.rule = rule;
+		this.fileName = ctx.getSourceCodeFilename();
+		// like PMD formats the message of a rule
+		this.description = MessageFormat.format(rule.getMessage().replace("${", "$'{'"), args);
+		this.violation = violation;
+	}
+
+	@Override
+	public Rule getRule() {
+		return this.rule;
+	}
+
+	@Override
+	public String getDescription() {
+		return this.description;
+	}
+
+	@Override
+	public boolean isSuppressed() {
+		return this.violation.isSuppressed();
+	}
+
+	@Override
+	public String getFilename() {
+		return this.fileName;
+	}
+
+	@Override
+	public int getBeginLine() {
+		return this.violation.getLine();
+	}
+
+	@Override
+	public int getBeginColumn() {
+		return this.violation.getColumn();
+	}
+
+	@Override
+	public int getEndLine() {
+		return this.violation.getEndLine();
+	}
+
+	@Override
+	public int getEndColumn() {
+		return this.violation.getEndColumn();
+	}
+
+	@Override
+	public String getPackageName() {
+		return this.violation.getPackageName();
+	}
+
+	@Override
+	public String getClassName() {
+		return this.violation.getClassName();
+	}
+
+	@Override
+	public String getMethodName() {
+		return this.violation.getMethodName();
+	}
+
+	@Override
+	public String getVariableName() {
+		return this.violation.getVariableName();
+	}
+}
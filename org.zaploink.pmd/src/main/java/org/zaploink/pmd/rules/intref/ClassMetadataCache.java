@@ -0,0 +1,127 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Bounded, thread-safe cache of the metadata of classes resolved by PMD's type resolution (type resolution mode of the
+ * {@link ReferenceToInternal} rule), shared by all files of a PMD run so each class is inspected only once.
+ *
+ * <p>
+ * Only type names are kept (no {@link Class} objects), so the cache does not pin the auxclasspath class loader. It is
+ * cleared at the start of every PMD run. Bounded like the other caches of the rule, see {@link BoundedCache}.
+ *
+ * @author kvg
+ */
+final class ClassMetadataCache {
+	private static final String[] NO_NAMES = new String[0];
+
+	private final BoundedCache<String, String[]> inheritedTypes;
+
+	/**
+	 * @param maxSize
+	 *            maximal number of cached classes, <code>0</code> disables caching
+	 */
+	ClassMetadataCache(int maxSize) {
+		this.inheritedTypes = new BoundedCache<>(maxSize, 1 << 10);
+	}
+
+	/**
+	 * Returns the types a class implicitly refers to by inheritance: all its super classes and interfaces and the types
+	 * in the signatures of the non-private methods and constructors it declares or inherits (e.g. the parameter types
+	 * of a method to be overridden).
+	 *
+	 * @return names of the (top level) types, see {@link #typeName(Class)}
+	 */
+	String[] getInheritedTypes(Class<?> type) {
+		String key = type.getName();
+		String[] names = this.inheritedTypes.get(key);
+		if (names == null) {
+			names = collectInheritedTypes(type);
+			this.inheritedTypes.put(key, names);
+		}
+		return names;
+	}
+
+	private String[] collectInheritedTypes(Class<?> type) {
+		Set<String> names = new LinkedHashSet<>();
+		try {
+			for (Constructor<?> constructor : type.getDeclaredConstructors()) {
+				addSignatureTypes(constructor, names);
+			}
+			for (Method method : type.getDeclaredMethods()) {
+				addSignatureTypes(method, names);
+			}
+			Class<?> superclass = type.getSuperclass();
+			if (superclass != null && superclass != Object.class) {
+				addSupertype(superclass, names);
+			}
+			for (Class<?> superinterface : type.getInterfaces()) {
+				addSupertype(superinterface, names);
+			}
+		}
+		catch (LinkageError | SecurityException ex) {
+			// incomplete auxclasspath, use what we have
+		}
+		names.remove(typeName(type));
+		return names.isEmpty() ? NO_NAMES : names.toArray(new String[names.size()]);
+	}
+
+	private void addSupertype(Class<?> supertype, Set<String> names) {
+		names.add(typeName(supertype));
+		for (String name : getInheritedTypes(supertype)) {
+			names.add(name);
+		}
+	}
+
+	private static void addSignatureTypes(Executable executable, Set<String> names) {
+		if (Modifier.isPrivate(executable.getModifiers()) || executable.isSynthetic()) {
+			return;
+		}
+		if (executable instanceof Method) {
+			addType(((Method) executable).getReturnType(), names);
+		}
+		for (Class<?> parameterType : executable.getParameterTypes()) {
+			addType(parameterType, names);
+		}
+		for (Class<?> exceptionType : executable.getExceptionTypes()) {
+			addType(exceptionType, names);
+		}
+	}
+
+	private static void addType(Class<?> type, Set<String> names) {
+		while (type.isArray()) {
+			type = type.getComponentType();
+		}
+		if (!type.isPrimitive()) {
+			names.add(typeName(type));
+		}
+	}
+
+	/**
+	 * @return fully qualified name of the top level type of the given type (the domain of a nested type is the one of
+	 *         its top level type)
+	 */
+	static String typeName(Class<?> type) {
+		String name = type.getName();
+		int nested = name.indexOf('$');
+		return (nested < 0) ? name : name.substring(0, nested);
+	}
+
+	void clear() {
+		this.inheritedTypes.clear();
+	}
+
+	int size() {
+		return this.inheritedTypes.size();
+	}
+
+	@Override
+	public String toString() {
+		return this.inheritedTypes.toString();
+	}
+}
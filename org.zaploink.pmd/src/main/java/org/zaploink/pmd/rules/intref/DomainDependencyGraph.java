@@ -0,0 +1,217 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.zaploink.pmd.rules.intref.DomainElement.Type;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Aggregates the references between domains found by the {@link ReferenceToInternal} rule into a domain dependency
+ * graph: one edge per (referencing domain, referenced domain) pair with the number of references to the public and to
+ * the private part of the referenced domain. References within a domain are not counted.
+ *
+ * <p>
+ * Thread-safe and lock-free once an edge exists (all PMD threads add to the same graph). Memory is proportional to the
+ * number of domain pairs, not to the number of analyzed files.
+ *
+ * @author kvg
+ */
+final class DomainDependencyGraph {
+	private final ConcurrentHashMap<String, ConcurrentHashMap<String, Edge>> edges = new ConcurrentHashMap<>();
+
+	/**
+	 * Counts a reference from an element of domain <code>from</code> to the given element.
+	 */
+	void addReference(String from, ResolvedDomain to) {
+		addReference(from, to.getDomain(), to.getType());
+	}
+
+	void addReference(String from, String to, Type type) {
+		if (from.equals(to)) {
+			return;
+		}
+		ConcurrentHashMap<String, Edge> targets = this.edges.get(from);
+		if (targets == null) {
+			targets = this.edges.computeIfAbsent(from, k -> new ConcurrentHashMap<>());
+		}
+		Edge edge = targets.get(to);
+		if (edge == null) {
+			edge = targets.computeIfAbsent(to, k -> new Edge());
+		}
+		(type == Type.PUBLIC ? edge.publicReferences : edge.privateReferences).increment();
+	}
+
+	void clear() {
+		this.edges.clear();
+	}
+
+	/**
+	 * @return number of edges (domain pairs)
+	 */
+	int size() {
+		int size = 0;
+		for (Map<String, Edge> targets : this.edges.values()) {
+			size += targets.size();
+		}
+		return size;
+	}
+
+	/**
+	 * @return snapshot of the edges, sorted by referencing and referenced domain
+	 */
+	List<EdgeCount> getEdges() {
+		List<EdgeCount> result = new ArrayList<>();
+		for (Map.Entry<String, ConcurrentHashMap<String, Edge>> from : new TreeMap<>(this.edges).entrySet()) {
+			for (Map.Entry<String, Edge> to : new TreeMap<>(from.getValue()).entrySet()) {
+				Edge edge = to.getValue();
+				result.add(new EdgeCount(from.getKey(), to.getKey(), edge.publicReferences.sum(),
+						edge.privateReferences.sum()));
+			}
+		}
+		return result;
+	}
+
+	void writeTo(Path file) throws IOException {
+		if (file.getParent() != null) {
+			Files.createDirectories(file.getParent());
+		}
+		try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			write(out, Format.of(file));
+		}
+	}
+
+	void write(Writer out, Format format) throws IOException {
+		List<EdgeCount> edges = getEdges();
+		switch (format) {
+		case JSON:
+			writeJson(out, edges);
+			break;
+		case DOT:
+			writeDot(out, edges);
+			break;
+		default:
+			writeCsv(out, edges);
+			break;
+		}
+		out.flush();
+	}
+
+	private static void writeCsv(Writer out, List<EdgeCount> edges) throws IOException {
+		out.write("from,to,public,private\n");
+		for (EdgeCount edge : edges) {
+			out.write(String.format("%s,%s,%d,%d\n", csv(edge.from), csv(edge.to), edge.publicReferences,
+					edge.privateReferences));
+		}
+	}
+
+	private static String csv(String value) {
+		boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0;
+		return quote ? '"' + value.replace("\"", "\"\"") + '"' : value;
+	}
+
+	private static void writeJson(Writer out, List<EdgeCount> edges) throws IOException {
+		JsonWriter json = new JsonWriter(out);
+		json.setIndent("\t");
+		json.beginArray();
+		for (EdgeCount edge : edges) {
+			json.beginObject();
+			json.name("from").value(edge.from);
+			json.name("to").value(edge.to);
+			json.name("public").value(edge.publicReferences);
+			json.name("private").value(edge.privateReferences);
+			json.endObject();
+		}
+		json.endArray();
+		json.flush();
+	}
+
+	private static void writeDot(Writer out, List<EdgeCount> edges) throws IOException {
+		out.write("digraph domains {\n");
+		for (EdgeCount edge : edges) {
+			// label: public/private references, edges with private references (i.e. violations) are red
+			out.write(String.format("\t%s -> %s [label=\"%d/%d\"%s];\n", dot(edge.from), dot(edge.to),
+					edge.publicReferences, edge.privateReferences, edge.privateReferences > 0 ? ", color=red" : ""));
+		}
+		out.write("}\n");
+	}
+
+	private static String dot(String id) {
+		return '"' + id.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+	}
+
+	/**
+	 * Output format of the graph, derived from the file extension (<code>.csv</code>, <code>.json</code> or
+	 * <code>.dot</code>, default is CSV).
+	 */
+	enum Format {
+		CSV, JSON, DOT;
+
+		static Format of(Path file) {
+			String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+			if (name.endsWith(".json")) {
+				return JSON;
+			}
+			if (name.endsWith(".dot") || name.endsWith(".gv")) {
+				return DOT;
+			}
+			return CSV;
+		}
+	}
+
+	private static final class Edge {
+		private final LongAdder publicReferences = new LongAdder();
+		private final LongAdder privateReferences = new LongAdder();
+	}
+
+	/**
+	 * Immutable snapshot of an edge.
+	 */
+	static final class EdgeCount {
+		private final String from;
+		private final String to;
+		private final long publicReferences;
+		private final long privateReferences;
+
+		EdgeCount(String from, String to, long publicReferences, long privateReferences) {
+			this.from = from;
+			this.to = to;
+			this.publicReferences = publicReferences;
+			this.privateReferences = privateReferences;
+		}
+
+		String getFrom() {
+			return this.from;
+		}
+
+		String getTo() {
+			return this.to;
+		}
+
+		long getPublicReferences() {
+			return this.publicReferences;
+		}
+
+		long getPrivateReferences() {
+			return this.privateReferences;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s -> %s: %d/%d", this.from, this.to, this.publicReferences,
+					this.privateReferences);
+		}
+	}
+}
@@ -49,25 +49,6 @@ public class DomainElement {
 		return this.type == Type.PUBLIC;
 	}
 
-	/**
-	 * Checks the dependency of this domain to the given other domain.
-	 *
-	 * @param otherNode
-	 *            referenced node
-	 * @return <code>true</code> if OK, <code>false</code> otherwise (i.e. not permitted)
-	 */
-	public boolean checkDependencyTo(DomainElement otherNode) {
-		// must either be same domain or - if different domain - reference to other domain must be public
-		return this.isSameDomainAs(otherNode) || otherNode.isPublic();
-	}
-
-	private boolean isSameDomainAs(DomainElement otherDomain) {
-		if (this.domain == null) {
-			return false;
-		}
-		return this.domain.equals(otherDomain.domain);
-	}
-
 	@Override
 	public String toString() {
 		return (this.domain == null)
@@ -0,0 +1,103 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns dense integer IDs (<code>0, 1, 2, ...</code>) to domain names, so domains can be compared by ID and used as
+ * indexes (see {@link AllowedDependencies}).
+ *
+ * <p>
+ * The IDs belong to one compiled rule config: every {@link DomainResolver} has its own IDs, and only domains resolved
+ * by the same resolver may be compared. A resolver compiled from a changed rule config only keeps the IDs of the
+ * domains of the compiled parts it reuses (see {@link #retaining}), the IDs of all other domains of the previous config
+ * are assigned again. So the IDs never outnumber the domains of the current config and the domains recognized by a
+ * {@link PackageRecognizer} (which get their ID when they are first recognized), no matter how often the config is
+ * reloaded.
+ *
+ * <p>
+ * Domain names are hierarchical: <code>payments.refunds</code> is a sub-domain of <code>payments</code>. The path of
+ * a domain (the IDs of its ancestors and its own, see {@link #pathOf}) is computed once per domain, so a sub-domain
+ * check is constant-time no matter how deep the domains are nested (see {@link ResolvedDomain#isWithin}).
+ *
+ * @author kvg
+ */
+final class DomainIds {
+	private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, int[]> paths = new ConcurrentHashMap<>();
+	// guarded by this
+	private final BitSet assigned = new BitSet();
+
+	/**
+	 * Returns new IDs that keep the IDs of the given domains and of their parent domains, e.g. of the domains of a
+	 * compiled part that is reused by a resolver compiled after the one of these IDs. The IDs of all other domains are
+	 * free and assigned to new domains.
+	 */
+	DomainIds retaining(Collection<String> domains) {
+		DomainIds retained = new DomainIds();
+		for (String domain : domains) {
+			String name = domain;
+			while (!retained.ids.containsKey(name)) {
+				Integer id = this.ids.get(name);
+				int[] path = this.paths.get(name);
+				if (id != null) {
+					retained.ids.put(name, id);
+					retained.assigned.set(id);
+				}
+				if (path != null) {
+					retained.paths.put(name, path);
+				}
+				int dot = name.lastIndexOf('.');
+				if (dot < 0) {
+					break;
+				}
+				name = name.substring(0, dot);
+			}
+		}
+		return retained;
+	}
+
+	/**
+	 * @return ID of the given domain, assigned on first use
+	 */
+	int idOf(String domain) {
+		Integer id = this.ids.get(domain);
+		if (id == null) {
+			id = this.ids.computeIfAbsent(domain, d -> nextFreeId());
+		}
+		return id;
+	}
+
+	private synchronized int nextFreeId() {
+		int id = this.assigned.nextClearBit(0);
+		this.assigned.set(id);
+		return id;
+	}
+
+	/**
+	 * @return IDs of the given domain and its parent domains, the top level domain first (e.g. the IDs of
+	 *         <code>payments</code> and <code>payments.refunds</code> for <code>payments.refunds</code>); the returned
+	 *         array must not be modified
+	 */
+	int[] pathOf(String domain) {
+		int[] path = this.paths.get(domain);
+		if (path == null) {
+			int dot = domain.lastIndexOf('.');
+			int[] parentPath = (dot < 0) ? new int[0] : pathOf(domain.substring(0, dot));
+			path = Arrays.copyOf(parentPath, parentPath.length + 1);
+			path[parentPath.length] = idOf(domain);
+			int[] previous = this.paths.putIfAbsent(domain, path);
+			path = (previous == null) ? path : previous;
+		}
+		return path;
+	}
+
+	/**
+	 * @return number of IDs assigned so far
+	 */
+	int size() {
+		return this.ids.size();
+	}
+}
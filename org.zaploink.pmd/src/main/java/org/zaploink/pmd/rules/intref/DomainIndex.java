@@ -0,0 +1,253 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.zaploink.pmd.rules.intref.DomainElement.Type;
+import org.zaploink.pmd.rules.intref.config.RuleConfigData.DomainDeclaration;
+import org.zaploink.pmd.rules.intref.config.RuleConfigData.DomainDeclaration.Section;
+
+/**
+ * Compiled form of the <code>explicitDomainDeclarations</code> of a rule config.
+ *
+ * <p>
+ * Explicit classes are kept in hash maps, explicit packages in a {@link PackageTrie} (public packages match exactly,
+ * private packages match as prefix, i.e. including all sub-packages). If several declarations match, the domain that
+ * is declared first in the rule config wins, and within a domain a class declaration wins over a package declaration.
+ * Only private packages of a sub-domain below the ones of a parent domain win regardless of the declaration order
+ * (e.g. <code>payments.refunds</code> in <code>com.acme.payments.internal.refunds</code> below <code>payments</code>
+ * in <code>com.acme.payments.internal</code>).
+ *
+ * <p>
+ * The index can be written as is (see {@link #write(DataOutputStream)}) and read back without indexing the declarations
+ * again, e.g. from a precompiled rule config (see {@link RuleConfigCompiler}).
+ *
+ * @author kvg
+ */
+final class DomainIndex {
+	private final DomainIds ids;
+	private final Map<String, ResolvedDomain> publicClasses;
+	private final Map<String, ResolvedDomain> privateClasses;
+	private final PackageTrie packages;
+	private final Set<String> rootNames;
+	private final List<String> domains;
+
+	DomainIndex(Map<String, DomainDeclaration> declarations, DomainIds ids) {
+		this(new Builder(ids).addAll(declarations));
+	}
+
+	private DomainIndex(Builder builder) {
+		this.ids = builder.ids;
+		this.publicClasses = builder.publicClasses;
+		this.privateClasses = builder.privateClasses;
+		this.packages = builder.packages.build();
+		this.rootNames = Collections.unmodifiableSet(builder.rootNames);
+		this.domains = Collections.unmodifiableList(builder.domains);
+	}
+
+	private DomainIndex(DomainIds ids, Map<String, ResolvedDomain> publicClasses,
+			Map<String, ResolvedDomain> privateClasses, PackageTrie packages, Set<String> rootNames,
+			List<String> domains) {
+		this.ids = ids;
+		this.publicClasses = publicClasses;
+		this.privateClasses = privateClasses;
+		this.packages = packages;
+		this.rootNames = Collections.unmodifiableSet(rootNames);
+		this.domains = Collections.unmodifiableList(domains);
+	}
+
+	/**
+	 * Reads an index written by {@link #write(DataOutputStream)}. The domains get their IDs from the given domain IDs,
+	 * not the ones they had in the written index.
+	 */
+	static DomainIndex read(DataInputStream in, DomainIds ids) throws IOException {
+		int count = in.readInt();
+		List<String> domains = new ArrayList<>(count);
+		ResolvedDomain[] publicParts = new ResolvedDomain[count];
+		ResolvedDomain[] privateParts = new ResolvedDomain[count];
+		for (int order = 0; order < count; order++) {
+			String domain = in.readUTF();
+			int[] path = ids.pathOf(domain);
+			domains.add(domain);
+			publicParts[order] = new ResolvedDomain(domain, Type.PUBLIC, order, path);
+			privateParts[order] = new ResolvedDomain(domain, Type.PRIVATE, order, path);
+		}
+		Map<String, ResolvedDomain> publicClasses = readClasses(in, publicParts);
+		Map<String, ResolvedDomain> privateClasses = readClasses(in, privateParts);
+		PackageTrie packages = PackageTrie.read(in, publicParts, privateParts);
+		int rootNameCount = in.readInt();
+		Set<String> rootNames = new LinkedHashSet<>();
+		for (int i = 0; i < rootNameCount; i++) {
+			rootNames.add(in.readUTF());
+		}
+		return new DomainIndex(ids, publicClasses, privateClasses, packages, rootNames, domains);
+	}
+
+	private static Map<String, ResolvedDomain> readClasses(DataInputStream in, ResolvedDomain[] parts)
+			throws IOException {
+		int count = in.readInt();
+		Map<String, ResolvedDomain> classes = new HashMap<>(count * 4 / 3 + 1);
+		for (int i = 0; i < count; i++) {
+			String className = in.readUTF();
+			classes.put(className, parts[in.readInt()]);
+		}
+		return classes;
+	}
+
+	/**
+	 * Writes this index, the domains by name and declaration order (see {@link #read(DataInputStream, DomainIds)}).
+	 */
+	void write(DataOutputStream out) throws IOException {
+		out.writeInt(this.domains.size());
+		for (String domain : this.domains) {
+			out.writeUTF(domain);
+		}
+		writeClasses(this.publicClasses, out);
+		writeClasses(this.privateClasses, out);
+		this.packages.write(out);
+		out.writeInt(this.rootNames.size());
+		for (String rootName : this.rootNames) {
+			out.writeUTF(rootName);
+		}
+	}
+
+	private static void writeClasses(Map<String, ResolvedDomain> classes, DataOutputStream out) throws IOException {
+		out.writeInt(classes.size());
+		for (Entry<String, ResolvedDomain> entry : classes.entrySet()) {
+			out.writeUTF(entry.getKey());
+			out.writeInt(entry.getValue().getOrder());
+		}
+	}
+
+	/**
+	 * @return the domain IDs of the domains of this index
+	 */
+	DomainIds getDomainIds() {
+		return this.ids;
+	}
+
+	/**
+	 * @return the declared domains, in declaration order
+	 */
+	List<String> getDomains() {
+		return this.domains;
+	}
+
+	/**
+	 * @return the root packages (first segments) of all declared packages and classes (see {@link RootPackageFilter})
+	 */
+	Set<String> getRootNames() {
+		return this.rootNames;
+	}
+
+	/**
+	 * @return the public part of a domain that explicitly declares the given class or its package, <code>null</code>
+	 *         if none
+	 */
+	ResolvedDomain findPublic(String className, String packageName) {
+		return ResolvedDomain.first(this.publicClasses.get(className), this.packages.findExact(packageName));
+	}
+
+	/**
+	 * @return the private part of a domain that explicitly declares the given class, its package or any parent
+	 *         package, <code>null</code> if none
+	 */
+	ResolvedDomain findPrivate(String className, String packageName) {
+		return ResolvedDomain.first(this.privateClasses.get(className), this.packages.findPrefix(packageName));
+	}
+
+	/**
+	 * Indexes domain declarations name by name, in declaration order, so they do not have to be held in memory (e.g.
+	 * while they are read, see {@link RuleConfigStreamReader}).
+	 */
+	static final class Builder {
+		private final DomainIds ids;
+		private final Map<String, ResolvedDomain> publicClasses = new HashMap<>();
+		private final Map<String, ResolvedDomain> privateClasses = new HashMap<>();
+		private final PackageTrie.Builder packages = new PackageTrie.Builder();
+		private final Set<String> rootNames = new LinkedHashSet<>();
+		private final List<String> domains = new ArrayList<>();
+		private int order;
+		// parts of the current domain
+		private ResolvedDomain publicPart;
+		private ResolvedDomain privatePart;
+
+		Builder(DomainIds ids) {
+			this.ids = ids;
+		}
+
+		/**
+		 * Adds the declaration of the given domain, declared after the ones added before.
+		 */
+		Builder add(String domain, DomainDeclaration declaration) {
+			startDomain(domain);
+			if (declaration != null) {
+				for (Section section : Section.values()) {
+					for (String name : declaration.getNames(section)) {
+						addName(section, name);
+					}
+				}
+			}
+			return this;
+		}
+
+		Builder addAll(Map<String, DomainDeclaration> declarations) {
+			for (Entry<String, DomainDeclaration> entry : declarations.entrySet()) {
+				add(entry.getKey(), entry.getValue());
+			}
+			return this;
+		}
+
+		/**
+		 * Starts the declaration of the given domain, declared after the ones started before, its names are added with
+		 * {@link #addName(Section, String)}.
+		 */
+		void startDomain(String domain) {
+			if (this.publicPart != null) {
+				this.order++;
+			}
+			int[] path = this.ids.pathOf(domain);
+			this.publicPart = new ResolvedDomain(domain, Type.PUBLIC, this.order, path);
+			this.privatePart = new ResolvedDomain(domain, Type.PRIVATE, this.order, path);
+			this.domains.add(domain);
+		}
+
+		/**
+		 * Adds a class or package name of the given section of the current domain declaration (<code>null</code> and
+		 * empty names are ignored).
+		 */
+		void addName(Section section, String name) {
+			if (name == null || name.isEmpty()) {
+				return;
+			}
+			int dot = name.indexOf('.');
+			this.rootNames.add((dot < 0) ? name : name.substring(0, dot));
+			switch (section) {
+			case PUBLIC_CLASSES:
+				this.publicClasses.putIfAbsent(name, this.publicPart);
+				break;
+			case PUBLIC_PACKAGES:
+				this.packages.addExact(name, this.publicPart);
+				break;
+			case PRIVATE_CLASSES:
+				this.privateClasses.putIfAbsent(name, this.privatePart);
+				break;
+			default:
+				this.packages.addPrefix(name, this.privatePart);
+			}
+		}
+
+		DomainIndex build() {
+			return new DomainIndex(this);
+		}
+	}
+}
@@ -1,102 +1,269 @@
 package org.zaploink.pmd.rules.intref;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Map.Entry;
-import java.util.Objects;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.LongAdder;
 
+import org.zaploink.pmd.rules.ZaploinkPMD;
 import org.zaploink.pmd.rules.intref.DomainElement.Type;
 import org.zaploink.pmd.rules.intref.config.RuleConfigData;
-import org.zaploink.pmd.rules.intref.config.RuleConfigData.DomainDeclaration;
+import org.zaploink.pmd.rules.intref.config.RuleConfigFingerprint;
 
-import net.sourceforge.pmd.lang.java.ast.ASTClassOrInterfaceDeclaration;
 import net.sourceforge.pmd.lang.java.ast.ASTImportDeclaration;
 
 class DomainResolver {
 
-	private final List<Pattern> publicPackageRecs = new ArrayList<>();
-	private final List<Pattern> privatePackageRecs = new ArrayList<>();
-	private final RuleConfigData ruleConfig;
+	private final DomainIds domainIds;
+	private final AllowedDependencies allowedDependencies;
+	private final PackageRecognizer publicPackageRecs;
+	private final PackageRecognizer privatePackageRecs;
+	private final DomainIndex explicitDeclarations;
+	private final ResolutionCache cache;
+	private final RootPackageFilter rootPackageFilter;
+	private final LayerIndex layers;
+	private final LongAdder fastPathRejects = new LongAdder();
+	private final String configFingerprint;
+	private final String explicitDeclarationsFingerprint;
+	// null if disabled
+	private final RuleMetrics metrics = RuleMetrics.global();
 
 	DomainResolver(RuleConfigData ruleConfig) {
-		this.ruleConfig = ruleConfig;
-		ruleConfig.getAutomaticDomainRecognition().getPublicPackages()
-				.stream()
-				.filter(Objects::nonNull)
-				.forEach(regex -> this.publicPackageRecs.add(Pattern.compile(regex)));
-		ruleConfig.getAutomaticDomainRecognition().getPrivatePackages()
-				.stream()
-				.filter(Objects::nonNull)
-				.forEach(regex -> this.privatePackageRecs.add(Pattern.compile(regex)));
+		this(ruleConfig, ZaploinkPMD.getConfig().resolutionCacheSize());
 	}
 
-	public DomainElement resolveDomain(String packageName, ASTClassOrInterfaceDeclaration classDecl) {
-		String className = String.format("%s.%s", packageName, classDecl.getImage());
-		return resolveDomainFor(new DomainElement(classDecl, className, packageName));
+	DomainResolver(RuleConfigData ruleConfig, int cacheSize) {
+		this(ruleConfig, cacheSize, null);
 	}
 
-	public DomainElement resolveDomain(ASTImportDeclaration importDecl) {
-		return resolveDomainFor(
-				new DomainElement(importDecl, importDecl.getImportedName(), importDecl.getPackageName()));
+	/**
+	 * Compiles the given rule config, reusing the compiled parts of a previous resolver that are unchanged.
+	 *
+	 * @param previous
+	 *            resolver compiled from a previous version of the rule config, may be <code>null</code>
+	 */
+	DomainResolver(RuleConfigData ruleConfig, int cacheSize, DomainResolver previous) {
+		this(ruleConfig, RuleConfigFingerprint.of(ruleConfig),
+				RuleConfigFingerprint.of(ruleConfig.getExplicitDomainDeclarations()), cacheSize, previous);
+	}
+
+	/**
+	 * Compiles a precompiled rule config (see {@link RuleConfigCompiler}), whose fingerprints are already known.
+	 */
+	DomainResolver(RuleConfigData ruleConfig, String configFingerprint, String explicitDeclarationsFingerprint,
+			int cacheSize, DomainResolver previous) {
+		this(ruleConfig, null, configFingerprint, explicitDeclarationsFingerprint, cacheSize, previous);
+	}
+
+	/**
+	 * Compiles a rule config whose explicit domain declarations have already been indexed while it was read (see
+	 * {@link RuleConfigStreamReader}), the explicit domain declarations of the given rule config are ignored.
+	 *
+	 * @param explicitDeclarations
+	 *            index of the explicit domain declarations, built with new {@link DomainIds}, <code>null</code> to
+	 *            index the explicit domain declarations of the rule config
+	 */
+	DomainResolver(RuleConfigData ruleConfig, DomainIndex explicitDeclarations, String configFingerprint,
+			String explicitDeclarationsFingerprint, int cacheSize, DomainResolver previous) {
+		this.cache = new ResolutionCache(cacheSize, this::resolveUncached);
+		this.configFingerprint = configFingerprint;
+		this.explicitDeclarationsFingerprint = explicitDeclarationsFingerprint;
+		if (previous != null && previous.explicitDeclarationsFingerprint.equals(explicitDeclarationsFingerprint)) {
+			// the reused index keeps the IDs of its domains, the ones of the other domains of the previous config are
+			// free again
+			this.explicitDeclarations = previous.explicitDeclarations;
+			this.domainIds = previous.domainIds.retaining(this.explicitDeclarations.getDomains());
+		}
+		else if (explicitDeclarations != null) {
+			this.explicitDeclarations = explicitDeclarations;
+			this.domainIds = explicitDeclarations.getDomainIds();
+		}
+		else {
+			this.domainIds = new DomainIds();
+			this.explicitDeclarations = new DomainIndex(ruleConfig.getExplicitDomainDeclarations(), this.domainIds);
+		}
+		this.publicPackageRecs = reuseOrCreate(ruleConfig.getAutomaticDomainRecognition().getPublicPackages(),
+				Type.PUBLIC, (previous == null) ? null : previous.publicPackageRecs);
+		this.privatePackageRecs = reuseOrCreate(ruleConfig.getAutomaticDomainRecognition().getPrivatePackages(),
+				Type.PRIVATE, (previous == null) ? null : previous.privatePackageRecs);
+		this.allowedDependencies = (ruleConfig.getAllowedDependencies() == null
+				|| ruleConfig.getAllowedDependencies().isEmpty())
+						? AllowedDependencies.NONE
+						: new AllowedDependencies(ruleConfig.getAllowedDependencies(), this.domainIds);
+		this.rootPackageFilter = new RootPackageFilter.Builder()
+				.addLiteralPrefixes(this.publicPackageRecs.getLiteralPrefixes())
+				.addLiteralPrefixes(this.privatePackageRecs.getLiteralPrefixes())
+				.addRootNames(this.explicitDeclarations.getRootNames())
+				.build();
+		this.layers = new LayerIndex(ruleConfig.getLayers(), cacheSize);
+		if (this.metrics != null) {
+			this.metrics.track(this);
+		}
+	}
+
+	/**
+	 * @return recognizer of the given regular expressions with the domain IDs of this resolver, reusing the compiled
+	 *         patterns of the previous one if they are unchanged (the domains it recognized are recognized again)
+	 */
+	private PackageRecognizer reuseOrCreate(List<String> regexes, Type type, PackageRecognizer previous) {
+		return (previous != null && previous.hasRegexes(regexes))
+				? previous.withIds(this.domainIds)
+				: new PackageRecognizer(regexes, type, this.domainIds);
+	}
+
+	/**
+	 * @return number of domain IDs assigned by this resolver (see {@link DomainIds})
+	 */
+	int getDomainIdCount() {
+		return this.domainIds.size();
+	}
+
+	/**
+	 * Fast negative check (does not allocate): returns <code>false</code> if the given fully qualified name cannot
+	 * belong to any domain (e.g. <code>java.util.List</code> if no domain is declared below <code>java</code>), in which
+	 * case it does not have to be resolved at all.
+	 */
+	public boolean mightHaveDomain(String qualifiedName) {
+		if (this.rootPackageFilter.mightMatch(qualifiedName)) {
+			return true;
+		}
+		this.fastPathRejects.increment();
+		return false;
+	}
+
+	/**
+	 * @return fingerprint of the rule config this resolver was compiled from
+	 */
+	String getConfigFingerprint() {
+		return this.configFingerprint;
+	}
+
+	/**
+	 * @return <code>true</code> if the given resolver shares compiled parts with this one
+	 */
+	boolean sharesPartsWith(DomainResolver other) {
+		return this.explicitDeclarations == other.explicitDeclarations
+				|| this.publicPackageRecs.sharesPatternsWith(other.publicPackageRecs)
+				|| this.privatePackageRecs.sharesPatternsWith(other.privatePackageRecs);
+	}
+
+	long getFastPathRejectCount() {
+		return this.fastPathRejects.sum();
+	}
+
+	RootPackageFilter getRootPackageFilter() {
+		return this.rootPackageFilter;
+	}
+
+	/**
+	 * Resolves the domain of a type declared in the given package.
+	 */
+	public ResolvedDomain resolveType(String packageName, String typeName) {
+		if (packageName.isEmpty()) {
+			return resolve(typeName, 0);
+		}
+		return resolve(packageName.concat(".").concat(typeName), packageName.length());
+	}
+
+	/**
+	 * Resolves the domain of an imported type (or package, for on-demand imports, or the declaring type, for static
+	 * imports). Does not allocate if a non-static import has been resolved before.
+	 */
+	public ResolvedDomain resolveImport(ASTImportDeclaration importDecl) {
+		String importedName = importedName(importDecl);
+		int packageLength = (importDecl.isImportOnDemand() && !importDecl.isStatic())
+				? importedName.length()
+				: Math.max(0, importedName.lastIndexOf('.'));
+		return resolve(importedName, packageLength);
+	}
+
+	/**
+	 * @return the name an import refers to: the imported type, the package of an on-demand import or the type that
+	 *         declares the statically imported member(s)
+	 */
+	static String importedName(ASTImportDeclaration importDecl) {
+		String importedName = importDecl.getImportedName();
+		if (importDecl.isStatic() && !importDecl.isImportOnDemand()) {
+			// import static com.acme.Foo.bar;
+			return importedName.substring(0, Math.max(0, importedName.lastIndexOf('.')));
+		}
+		return importedName;
+	}
+
+	/**
+	 * @param qualifiedName
+	 *            fully qualified name
+	 * @param packageLength
+	 *            length of the package name part of the qualified name
+	 */
+	ResolvedDomain resolve(String qualifiedName, int packageLength) {
+		if (this.metrics == null) {
+			return this.cache.get(qualifiedName, packageLength);
+		}
+		long start = System.nanoTime();
+		ResolvedDomain resolved = this.cache.get(qualifiedName, packageLength);
+		this.metrics.resolved(System.nanoTime() - start);
+		return resolved;
 	}
 
-	// public overrule private part definitions, explicit part definitions overrules automatic domain recognition
 	DomainElement resolveDomainFor(DomainElement assoc) {
+		String nodeName = assoc.getNodeName();
+		String packageName = assoc.getPackageName();
+		ResolvedDomain resolved = nodeName.startsWith(packageName)
+				? resolve(nodeName, packageName.length())
+				: resolveUncached(nodeName, packageName);
+		assoc.setDomain(resolved.getDomain(), resolved.getType());
+		return assoc;
+	}
+
+	/**
+	 * Checks whether an element of the first domain may depend on an element of the second one: if the second one is
+	 * public, of the same domain or of a domain whose private part the first domain is allowed to access.
+	 *
+	 * @return <code>true</code> if OK, <code>false</code> otherwise (i.e. not permitted)
+	 */
+	boolean mayAccess(ResolvedDomain from, ResolvedDomain to) {
+		return from.mayAccess(to) || this.allowedDependencies.allows(from.getId(), to.getId());
+	}
+
+	/**
+	 * @return the layers of the rule config (see {@link ReferenceToUpperLayer})
+	 */
+	LayerIndex getLayers() {
+		return this.layers;
+	}
+
+	ResolutionCache getResolutionCache() {
+		return this.cache;
+	}
+
+	// public overrule private part definitions, explicit part definitions overrules automatic domain recognition
+	private ResolvedDomain resolveUncached(String nodeName, String packageName) {
 		// 1.1 match against explicit list of public packages and classes
-		for (Entry<String, DomainDeclaration> entry : this.ruleConfig.getExplicitDomainDeclarations().entrySet()) {
-			for (String className : entry.getValue().getPublicParts().getClasses()) {
-				if (className.equals(assoc.getNodeName())) {
-					assoc.setDomain(entry.getKey(), Type.PUBLIC);
-					return assoc;
-				}
-			}
-			for (String packageName : entry.getValue().getPublicParts().getPackages()) {
-				if (packageName.equals(assoc.getPackageName())) {
-					assoc.setDomain(entry.getKey(), Type.PUBLIC);
-					return assoc;
-				}
-			}
+		ResolvedDomain explicit = this.explicitDeclarations.findPublic(nodeName, packageName);
+		if (explicit != null) {
+			return explicit;
 		}
 
 		// 1.2 try automatic public package recognition
-		for (Pattern rec : this.publicPackageRecs) {
-			Matcher matcher = rec.matcher(assoc.getPackageName());
-			if (matcher.matches()) {
-				assoc.setDomain(matcher.group(1), Type.PUBLIC);
-				return assoc;
-			}
+		ResolvedDomain recognized = this.publicPackageRecs.recognize(packageName);
+		if (recognized != null) {
+			return recognized;
 		}
 
 		// 2.1 match against explicit list of private packages and classes
-		for (Entry<String, DomainDeclaration> entry : this.ruleConfig.getExplicitDomainDeclarations().entrySet()) {
-			for (String className : entry.getValue().getPrivateParts().getClasses()) {
-				if (className.equals(assoc.getNodeName())) {
-					assoc.setDomain(entry.getKey(), Type.PRIVATE);
-					return assoc;
-				}
-			}
-			// explicit private package definitions will match as prefix (everything below is private, too)
-			for (String packageName : entry.getValue().getPrivateParts().getPackages()) {
-				if (assoc.getPackageName().startsWith(packageName)) {
-					assoc.setDomain(entry.getKey(), Type.PRIVATE);
-					return assoc;
-				}
-			}
+		// explicit private package definitions will match as prefix (everything below is private, too)
+		explicit = this.explicitDeclarations.findPrivate(nodeName, packageName);
+		if (explicit != null) {
+			return explicit;
 		}
 
 		// 2.2 try automatic private package recognition
-		for (Pattern rec : this.privatePackageRecs) {
-			Matcher matcher = rec.matcher(assoc.getPackageName());
-			if (matcher.matches()) {
-				assoc.setDomain(matcher.group(1), Type.PRIVATE);
-				return assoc;
-			}
+		recognized = this.privatePackageRecs.recognize(packageName);
+		if (recognized != null) {
+			return recognized;
 		}
 
 		// no domain could be inferred
-		return assoc;
+		return ResolvedDomain.NONE;
 	}
 
-}
\ No newline at end of file
+}
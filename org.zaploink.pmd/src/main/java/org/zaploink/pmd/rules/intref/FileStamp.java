@@ -0,0 +1,66 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Modification time and size of a file, read with a single file system call: if they are unchanged, the file is
+ * considered unchanged without reading it (like <code>make</code> or <code>git status</code> do).
+ *
+ * @author kvg
+ */
+final class FileStamp {
+	private final long lastModified;
+	private final long size;
+
+	FileStamp(long lastModified, long size) {
+		this.lastModified = lastModified;
+		this.size = size;
+	}
+
+	/**
+	 * @return stamp of the given regular file, <code>null</code> if it is <code>null</code>, not a regular file or
+	 *         cannot be accessed
+	 */
+	static FileStamp of(Path file) {
+		if (file == null) {
+			return null;
+		}
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			return attributes.isRegularFile()
+					? new FileStamp(attributes.lastModifiedTime().toMillis(), attributes.size())
+					: null;
+		}
+		catch (IOException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return modification time in milliseconds since the epoch
+	 */
+	long getLastModified() {
+		return this.lastModified;
+	}
+
+	long getSize() {
+		return this.size;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof FileStamp)) {
+			return false;
+		}
+		FileStamp other = (FileStamp) obj;
+		return this.lastModified == other.lastModified && this.size == other.size;
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(this.lastModified) * 31 + Long.hashCode(this.size);
+	}
+}
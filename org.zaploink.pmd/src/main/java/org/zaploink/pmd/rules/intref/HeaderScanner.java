@@ -0,0 +1,183 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Lexical scanner that reduces a Java source file to its header: the package declaration, the imports and the top level
+ * type declarations with empty bodies. Parsing the header instead of the whole file is enough to check the imports and
+ * the types a file declares (header mode of the {@link ReferenceToInternalAnalyzer}).
+ *
+ * <p>
+ * Malformed input is reported (as a {@link CharacterCodingException}) instead of being replaced, just like the parser's
+ * reader of a whole file does. The scanner only knows comments, string and character literals, parentheses and braces.
+ * A type body is reduced to its line breaks (and the blanks of its last line), hence the lines and columns of the header
+ * are the same as in the original file.
+ *
+ * @author kvg
+ */
+final class HeaderScanner {
+
+	private HeaderScanner() {
+	}
+
+	/**
+	 * Reads a source file and empties the bodies of its top level types.
+	 *
+	 * @return the header of the file, <code>null</code> if it has no type body or its braces are unbalanced (left to
+	 *         the parser)
+	 * @throws CharacterCodingException
+	 *             if the file is not valid in the given charset
+	 */
+	static String header(Path file, Charset charset) throws IOException {
+		CharsetDecoder decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+				.onUnmappableCharacter(CodingErrorAction.REPORT);
+		return header(decoder.decode(ByteBuffer.wrap(Files.readAllBytes(file))));
+	}
+
+	/**
+	 * @return the given source with empty type bodies, <code>null</code> if it has no type body or its braces are
+	 *         unbalanced
+	 */
+	private static String header(CharSequence source) {
+		StringBuilder header = new StringBuilder();
+		int length = source.length();
+		int copied = 0; // the source before this index is in the header
+		int parens = 0;
+		int i = 0;
+		while (i < length) {
+			int skipped = skip(source, i);
+			if (skipped > i) {
+				i = skipped;
+				continue;
+			}
+			char c = source.charAt(i);
+			if (c == '(') {
+				parens++;
+			}
+			else if (c == ')') {
+				parens--;
+			}
+			else if (c == '{' && parens == 0) { // braces in parentheses are annotation values
+				int bodyEnd = bodyEnd(source, i);
+				if (bodyEnd < 0) {
+					return null;
+				}
+				header.append(source, copied, i + 1);
+				appendBlanks(source, i + 1, bodyEnd, header);
+				header.append('}');
+				copied = bodyEnd + 1;
+				i = copied;
+				continue;
+			}
+			i++;
+		}
+		if (copied == 0) {
+			return null;
+		}
+		return header.append(source, copied, length).toString();
+	}
+
+	/**
+	 * @return index of the brace that closes the type body opened at the given index, -1 if there is none
+	 */
+	private static int bodyEnd(CharSequence source, int bodyStart) {
+		int depth = 0;
+		int i = bodyStart;
+		while (i < source.length()) {
+			int skipped = skip(source, i);
+			if (skipped > i) {
+				i = skipped;
+				continue;
+			}
+			char c = source.charAt(i);
+			if (c == '{') {
+				depth++;
+			}
+			else if (c == '}' && --depth == 0) {
+				return i;
+			}
+			i++;
+		}
+		return -1;
+	}
+
+	/**
+	 * Appends the line breaks of the given part of the source, and blanks for the chars of its last line (tabs are
+	 * kept, they count as several columns).
+	 */
+	private static void appendBlanks(CharSequence source, int start, int end, StringBuilder header) {
+		int lastLine = start;
+		for (int i = start; i < end; i++) {
+			char c = source.charAt(i);
+			if (c == '\n' || c == '\r') {
+				header.append(c);
+				lastLine = i + 1;
+			}
+		}
+		for (int i = lastLine; i < end; i++) {
+			header.append((source.charAt(i) == '\t') ? '\t' : ' ');
+		}
+	}
+
+	/**
+	 * @return index after the comment or literal that starts at the given index, the index itself if none does
+	 */
+	private static int skip(CharSequence source, int i) {
+		char c = source.charAt(i);
+		char next = (i + 1 < source.length()) ? source.charAt(i + 1) : 0;
+		if (c == '/' && next == '/') {
+			return lineEnd(source, i + 2);
+		}
+		if (c == '/' && next == '*') {
+			return commentEnd(source, i + 2);
+		}
+		if (c == '"' || c == '\'') {
+			return literalEnd(source, i);
+		}
+		return i;
+	}
+
+	private static int lineEnd(CharSequence source, int start) {
+		int i = start;
+		while (i < source.length() && source.charAt(i) != '\n' && source.charAt(i) != '\r') {
+			i++;
+		}
+		return i;
+	}
+
+	private static int commentEnd(CharSequence source, int start) {
+		for (int i = start; i + 1 < source.length(); i++) {
+			if (source.charAt(i) == '*' && source.charAt(i + 1) == '/') {
+				return i + 2;
+			}
+		}
+		return source.length();
+	}
+
+	private static int literalEnd(CharSequence source, int start) {
+		char quote = source.charAt(start);
+		int i = start + 1;
+		while (i < source.length()) {
+			char c = source.charAt(i);
+			if (c == '\\') {
+				i += 2;
+				continue;
+			}
+			if (c == quote) {
+				return i + 1;
+			}
+			if (c == '\n' || c == '\r') {
+				return i; // unterminated, left to the parser to report
+			}
+			i++;
+		}
+		return source.length();
+	}
+}
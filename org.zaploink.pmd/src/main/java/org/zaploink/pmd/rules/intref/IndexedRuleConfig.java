@@ -0,0 +1,55 @@
+package org.zaploink.pmd.rules.intref;
+
+import org.zaploink.pmd.rules.intref.config.RuleConfigData;
+
+/**
+ * A rule config whose explicit domain declarations are already indexed, with its fingerprints: read from a JSON file
+ * (see {@link RuleConfigStreamReader}) or loaded from its precompiled form (see {@link RuleConfigCompiler}). Both read
+ * the same JSON the same way, so a config gets the same index and fingerprints either way.
+ *
+ * @author kvg
+ */
+final class IndexedRuleConfig {
+	private final RuleConfigData ruleConfig;
+	private final DomainIndex explicitDeclarations;
+	private final String configFingerprint;
+	private final String explicitDeclarationsFingerprint;
+
+	IndexedRuleConfig(RuleConfigData ruleConfig, DomainIndex explicitDeclarations, String configFingerprint,
+			String explicitDeclarationsFingerprint) {
+		this.ruleConfig = ruleConfig;
+		this.explicitDeclarations = explicitDeclarations;
+		this.configFingerprint = configFingerprint;
+		this.explicitDeclarationsFingerprint = explicitDeclarationsFingerprint;
+	}
+
+	/**
+	 * @return the rule config without its explicit domain declarations (see {@link #getExplicitDeclarations()})
+	 */
+	RuleConfigData getRuleConfig() {
+		return this.ruleConfig;
+	}
+
+	DomainIndex getExplicitDeclarations() {
+		return this.explicitDeclarations;
+	}
+
+	String getConfigFingerprint() {
+		return this.configFingerprint;
+	}
+
+	String getExplicitDeclarationsFingerprint() {
+		return this.explicitDeclarationsFingerprint;
+	}
+
+	/**
+	 * Compiles the rule config with its index, reusing the compiled parts of a previous resolver that are unchanged.
+	 *
+	 * @param previous
+	 *            resolver compiled from a previous version of the rule config, may be <code>null</code>
+	 */
+	DomainResolver compile(int cacheSize, DomainResolver previous) {
+		return new DomainResolver(this.ruleConfig, this.explicitDeclarations, this.configFingerprint,
+				this.explicitDeclarationsFingerprint, cacheSize, previous);
+	}
+}
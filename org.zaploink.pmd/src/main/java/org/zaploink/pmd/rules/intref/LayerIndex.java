@@ -0,0 +1,96 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.zaploink.pmd.rules.intref.config.RuleConfigData.LayerDeclaration;
+
+/**
+ * Compiled form of the <code>layers</code> of a rule config: classifies packages into layers, ranked from top
+ * (<code>0</code>) to bottom. A class may depend on classes of its own and of lower layers, so a reference is checked
+ * with a single comparison of ranks.
+ *
+ * <p>
+ * Packages are matched like by the {@link PackageRecognizer} (regexes, with their literal prefix checked first), the
+ * first matching layer wins. The rank of each package is cached, the cache is part of the compiled rule config and
+ * hence shared by all rules and PMD threads that use it.
+ *
+ * @author kvg
+ */
+final class LayerIndex {
+	/** Rank of packages that do not belong to any layer, ranked below all layers (i.e. never an upper layer). */
+	static final int NO_LAYER = Integer.MAX_VALUE;
+
+	private final String[] names;
+	private final Pattern[] patterns;
+	private final String[] prefixes;
+	// rank of the layer of each pattern
+	private final int[] ranks;
+	private final BoundedCache<String, Integer> cache;
+
+	/**
+	 * @param layers
+	 *            layers from top to bottom, may be <code>null</code>
+	 * @param cacheSize
+	 *            maximal number of packages whose rank is cached
+	 */
+	LayerIndex(List<LayerDeclaration> layers, int cacheSize) {
+		List<LayerDeclaration> declarations = (layers == null) ? Collections.emptyList() : layers;
+		this.names = new String[declarations.size()];
+		List<Pattern> patternList = new ArrayList<>();
+		List<Integer> rankList = new ArrayList<>();
+		for (int rank = 0; rank < declarations.size(); rank++) {
+			LayerDeclaration layer = declarations.get(rank);
+			this.names[rank] = layer.getName();
+			for (String regex : (layer.getPackages() == null) ? Collections.<String> emptyList() : layer.getPackages()) {
+				if (regex != null) {
+					patternList.add(Pattern.compile(regex));
+					rankList.add(rank);
+				}
+			}
+		}
+		this.patterns = patternList.toArray(new Pattern[patternList.size()]);
+		this.prefixes = new String[this.patterns.length];
+		this.ranks = new int[this.patterns.length];
+		for (int i = 0; i < this.patterns.length; i++) {
+			this.prefixes[i] = PackageRecognizer.literalPrefix(this.patterns[i].pattern());
+			this.ranks[i] = rankList.get(i);
+		}
+		this.cache = new BoundedCache<>(cacheSize, 1 << 8);
+	}
+
+	boolean isEmpty() {
+		return this.patterns.length == 0;
+	}
+
+	/**
+	 * @return rank of the layer of the given package, {@link #NO_LAYER} if it does not belong to a layer
+	 */
+	int rankOf(String packageName) {
+		Integer cached = this.cache.get(packageName);
+		if (cached != null) {
+			return cached;
+		}
+		int rank = classify(packageName);
+		this.cache.put(packageName, rank);
+		return rank;
+	}
+
+	private int classify(String packageName) {
+		for (int i = 0; i < this.patterns.length; i++) {
+			if (packageName.startsWith(this.prefixes[i]) && this.patterns[i].matcher(packageName).matches()) {
+				return this.ranks[i];
+			}
+		}
+		return NO_LAYER;
+	}
+
+	/**
+	 * @return name of the layer of the given rank
+	 */
+	String nameOf(int rank) {
+		return (rank == NO_LAYER) ? null : this.names[rank];
+	}
+}
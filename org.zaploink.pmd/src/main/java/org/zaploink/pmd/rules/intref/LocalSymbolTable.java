@@ -0,0 +1,284 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.zaploink.pmd.rules.ZaploinkPMD;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
+import net.sourceforge.pmd.lang.java.ast.ASTImportDeclaration;
+import net.sourceforge.pmd.lang.java.ast.ASTPackageDeclaration;
+
+/**
+ * Per-file table of the simple type names that do <em>not</em> come from an on-demand (wildcard) import: types and
+ * type parameters declared in the file, single-type and static imports, <code>java.lang</code> and the types of
+ * imported JDK packages (e.g. <code>java.util.*</code>).
+ *
+ * <p>
+ * Used to decide whether a simple name binds to a wildcard import without expanding the imported packages. Only
+ * created for files with a single wildcard import of an internal domain package (the rule cannot tell which of several
+ * such imports a name binds to). The imports are read from the compilation unit, the names of the declared types are
+ * added by the rule (which gets the declarations from the rule chain, hence the AST is not traversed again); lookups are
+ * cached per file. Without a classpath, a name that is not local binds to the wildcard import unless there is a source
+ * file of that name in the file's package, in any of the source roots it may be in: the file's own source root, the
+ * other source roots of its module by the Maven and Gradle conventions (e.g. <code>src/test/java</code> next to
+ * <code>src/main/java</code>, generated sources) and the ones given to the standalone analyzer or configured (see
+ * {@link #addSourceRoots(Collection)}). If the file's source root is unknown (the directory does not match the
+ * package) or a package directory cannot be listed, no name binds. A type of the package in any other source root is
+ * not seen, the name binds to the wildcard import.
+ *
+ * @author kvg
+ */
+final class LocalSymbolTable {
+	private static final ClassLoader JDK_CLASS_LOADER = jdkClassLoader();
+	// JDK type lookups of all files, bounded because the simple names are not
+	private static final int MAX_JDK_TYPES = 10_000;
+	private static final Map<String, Boolean> JDK_TYPES = new ConcurrentHashMap<>();
+	// source roots of a module besides the one of the file, relative to the module directory (Maven and Gradle)
+	private static final String[][] MODULE_SOURCE_ROOTS = { { "src", "*", "java" },
+			{ "target", "generated-sources", "*" }, { "target", "generated-test-sources", "*" },
+			{ "build", "generated", "sources", "*", "java", "*" } };
+	// source roots given to the standalone analyzer or configured, searched for the types of any package
+	private static final Set<Path> SOURCE_ROOTS = ConcurrentHashMap.newKeySet();
+
+	static {
+		addSourceRoots(ZaploinkPMD.getConfig().sourceRoots());
+	}
+
+	private final Set<String> localNames = new HashSet<>();
+	private final List<String> jdkPackages = new ArrayList<>(1);
+	private final Map<String, Boolean> wildcardBindings = new HashMap<>();
+	// null if unknown
+	private final File sourceFile;
+	private String packageName = "";
+	// names of the source files of the file's package, read on first use (empty if unknown)
+	private Set<String> packageTypes;
+	private boolean packageTypesKnown;
+
+	/**
+	 * @param sourceFile
+	 *            the analyzed file, <code>null</code> if unknown
+	 */
+	LocalSymbolTable(ASTCompilationUnit compilationUnit, File sourceFile) {
+		this.sourceFile = sourceFile;
+		for (int i = 0; i < compilationUnit.jjtGetNumChildren(); i++) {
+			Node child = compilationUnit.jjtGetChild(i);
+			if (child instanceof ASTImportDeclaration) {
+				addImport((ASTImportDeclaration) child);
+			}
+			else if (child instanceof ASTPackageDeclaration) {
+				this.packageName = ((ASTPackageDeclaration) child).getPackageNameImage();
+			}
+		}
+	}
+
+	/**
+	 * Adds source roots that are searched for the types of a file's package, in addition to the source roots of the
+	 * file's module. Kept for the lifetime of the JVM.
+	 */
+	static void addSourceRoots(Collection<Path> sourceRoots) {
+		for (Path sourceRoot : sourceRoots) {
+			SOURCE_ROOTS.add(sourceRoot.toAbsolutePath().normalize());
+		}
+	}
+
+	/**
+	 * Adds the name of a type or type parameter declared in the file. Must be called before the first lookup.
+	 */
+	void addLocalName(String simpleName) {
+		this.localNames.add(simpleName);
+	}
+
+	/**
+	 * @return <code>true</code> if the given simple type name (used in the file) can only come from an on-demand import
+	 *         of a non-JDK package, <code>false</code> if it is local or the types of the file's package are unknown
+	 */
+	boolean bindsToWildcardImport(String simpleName) {
+		if (this.localNames.contains(simpleName)) {
+			return false; // the common case, not worth caching
+		}
+		Boolean binds = this.wildcardBindings.get(simpleName);
+		if (binds == null) {
+			binds = !isLocal(simpleName) && !isPackageType(simpleName);
+			this.wildcardBindings.put(simpleName, binds);
+		}
+		return binds;
+	}
+
+	/**
+	 * @return <code>true</code> if a lookup needed the source files of the file's package, i.e. the bindings may change
+	 *         when a file is added to or deleted from the package
+	 */
+	boolean dependsOnPackageTypes() {
+		return this.packageTypes != null;
+	}
+
+	/**
+	 * @return <code>true</code> if the given name is a type of the file's package, or might be one (unknown package)
+	 */
+	private boolean isPackageType(String simpleName) {
+		if (this.packageTypes == null) {
+			this.packageTypes = new HashSet<>();
+			try {
+				this.packageTypesKnown = readPackageTypes();
+			}
+			catch (IOException ex) {
+				// unknown, any name may be a type of the package
+			}
+		}
+		return !this.packageTypesKnown || this.packageTypes.contains(simpleName);
+	}
+
+	/**
+	 * Reads the names of the source files of the file's package, in all source roots it may be in.
+	 *
+	 * @return <code>false</code> if the source root of the file is unknown
+	 */
+	private boolean readPackageTypes() throws IOException {
+		Path dir = (this.sourceFile == null || !this.sourceFile.isFile()) ? null
+				: this.sourceFile.toPath().toAbsolutePath().normalize().getParent();
+		Path sourceRoot = (dir == null) ? null : sourceRoot(dir, this.packageName);
+		if (sourceRoot == null) {
+			return false;
+		}
+		Set<Path> sourceRoots = new LinkedHashSet<>();
+		sourceRoots.add(sourceRoot);
+		addModuleSourceRoots(sourceRoot, sourceRoots);
+		sourceRoots.addAll(SOURCE_ROOTS);
+		for (Path root : sourceRoots) {
+			Path packageDir = this.packageName.isEmpty() ? root : root.resolve(this.packageName.replace('.', '/'));
+			if (Files.isDirectory(packageDir)) {
+				try (DirectoryStream<Path> files = Files.newDirectoryStream(packageDir, "*.java")) {
+					for (Path file : files) {
+						String fileName = file.getFileName().toString();
+						this.packageTypes.add(fileName.substring(0, fileName.length() - ".java".length()));
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the source root of a file of the given package in the given directory, <code>null</code> if the
+	 *         directory does not match the package
+	 */
+	private static Path sourceRoot(Path dir, String packageName) {
+		Path root = dir;
+		if (!packageName.isEmpty()) {
+			String[] segments = packageName.split("\\.");
+			for (int i = segments.length - 1; i >= 0; i--) {
+				if (root == null || root.getFileName() == null || !segments[i].equals(root.getFileName().toString())) {
+					return null;
+				}
+				root = root.getParent();
+			}
+		}
+		return root;
+	}
+
+	/**
+	 * Adds the other source roots of the module of the given source root, if it is one of the conventional
+	 * <code>&lt;module&gt;/src/&lt;source set&gt;/&lt;language&gt;</code>.
+	 */
+	private static void addModuleSourceRoots(Path sourceRoot, Set<Path> sourceRoots) throws IOException {
+		Path src = (sourceRoot.getParent() == null) ? null : sourceRoot.getParent().getParent();
+		if (src != null && src.getParent() != null && src.getFileName() != null
+				&& "src".equals(src.getFileName().toString())) {
+			for (String[] pattern : MODULE_SOURCE_ROOTS) {
+				addMatchingDirectories(src.getParent(), pattern, 0, sourceRoots);
+			}
+		}
+	}
+
+	private static void addMatchingDirectories(Path dir, String[] pattern, int index, Set<Path> matches)
+			throws IOException {
+		if (index == pattern.length) {
+			matches.add(dir);
+		}
+		else if (!"*".equals(pattern[index])) {
+			Path child = dir.resolve(pattern[index]);
+			if (Files.isDirectory(child)) {
+				addMatchingDirectories(child, pattern, index + 1, matches);
+			}
+		}
+		else {
+			try (DirectoryStream<Path> children = Files.newDirectoryStream(dir, Files::isDirectory)) {
+				for (Path child : children) {
+					addMatchingDirectories(child, pattern, index + 1, matches);
+				}
+			}
+		}
+	}
+
+	private boolean isLocal(String simpleName) {
+		if (isJdkType("java.lang", simpleName)) {
+			return true;
+		}
+		for (String jdkPackage : this.jdkPackages) {
+			if (isJdkType(jdkPackage, simpleName)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void addImport(ASTImportDeclaration importDecl) {
+		String importedName = importDecl.getImportedName();
+		if (!importDecl.isImportOnDemand()) {
+			// imported type or statically imported member (may be a member type)
+			this.localNames.add(importedName.substring(importedName.lastIndexOf('.') + 1));
+		}
+		else if (isJdkPackage(importedName) && !importDecl.isStatic()) {
+			this.jdkPackages.add(importedName);
+		}
+	}
+
+	static boolean isJdkPackage(String packageName) {
+		return packageName.startsWith("java.") || packageName.startsWith("javax.");
+	}
+
+	/**
+	 * Looks the type up on the JDK (not the application) class path, without initializing it.
+	 */
+	private static boolean isJdkType(String packageName, String simpleName) {
+		String className = packageName + '.' + simpleName;
+		Boolean exists = JDK_TYPES.get(className);
+		if (exists == null) {
+			try {
+				Class.forName(className, false, JDK_CLASS_LOADER);
+				exists = Boolean.TRUE;
+			}
+			catch (ClassNotFoundException | LinkageError | SecurityException ex) {
+				exists = Boolean.FALSE;
+			}
+			if (JDK_TYPES.size() < MAX_JDK_TYPES) {
+				JDK_TYPES.put(className, exists);
+			}
+		}
+		return exists;
+	}
+
+	private static ClassLoader jdkClassLoader() {
+		try {
+			// the parent of the application class loader (extension or platform class loader)
+			return ClassLoader.getSystemClassLoader().getParent();
+		}
+		catch (SecurityException ex) {
+			return null; // bootstrap class loader
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.zaploink.pmd.rules.intref.DomainElement.Type;
+
+/**
+ * Compiled form of the <code>publicPackages</code> or <code>privatePackages</code> regular expressions of the
+ * <code>automaticDomainRecognition</code> section of a rule config.
+ *
+ * <p>
+ * The patterns are tried in declaration order and the first one that matches the whole package name wins; its first
+ * capturing group is the domain name. To avoid running every regex against every package (most of which, e.g. JDK
+ * packages, do not belong to any domain), the literal prefix of each regex is extracted when compiling and a pattern is
+ * only tried if the package name starts with that prefix.
+ *
+ * @author kvg
+ */
+final class PackageRecognizer {
+	private static final String METACHARS = ".[]{}()*+?^$|\\";
+
+	private final Type type;
+	private final DomainIds ids;
+	private final Pattern[] patterns;
+	private final String[] prefixes;
+	// one shared instance per recognized domain
+	private final ConcurrentHashMap<String, ResolvedDomain> recognized = new ConcurrentHashMap<>();
+
+	PackageRecognizer(List<String> regexes, Type type, DomainIds ids) {
+		this.type = type;
+		this.ids = ids;
+		this.patterns = regexes.stream()
+				.filter(Objects::nonNull)
+				.map(Pattern::compile)
+				.toArray(Pattern[]::new);
+		this.prefixes = new String[this.patterns.length];
+		for (int i = 0; i < this.patterns.length; i++) {
+			this.prefixes[i] = literalPrefix(this.patterns[i].pattern());
+		}
+	}
+
+	private PackageRecognizer(PackageRecognizer compiled, DomainIds ids) {
+		this.type = compiled.type;
+		this.ids = ids;
+		this.patterns = compiled.patterns;
+		this.prefixes = compiled.prefixes;
+	}
+
+	/**
+	 * @return recognizer of the same (already compiled) patterns, that assigns the given IDs to the domains it
+	 *         recognizes (see {@link DomainIds})
+	 */
+	PackageRecognizer withIds(DomainIds otherIds) {
+		return new PackageRecognizer(this, otherIds);
+	}
+
+	/**
+	 * @param packageName
+	 *            fully qualified package name
+	 * @return the domain captured by the first matching pattern ({@link ResolvedDomain#NONE} if its capturing group did
+	 *         not take part in the match, e.g. an optional group), <code>null</code> if no pattern matches
+	 */
+	ResolvedDomain recognize(String packageName) {
+		for (int i = 0; i < this.patterns.length; i++) {
+			if (!packageName.startsWith(this.prefixes[i])) {
+				continue;
+			}
+			Matcher matcher = this.patterns[i].matcher(packageName);
+			if (matcher.matches()) {
+				String domain = matcher.group(1);
+				return (domain == null) ? ResolvedDomain.NONE : intern(domain);
+			}
+		}
+		return null;
+	}
+
+	private ResolvedDomain intern(String domain) {
+		ResolvedDomain resolved = this.recognized.get(domain);
+		if (resolved == null) {
+			resolved = new ResolvedDomain(domain, this.type, Integer.MAX_VALUE, this.ids.pathOf(domain));
+			ResolvedDomain previous = this.recognized.putIfAbsent(domain, resolved);
+			resolved = (previous == null) ? resolved : previous;
+		}
+		return resolved;
+	}
+
+	/**
+	 * @return <code>true</code> if this recognizer was compiled from the given regular expressions (<code>null</code>
+	 *         elements are ignored, as when compiling)
+	 */
+	boolean hasRegexes(List<String> otherRegexes) {
+		int i = 0;
+		for (String regex : otherRegexes) {
+			if (regex == null) {
+				continue;
+			}
+			if (i == this.patterns.length || !this.patterns[i].pattern().equals(regex)) {
+				return false;
+			}
+			i++;
+		}
+		return i == this.patterns.length;
+	}
+
+	/**
+	 * @return <code>true</code> if both recognizers use the same compiled patterns
+	 */
+	boolean sharesPatternsWith(PackageRecognizer other) {
+		return this.patterns == other.patterns;
+	}
+
+	List<String> getLiteralPrefixes() {
+		return Arrays.asList(this.prefixes);
+	}
+
+	boolean isEmpty() {
+		return this.patterns.length == 0;
+	}
+
+	/**
+	 * Returns the literal text every match of the given regex must start with (e.g. <code>com.acme.service.</code> for
+	 * <code>com\.acme\.service\.([^\.]+)</code>). Returns an empty string if no such prefix can be determined safely.
+	 */
+	static String literalPrefix(String regex) {
+		if (hasTopLevelAlternation(regex)) {
+			return "";
+		}
+		StringBuilder prefix = new StringBuilder();
+		int i = regex.startsWith("^") ? 1 : 0;
+		while (i < regex.length()) {
+			char c = regex.charAt(i);
+			char literal;
+			int next;
+			if (c == '\\') {
+				if (i + 1 >= regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+					break; // character class, quote, back reference etc.
+				}
+				literal = regex.charAt(i + 1);
+				next = i + 2;
+			}
+			else if (METACHARS.indexOf(c) >= 0) {
+				break;
+			}
+			else {
+				literal = c;
+				next = i + 1;
+			}
+			if (next < regex.length() && "?*{".indexOf(regex.charAt(next)) >= 0) {
+				break; // optional literal
+			}
+			prefix.append(literal);
+			i = next;
+		}
+		return prefix.toString();
+	}
+
+	private static boolean hasTopLevelAlternation(String regex) {
+		int depth = 0;
+		boolean inClass = false;
+		for (int i = 0; i < regex.length(); i++) {
+			char c = regex.charAt(i);
+			if (c == '\\') {
+				i++;
+			}
+			else if (inClass) {
+				inClass = (c != ']');
+			}
+			else if (c == '[') {
+				inClass = true;
+			}
+			else if (c == '(') {
+				depth++;
+			}
+			else if (c == ')') {
+				depth--;
+			}
+			else if (c == '|' && depth == 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,286 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Immutable trie over package name segments (e.g. <code>com</code> &rarr; <code>acme</code> &rarr;
+ * <code>service</code>).
+ *
+ * <p>
+ * Each node may carry a domain that matches the package <i>exactly</i> (explicit public packages) and a domain that
+ * matches the package and all of its sub-packages (explicit private packages). A lookup takes O(package depth) and
+ * does not allocate: segments are hashed and compared in place in the looked up package name.
+ *
+ * <p>
+ * Packages with a common prefix share the nodes of the prefix, and equal segments below different parents (e.g.
+ * <code>internal</code>) share one string instance.
+ *
+ * <p>
+ * A trie is written node by node as it is laid out in memory (see {@link #write(DataOutputStream)}), so reading it
+ * back neither splits package names nor hashes segments.
+ *
+ * @author kvg
+ */
+final class PackageTrie {
+	private static final Node EMPTY = new Node(new String[1], new Node[1], null, null);
+
+	private final Node root;
+
+	private PackageTrie(Node root) {
+		this.root = root;
+	}
+
+	/**
+	 * @param packageName
+	 *            fully qualified package name
+	 * @return the domain declared for exactly this package, <code>null</code> if none
+	 */
+	ResolvedDomain findExact(String packageName) {
+		int length = packageName.length();
+		if (length == 0) {
+			return null;
+		}
+		Node node = this.root;
+		int start = 0;
+		while (true) {
+			int end = segmentEnd(packageName, start, length);
+			node = node.child(packageName, start, end);
+			if (node == null) {
+				return null;
+			}
+			if (end == length) {
+				return node.exact;
+			}
+			start = end + 1;
+		}
+	}
+
+	/**
+	 * @param packageName
+	 *            fully qualified package name
+	 * @return the domain of this package or any of its parent packages, <code>null</code> if none: the one of the
+	 *         deepest package if it is a sub-domain of the ones of its parents, the first declared one otherwise (see
+	 *         {@link ResolvedDomain#nested})
+	 */
+	ResolvedDomain findPrefix(String packageName) {
+		int length = packageName.length();
+		if (length == 0) {
+			return null;
+		}
+		ResolvedDomain found = null;
+		Node node = this.root;
+		int start = 0;
+		while (true) {
+			int end = segmentEnd(packageName, start, length);
+			node = node.child(packageName, start, end);
+			if (node == null) {
+				return found;
+			}
+			found = ResolvedDomain.nested(found, node.prefix);
+			if (end == length) {
+				return found;
+			}
+			start = end + 1;
+		}
+	}
+
+	/**
+	 * Writes this trie, its domains by declaration order (see {@link ResolvedDomain#getOrder()}), each distinct segment
+	 * once.
+	 */
+	void write(DataOutputStream out) throws IOException {
+		write(this.root, out, new HashMap<>());
+	}
+
+	private static void write(Node node, DataOutputStream out, Map<String, Integer> segments) throws IOException {
+		out.writeInt((node.exact == null) ? -1 : node.exact.getOrder());
+		out.writeInt((node.prefix == null) ? -1 : node.prefix.getOrder());
+		int childCount = 0;
+		for (String key : node.keys) {
+			childCount += (key == null) ? 0 : 1;
+		}
+		out.writeInt(node.keys.length);
+		out.writeInt(childCount);
+		for (int i = 0; i < node.keys.length; i++) {
+			if (node.keys[i] != null) {
+				out.writeInt(i);
+				Integer segment = segments.get(node.keys[i]);
+				if (segment == null) {
+					out.writeInt(-1);
+					out.writeUTF(node.keys[i]);
+					segments.put(node.keys[i], segments.size());
+				}
+				else {
+					out.writeInt(segment);
+				}
+				write(node.children[i], out, segments);
+			}
+		}
+	}
+
+	/**
+	 * Reads a trie written by {@link #write(DataOutputStream)}.
+	 *
+	 * @param exactDomains
+	 *            the domains of exactly matching packages, by declaration order
+	 * @param prefixDomains
+	 *            the domains of packages matching as prefix, by declaration order
+	 */
+	static PackageTrie read(DataInputStream in, ResolvedDomain[] exactDomains, ResolvedDomain[] prefixDomains)
+			throws IOException {
+		return new PackageTrie(read(in, exactDomains, prefixDomains, new ArrayList<>()));
+	}
+
+	private static Node read(DataInputStream in, ResolvedDomain[] exactDomains, ResolvedDomain[] prefixDomains,
+			List<String> segments) throws IOException {
+		int exact = in.readInt();
+		int prefix = in.readInt();
+		int size = in.readInt();
+		int childCount = in.readInt();
+		if (childCount == 0 && exact < 0 && prefix < 0) {
+			return EMPTY;
+		}
+		String[] keys = new String[size];
+		Node[] children = new Node[size];
+		for (int i = 0; i < childCount; i++) {
+			int slot = in.readInt();
+			int segment = in.readInt();
+			if (segment < 0) {
+				keys[slot] = in.readUTF();
+				segments.add(keys[slot]);
+			}
+			else {
+				keys[slot] = segments.get(segment);
+			}
+			children[slot] = read(in, exactDomains, prefixDomains, segments);
+		}
+		return new Node(keys, children, (exact < 0) ? null : exactDomains[exact],
+				(prefix < 0) ? null : prefixDomains[prefix]);
+	}
+
+	private static int segmentEnd(String packageName, int start, int length) {
+		int end = packageName.indexOf('.', start);
+		return (end < 0) ? length : end;
+	}
+
+	private static int hash(String s, int from, int to) {
+		// same as String.hashCode() for the given region
+		int h = 0;
+		for (int i = from; i < to; i++) {
+			h = 31 * h + s.charAt(i);
+		}
+		return h ^ (h >>> 16);
+	}
+
+	private static final class Node {
+		// open addressing hash table of child segments
+		private final String[] keys;
+		private final Node[] children;
+		private final ResolvedDomain exact;
+		private final ResolvedDomain prefix;
+
+		Node(String[] keys, Node[] children, ResolvedDomain exact, ResolvedDomain prefix) {
+			this.keys = keys;
+			this.children = children;
+			this.exact = exact;
+			this.prefix = prefix;
+		}
+
+		Node child(String s, int from, int to) {
+			int length = to - from;
+			int mask = this.keys.length - 1;
+			int i = hash(s, from, to) & mask;
+			String key;
+			while ((key = this.keys[i]) != null) {
+				if (key.length() == length && s.regionMatches(from, key, 0, length)) {
+					return this.children[i];
+				}
+				i = (i + 1) & mask;
+			}
+			return null;
+		}
+	}
+
+	static class Builder {
+		private final BuilderNode root = new BuilderNode();
+		// one instance per distinct segment
+		private final Map<String, String> segments = new HashMap<>();
+
+		/**
+		 * Declares a domain for exactly the given package. If several domains are declared, the one with the lowest
+		 * declaration order wins.
+		 */
+		Builder addExact(String packageName, ResolvedDomain domain) {
+			BuilderNode node = nodeFor(packageName);
+			if (node != null) {
+				node.exact = ResolvedDomain.first(node.exact, domain);
+			}
+			return this;
+		}
+
+		/**
+		 * Declares a domain for the given package and all of its sub-packages. If several domains are declared, the one
+		 * with the lowest declaration order wins.
+		 */
+		Builder addPrefix(String packageName, ResolvedDomain domain) {
+			BuilderNode node = nodeFor(packageName);
+			if (node != null) {
+				node.prefix = ResolvedDomain.first(node.prefix, domain);
+			}
+			return this;
+		}
+
+		private BuilderNode nodeFor(String packageName) {
+			if (packageName == null || packageName.isEmpty()) {
+				return null;
+			}
+			BuilderNode node = this.root;
+			for (String segment : packageName.split("\\.")) {
+				BuilderNode child = node.children.get(segment);
+				if (child == null) {
+					child = new BuilderNode();
+					node.children.put(this.segments.computeIfAbsent(segment, s -> s), child);
+				}
+				node = child;
+			}
+			return node;
+		}
+
+		PackageTrie build() {
+			return new PackageTrie(this.root.freeze());
+		}
+	}
+
+	private static class BuilderNode {
+		private final Map<String, BuilderNode> children = new LinkedHashMap<>();
+		private ResolvedDomain exact;
+		private ResolvedDomain prefix;
+
+		Node freeze() {
+			if (this.children.isEmpty() && this.exact == null && this.prefix == null) {
+				return EMPTY;
+			}
+			int size = Integer.highestOneBit(Math.max(1, this.children.size()) * 2 - 1) << 1;
+			String[] keys = new String[size];
+			Node[] nodes = new Node[size];
+			for (Entry<String, BuilderNode> entry : this.children.entrySet()) {
+				String key = entry.getKey();
+				int i = hash(key, 0, key.length()) & (size - 1);
+				while (keys[i] != null) {
+					i = (i + 1) & (size - 1);
+				}
+				keys[i] = key;
+				nodes[i] = entry.getValue().freeze();
+			}
+			return new Node(keys, nodes, this.exact, this.prefix);
+		}
+	}
+}
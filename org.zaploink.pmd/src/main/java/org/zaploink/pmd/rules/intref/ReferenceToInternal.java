@@ -1,113 +1,916 @@
 package org.zaploink.pmd.rules.intref;
 
-import java.text.MessageFormat;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.zaploink.pmd.rules.ZaploinkPMD;
+import org.zaploink.pmd.rules.intref.AnalysisCache.FileResult;
+import org.zaploink.pmd.rules.intref.AnalysisCache.ResolvedImport;
+import org.zaploink.pmd.rules.intref.AnalysisCache.Violation;
+import org.zaploink.pmd.rules.intref.DomainElement.Type;
+import org.zaploink.pmd.rules.intref.RuleConfigHolder.CompiledConfig;
 import org.zaploink.pmd.rules.intref.config.RuleConfigData;
-import org.zaploink.pmd.rules.intref.config.RuleConfigReader;
-import org.zaploink.pmd.rules.intref.config.RuleConfigReaderException;
 
 import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.java.ast.ASTAnnotationTypeDeclaration;
 import net.sourceforge.pmd.lang.java.ast.ASTClassOrInterfaceDeclaration;
+import net.sourceforge.pmd.lang.java.ast.ASTClassOrInterfaceType;
+import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
+import net.sourceforge.pmd.lang.java.ast.ASTEnumDeclaration;
+import net.sourceforge.pmd.lang.java.ast.ASTExtendsList;
+import net.sourceforge.pmd.lang.java.ast.ASTImplementsList;
 import net.sourceforge.pmd.lang.java.ast.ASTImportDeclaration;
+import net.sourceforge.pmd.lang.java.ast.ASTMarkerAnnotation;
+import net.sourceforge.pmd.lang.java.ast.ASTName;
+import net.sourceforge.pmd.lang.java.ast.ASTNameList;
+import net.sourceforge.pmd.lang.java.ast.ASTNormalAnnotation;
 import net.sourceforge.pmd.lang.java.ast.ASTPackageDeclaration;
+import net.sourceforge.pmd.lang.java.ast.ASTSingleMemberAnnotation;
+import net.sourceforge.pmd.lang.java.ast.ASTTypeDeclaration;
+import net.sourceforge.pmd.lang.java.ast.ASTTypeParameter;
+import net.sourceforge.pmd.lang.java.ast.JavaNode;
+import net.sourceforge.pmd.lang.java.ast.TypeNode;
 import net.sourceforge.pmd.lang.java.rule.AbstractJavaRule;
+import net.sourceforge.pmd.lang.java.rule.JavaRuleViolation;
 
 /**
- * Detects references to classes that are located in packages that are declared internal.
+ * Detects references to classes that are located in packages that are declared internal, by import or by fully
+ * qualified name. On-demand imports (<code>import com.acme.foo.internal.*;</code>) are only reported if a simple name
+ * used in the file binds to them (see {@link LocalSymbolTable}).
  *
- * This rule needs an external configuration of the format {@link RuleConfigData}.
+ * In the optional type resolution mode (see
+ * {@link org.zaploink.pmd.rules.ZaploinkPMDConfig#isTypeResolutionEnabled()}), the types PMD resolves from the
+ * auxclasspath are checked too: types of the same package, types imported on demand and types implicitly referenced
+ * by extending a class or implementing an interface (see {@link ClassMetadataCache}).
+ *
+ * This rule needs an external configuration of the format {@link RuleConfigData}. The configuration is reloaded at the
+ * start of a PMD run if the config file has changed (see {@link RuleConfigHolder}).
  *
  * @author kvg
  */
 public class ReferenceToInternal extends AbstractJavaRule {
 	private static final Logger LOGGER = ZaploinkPMD.getLogger();
-	private static final String CONFIG_KEY = "ReferenceToInternal.ruleConfig";
-	private static final DomainResolver DOMAIN_RESOLVER;
+	private static final String RULE_NAME = ReferenceToInternal.class.getSimpleName();
+	private static final RuleConfigHolder CONFIG = RuleConfigHolder.shared();
+	private static final Path DEPENDENCY_GRAPH_FILE = ZaploinkPMD.getConfig().dependencyGraphFile();
+	private static final DomainDependencyGraph DEPENDENCY_GRAPH = (DEPENDENCY_GRAPH_FILE == null) ? null
+			: new DomainDependencyGraph();
+	private static final ClassMetadataCache CLASS_METADATA = ZaploinkPMD.getConfig().isTypeResolutionEnabled()
+			? new ClassMetadataCache(ZaploinkPMD.getConfig().typeResolutionCacheSize())
+			: null;
+	private static final RuleMetrics METRICS = RuleMetrics.global();
 
-	static {
-		RuleConfigData ruleConfig = null;
-		try {
-			ruleConfig = RuleConfigReader.readConfig();
-		}
-		catch (RuleConfigReaderException ex) {
-			LOGGER.log(Level.SEVERE, "Could not initialize domain resolver", ex);
-		}
-		DOMAIN_RESOLVER = (ruleConfig == null) ? null : new DomainResolver(ruleConfig);
+	/**
+	 * Rule context attribute of a file of which only the header has been parsed (see
+	 * {@link ReferenceToInternalAnalyzer}). Its result is incomplete, hence neither cached nor added to the dependency
+	 * graph.
+	 */
+	static final String HEADER_ONLY = RULE_NAME + ".headerOnly";
+
+	// shared by all rule instances (i.e. all PMD threads), the compiled config itself is immutable and thread-safe
+	private final RuleConfigHolder config;
+	// optional, shared by all rule instances, collects the references between domains of a PMD run
+	private final DomainDependencyGraph dependencyGraph;
+	private final Path dependencyGraphFile;
+	// only set in type resolution mode, shared by all rule instances
+	private final ClassMetadataCache classMetadata;
+	// file currently analyzed by the calling PMD thread
+	private final ThreadLocal<FileContext> currentFile = new ThreadLocal<>();
+	// file started last by any thread, spares the thread local lookup for the (many) type and name nodes if the rule
+	// instance is only used by a single thread (as PMD does)
+	private volatile FileContext lastFile;
+	// true if a file of this run was only analyzed by its header, then the dependency graph is incomplete
+	private volatile boolean headerOnlyFiles;
+	// null if disabled, shared by all rule instances
+	private final RuleMetrics metrics;
+
+	public ReferenceToInternal() {
+		this(new Dependencies(CONFIG).dependencyGraph(DEPENDENCY_GRAPH, DEPENDENCY_GRAPH_FILE)
+				.classMetadata(CLASS_METADATA).metrics(METRICS));
 	}
 
-	private String packageName;
-	private List<DomainElement> imports;
+	/**
+	 * Creates the rule with the given collaborators instead of the global ones (tests and benchmarks).
+	 */
+	ReferenceToInternal(Dependencies dependencies) {
+		this(dependencies.config(), dependencies.dependencyGraph, dependencies.dependencyGraphFile,
+				dependencies.classMetadata, dependencies.metrics);
+	}
+
+	private ReferenceToInternal(RuleConfigHolder config, DomainDependencyGraph dependencyGraph,
+			Path dependencyGraphFile, ClassMetadataCache classMetadata, RuleMetrics metrics) {
+		this.config = config;
+		this.dependencyGraph = dependencyGraph;
+		this.dependencyGraphFile = dependencyGraphFile;
+		this.classMetadata = classMetadata;
+		this.metrics = metrics;
+		// the rule chain hands us the type and name nodes without a visitor pass over the whole AST: the compilation
+		// unit is visited first (resolves the imports), then the type declarations (local type names, before any name
+		// is looked up), the top level type declarations last (check the imports and complete the file)
+		addRuleChainVisit(ASTCompilationUnit.class);
+		addRuleChainVisit(ASTClassOrInterfaceDeclaration.class);
+		addRuleChainVisit(ASTEnumDeclaration.class);
+		addRuleChainVisit(ASTAnnotationTypeDeclaration.class);
+		addRuleChainVisit(ASTTypeParameter.class);
+		addRuleChainVisit(ASTClassOrInterfaceType.class);
+		addRuleChainVisit(ASTName.class);
+		addRuleChainVisit(ASTTypeDeclaration.class);
+	}
+
+	/**
+	 * Type resolution (enabled by default for Java rules) is only needed in type resolution mode, PMD skips it if no
+	 * other rule needs it.
+	 */
+	@Override
+	public boolean usesTypeResolution() {
+		return this.classMetadata != null;
+	}
 
 	@Override
 	public void start(RuleContext ctx) {
-		String ruleName = ReferenceToInternal.class.getSimpleName();
-		try {
-			ctx.setAttribute(CONFIG_KEY, DOMAIN_RESOLVER);
-			LOGGER.log(Level.FINE, "Successfully loaded config for {0} rule.", ruleName);
+		this.config.refresh();
+		this.headerOnlyFiles = false;
+		if (this.dependencyGraph != null) {
+			this.dependencyGraph.clear();
 		}
-		catch (Exception ex) {
-			String msg = MessageFormat.format("Could not load configuration for {0} rule.", ruleName);
-			LOGGER.log(Level.SEVERE, msg, ex);
+		if (this.classMetadata != null) {
+			this.classMetadata.clear(); // the auxclasspath may have changed
+		}
+		if (this.config.get() == null) {
+			LOGGER.log(Level.SEVERE, "Could not load configuration for {0} rule.", RULE_NAME);
+		}
+		else {
+			LOGGER.log(Level.FINE, "Successfully loaded config for {0} rule.", RULE_NAME);
 		}
 		super.start(ctx);
 	}
 
-	private DomainResolver getConfig(Object ctx) {
-		return ((DomainResolver) ((RuleContext) ctx).getAttribute(CONFIG_KEY));
+	/**
+	 * Starts the analysis of a file (visited first, see constructor): resolves its imports.
+	 */
+	@Override
+	public Object visit(ASTCompilationUnit node, Object ctx) {
+		FileContext file = newFileContext(node, (RuleContext) ctx);
+		this.lastFile = file;
+		if (file == null) {
+			this.currentFile.remove();
+			return null;
+		}
+		this.currentFile.set(file);
+		for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+			Node child = node.jjtGetChild(i);
+			if (child instanceof ASTImportDeclaration) {
+				visit((ASTImportDeclaration) child, file);
+			}
+		}
+		if (file.lastTypeDeclaration == null) {
+			completeFile(file);
+		}
+		return null;
 	}
 
+	/**
+	 * Resolves the top level type of a type declaration (visited last, see constructor). The last type declaration of
+	 * a file completes the file.
+	 */
 	@Override
-	public Object visit(ASTPackageDeclaration node, Object ctx) {
-		this.packageName = node.getPackageNameImage(); // save for later use
-		this.imports = new ArrayList<>();
+	public Object visit(ASTTypeDeclaration node, Object ctx) {
+		FileContext file = this.currentFile.get();
+		if (file == null) {
+			return null;
+		}
+		node.childrenAccept(this, file);
+		if (node == file.lastTypeDeclaration) {
+			completeFile(file);
+		}
 		return null;
 	}
 
+	/**
+	 * Records the result of the analyzed file.
+	 */
+	private void completeFile(FileContext file) {
+		this.currentFile.remove();
+		if (this.lastFile == file) {
+			this.lastFile = null;
+		}
+		checkImports(file);
+		if (this.dependencyGraph != null && !file.headerOnly) {
+			for (String classDomain : file.classDomains) {
+				for (Reference reference : file.references) {
+					this.dependencyGraph.addReference(classDomain, reference.domain);
+				}
+			}
+		}
+		// whether a simple name binds to an on-demand import also depends on the other files of the package, which may
+		// change while this one does not
+		if (file.result != null && (file.symbols == null || !file.symbols.dependsOnPackageTypes())) {
+			for (String classDomain : file.classDomains) {
+				file.result.addClassDomain(classDomain);
+			}
+			file.analysisCache.put(file.path, file.result.build());
+		}
+	}
+
+	/**
+	 * Creates the {@link FileContext} of the given file. All per-file state is kept there (and not in the rule
+	 * instance), hence the rule is thread-safe and may even be used by several PMD threads at the same time. The file
+	 * context also pins the current config, so a file is always analyzed with a single config.
+	 *
+	 * @return file context, <code>null</code> if there is no config
+	 */
+	private FileContext newFileContext(ASTCompilationUnit node, RuleContext ctx) {
+		CompiledConfig compiledConfig = this.config.get(ctx.getSourceCodeFile());
+		if (compiledConfig == null) {
+			return null;
+		}
+		FileContext file = new FileContext(ctx, node, compiledConfig);
+		if (file.headerOnly) {
+			this.headerOnlyFiles = true;
+		}
+		if (file.analysisCache != null) {
+			prepareResult(file);
+		}
+		if (this.metrics != null) {
+			this.metrics.fileProcessed(false);
+		}
+		return file;
+	}
+
+	/**
+	 * Reports the cached violations of the given file if it is unchanged, without its AST: the standalone analyzer
+	 * neither parses nor visits such a file. Not to be used for files of which only the header is parsed, their results
+	 * are incomplete.
+	 *
+	 * @return <code>true</code> if the cached result was reported, <code>false</code> if the file needs to be analyzed
+	 */
+	boolean reportCachedResult(RuleContext ctx) {
+		CompiledConfig compiledConfig = this.config.get(ctx.getSourceCodeFile());
+		AnalysisCache analysisCache = (compiledConfig == null) ? null : compiledConfig.getAnalysisCache();
+		File sourceFile = ctx.getSourceCodeFile();
+		FileStamp stamp = (analysisCache == null || sourceFile == null) ? null : FileStamp.of(sourceFile.toPath());
+		FileResult cached = (stamp == null) ? null : analysisCache.get(sourceFile.getAbsolutePath(), stamp);
+		if (cached == null) {
+			return false;
+		}
+		if (this.metrics != null) {
+			this.metrics.fileProcessed(true);
+		}
+		addCachedReferences(cached);
+		for (Violation violation : cached.getViolations()) {
+			ResolvedImport reference = cached.getImports().get(violation.getReference());
+			Object[] args = new Object[] { reference.getDomain(), reference.getImportedName() };
+			ctx.getReport().addRuleViolation(new CachedRuleViolation(this, ctx, violation, args));
+			if (this.metrics != null) {
+				this.metrics.violation(reference.getDomain());
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Prepares the file context to record the result of the file, unless it is cached already or the file was modified
+	 * just now (see {@link AnalysisCache#isCacheable(FileStamp)}). A PMD run parses every file and walks its AST
+	 * anyway, and the rule's own work is not more expensive than replaying a cached result on the AST, hence the cached
+	 * results are only reported by the standalone analyzer (see {@link #reportCachedResult(RuleContext)}).
+	 */
+	private static void prepareResult(FileContext file) {
+		File sourceFile = file.ruleContext.getSourceCodeFile();
+		FileStamp stamp = (sourceFile == null) ? null : FileStamp.of(sourceFile.toPath());
+		if (stamp == null || !AnalysisCache.isCacheable(stamp)) {
+			return;
+		}
+		String path = sourceFile.getAbsolutePath();
+		if (file.analysisCache.get(path, stamp) == null) {
+			file.path = path;
+			file.result = new FileResult.Builder(stamp);
+		}
+	}
+
+	private void addCachedReferences(FileResult cached) {
+		if (this.dependencyGraph != null) {
+			for (String classDomain : cached.getClassDomains()) {
+				for (ResolvedImport resolvedImport : cached.getImports()) {
+					this.dependencyGraph.addReference(classDomain, resolvedImport.getDomain(),
+							resolvedImport.getType());
+				}
+			}
+		}
+	}
+
 	@Override
-	public Object visit(ASTImportDeclaration node, Object ctx) {
-		DomainResolver config = getConfig(ctx);
-		if (config != null) {
-			DomainElement importDecl = config.resolveDomain(node);
-			if (importDecl.hasDomain()) {
-				this.imports.add(importDecl); // save for later use
+	public Object visit(ASTImportDeclaration node, Object data) {
+		FileContext file = (FileContext) data;
+		String importedName = DomainResolver.importedName(node);
+		if (!file.resolver.mightHaveDomain(importedName)) {
+			return null;
+		}
+		ResolvedDomain domain = file.resolver.resolveImport(node);
+		if (this.metrics != null) {
+			this.metrics.importResolved();
+		}
+		if (node.isImportOnDemand() && !node.isStatic()) {
+			// checked when a simple name binds to it, i.e. when a type of the package is actually used; imports of
+			// public packages are never violations
+			if (domain.hasDomain() && domain.getType() == Type.PRIVATE) {
+				file.wildcardImports.add(new WildcardImport(node, importedName, domain));
 			}
+			return null;
+		}
+		Reference reference = file.addReference(importedName, domain);
+		// imports without a domain don't have to be checked (are always considered public)
+		if (reference.domain.hasDomain()) {
+			// save for later use
+			file.importNodes.add(node);
+			file.importReferences.add(reference);
+		}
+		return null;
+	}
+
+	@Override
+	public Object visit(ASTClassOrInterfaceDeclaration node, Object data) {
+		return visitTypeDeclaration(node, data);
+	}
+
+	@Override
+	public Object visit(ASTEnumDeclaration node, Object data) {
+		return visitTypeDeclaration(node, data);
+	}
+
+	@Override
+	public Object visit(ASTAnnotationTypeDeclaration node, Object data) {
+		return visitTypeDeclaration(node, data);
+	}
+
+	/**
+	 * Declares the name of a type declared in the file (visited by the rule chain) or resolves the domain of a top
+	 * level type (visited from its type declaration). Types nested in it, whatever their kind, belong to the domain of
+	 * their top level type, hence they are not visited.
+	 */
+	private Object visitTypeDeclaration(Node node, Object data) {
+		if (data instanceof RuleContext) { // visited by the rule chain
+			declareLocalType(node, (RuleContext) data);
+			return null;
+		}
+		FileContext file = (FileContext) data;
+		ResolvedDomain thisType = file.typeDomain(node);
+		if (thisType.hasDomain()) {
+			file.classDomains.add(thisType.getDomain());
 		}
 		return null;
 	}
 
 	@Override
-	public Object visit(ASTClassOrInterfaceDeclaration node, Object ctx) {
-		DomainResolver config = getConfig(ctx);
-		if (config != null) {
-			DomainElement thisClass = config.resolveDomain(this.packageName, node);
-			// check all imports (dependencies) of this class
-			for (DomainElement importDecl : this.imports) {
-				if (importDecl.hasDomain()) {
-					checkImport(thisClass, importDecl, ctx);
+	public Object visit(ASTTypeParameter node, Object data) {
+		if (data instanceof RuleContext) { // visited by the rule chain
+			declareLocalType(node, (RuleContext) data);
+		}
+		return null;
+	}
+
+	/**
+	 * Adds the name of a type (or type parameter) declared in the file to its local symbols. Only needed to bind
+	 * simple names to an on-demand import of an internal domain package, i.e. only if the file has a single one.
+	 */
+	private void declareLocalType(Node node, RuleContext ctx) {
+		FileContext file = currentFile(ctx);
+		if (file != null && file.wildcardImports.size() == 1) {
+			file.symbols().addLocalName(node.getImage());
+		}
+	}
+
+	/**
+	 * Checks each import (dependency) of a file once, against the domains of its top level types (usually just one).
+	 * An import is reported once if any of these types may not access it.
+	 */
+	private void checkImports(FileContext file) {
+		for (int i = 0; i < file.importNodes.size(); i++) {
+			for (ResolvedDomain typeDomain : file.typeNodeDomains) {
+				if (checkReference(typeDomain, file.importNodes.get(i), file.importReferences.get(i), file)) {
+					break;
 				}
-				// imports without a domain don't have to be checked (are always considered public)
+			}
+		}
+	}
+
+	@Override
+	public Object visit(ASTClassOrInterfaceType node, Object data) {
+		if (data instanceof RuleContext) { // visited by the rule chain
+			checkTypeReference(node, node.getImage(), true, (RuleContext) data);
+		}
+		return null;
+	}
+
+	@Override
+	public Object visit(ASTName node, Object data) {
+		if (data instanceof RuleContext) { // visited by the rule chain
+			String name = node.getImage();
+			if (name == null || isVariableName(name) && this.classMetadata == null) {
+				return null; // the common case, skipped before the parent is looked at
+			}
+			Node parent = node.jjtGetParent();
+			if (parent instanceof ASTImportDeclaration || parent instanceof ASTPackageDeclaration) {
+				return null; // checked with the imports or not a reference
+			}
+			// simple names are type names in annotations and throws clauses, elsewhere they are variables
+			boolean typeName = parent instanceof ASTNameList || parent instanceof ASTMarkerAnnotation
+					|| parent instanceof ASTSingleMemberAnnotation || parent instanceof ASTNormalAnnotation;
+			checkTypeReference(node, name, typeName, (RuleContext) data);
+		}
+		return null;
+	}
+
+	/**
+	 * Checks a reference to a type by its fully qualified name, by its resolved type (type resolution mode) or by a
+	 * simple name that binds to an on-demand import. Names that start with neither a package nor a type name (the
+	 * common case: locals, fields and method calls on them) are skipped by their shape alone, before the file context
+	 * is looked up. Simple type names are skipped unless the file has a single on-demand import of an internal domain
+	 * package (a name could bind to any of several, they are not checked then) or type resolution is enabled.
+	 */
+	private void checkTypeReference(Node node, String name, boolean typeName, RuleContext ctx) {
+		if (name == null) {
+			return;
+		}
+		int typeLength = qualifiedTypeLength(name);
+		int simpleNameLength = (typeLength >= 0) ? -1 : simpleTypeNameLength(name, typeName);
+		if (typeLength < 0 && simpleNameLength <= 0 && this.classMetadata == null) {
+			return;
+		}
+		FileContext file = currentFile(ctx);
+		if (file == null) {
+			return;
+		}
+		Class<?> type = (this.classMetadata == null) ? null : ((TypeNode) node).getType();
+		if (typeLength >= 0) {
+			checkQualifiedReference(node, name, typeLength, file);
+		}
+		else if (type != null) {
+			checkResolvedType(node, type, file);
+		}
+		else if (simpleNameLength > 0 && file.wildcardImports.size() == 1 && !file.wildcardImportsChecked
+				&& this.classMetadata == null) { // with type resolution, names that bind to them are resolved
+			String simpleName = (simpleNameLength == name.length()) ? name : name.substring(0, simpleNameLength);
+			checkWildcardReference(node, simpleName, file);
+		}
+		if (type != null && (node.jjtGetParent() instanceof ASTExtendsList
+				|| node.jjtGetParent() instanceof ASTImplementsList)) {
+			checkInheritedTypes(node, type, file);
+		}
+	}
+
+	/**
+	 * @return the file the calling thread analyzes with the given rule context, <code>null</code> if none
+	 */
+	private FileContext currentFile(RuleContext ctx) {
+		FileContext file = this.lastFile;
+		return (file != null && file.ruleContext == ctx) ? file : this.currentFile.get();
+	}
+
+	/**
+	 * Checks a type resolved by PMD, e.g. a type of the same package or one imported on demand. Each type is checked
+	 * once per file, types that have been checked by import or by fully qualified name are skipped.
+	 */
+	private void checkResolvedType(Node node, Class<?> type, FileContext file) {
+		while (type.isArray()) {
+			type = type.getComponentType();
+		}
+		if (type.isPrimitive() || !file.resolvedTypes().add(type)) {
+			return;
+		}
+		String typeName = ClassMetadataCache.typeName(type);
+		// the import of a nested type refers to it by its canonical name
+		if (!file.resolvedNames.containsKey(typeName) && !file.resolvedNames.containsKey(type.getCanonicalName())) {
+			checkTypeName(node, typeName, file);
+		}
+	}
+
+	/**
+	 * Checks the types a class implicitly refers to by extending or implementing the given type: its super types and
+	 * the types in the signatures of its methods. Reported on the extends or implements clause, once per file.
+	 */
+	private void checkInheritedTypes(Node node, Class<?> type, FileContext file) {
+		for (String typeName : this.classMetadata.getInheritedTypes(type)) {
+			if (!file.resolvedNames.containsKey(typeName)) {
+				checkTypeName(node, typeName, file);
+			}
+		}
+	}
+
+	/**
+	 * Resolves and checks the (fully qualified) name of a type that has not been resolved in this file yet.
+	 */
+	private void checkTypeName(Node node, String typeName, FileContext file) {
+		if (!file.resolver.mightHaveDomain(typeName)) {
+			return;
+		}
+		Reference reference = file.addReference(typeName,
+				file.resolver.resolve(typeName, Math.max(0, typeName.lastIndexOf('.'))));
+		if (reference.domain.hasDomain()) {
+			Node topLevelType = topLevelType(node, file);
+			if (topLevelType != null) {
+				checkReference(file.typeDomain(topLevelType), node, reference, file);
+			}
+		}
+	}
+
+	/**
+	 * Checks a reference to a type by its fully qualified name, e.g. <code>com.acme.foo.internal.Bar</code> in a
+	 * declaration or <code>com.acme.foo.internal.Bar.create()</code> in an expression. Qualified names are resolved
+	 * once per file.
+	 */
+	private void checkQualifiedReference(Node node, String name, int typeLength, FileContext file) {
+		if (!file.resolver.mightHaveDomain(name)) {
+			return;
+		}
+		String typeName = (typeLength == name.length()) ? name : name.substring(0, typeLength);
+		Reference reference = file.resolvedNames.get(typeName);
+		if (reference == null) {
+			reference = file.addReference(typeName, file.resolver.resolve(typeName, typeName.lastIndexOf('.')));
+		}
+		if (reference.domain.hasDomain()) {
+			Node topLevelType = topLevelType(node, file);
+			if (topLevelType != null) {
+				checkReference(file.typeDomain(topLevelType), node, reference, file);
+			}
+		}
+	}
+
+	/**
+	 * Checks a simple type name against the on-demand import of an internal domain package. Such an import only counts
+	 * as a reference (and is only reported, once) if a simple name used by a type binds to it. In a file with a single
+	 * top level type, the first binding name checks it, further names are skipped.
+	 */
+	private void checkWildcardReference(Node node, String simpleName, FileContext file) {
+		if (!file.symbols().bindsToWildcardImport(simpleName)) {
+			return;
+		}
+		WildcardImport wildcardImport = file.wildcardImports.get(0);
+		if (wildcardImport.reference == null) {
+			wildcardImport.reference = file.addReference(wildcardImport.packageName, wildcardImport.domain);
+		}
+		if (!wildcardImport.reported) {
+			Node topLevelType = topLevelType(node, file);
+			if (topLevelType != null) {
+				wildcardImport.reported = checkReference(file.typeDomain(topLevelType), wildcardImport.node,
+						wildcardImport.reference, file);
+			}
+		}
+		file.wildcardImportsChecked = file.singleTypeDeclaration;
+	}
+
+	/**
+	 * @return the top level type (class, interface, enum or annotation type) the given node belongs to,
+	 *         <code>null</code> if none
+	 */
+	private static Node topLevelType(Node node, FileContext file) {
+		if (file.singleTypeDeclaration) {
+			return file.singleTopLevelType; // the common case, no need to walk up the tree
+		}
+		Node typeDeclaration = node;
+		while (typeDeclaration.jjtGetParent() != null
+				&& !(typeDeclaration.jjtGetParent() instanceof ASTCompilationUnit)) {
+			typeDeclaration = typeDeclaration.jjtGetParent();
+		}
+		return (typeDeclaration instanceof ASTTypeDeclaration) ? declaredType((ASTTypeDeclaration) typeDeclaration)
+				: null;
+	}
+
+	/**
+	 * @return the class, interface, enum or annotation type declared by the given type declaration, <code>null</code>
+	 *         if none (a stray semicolon)
+	 */
+	private static Node declaredType(ASTTypeDeclaration typeDeclaration) {
+		for (int i = 0; i < typeDeclaration.jjtGetNumChildren(); i++) {
+			Node child = typeDeclaration.jjtGetChild(i);
+			if (child instanceof ASTClassOrInterfaceDeclaration || child instanceof ASTEnumDeclaration
+					|| child instanceof ASTAnnotationTypeDeclaration) {
+				return child;
 			}
 		}
 		return null;
 	}
 
-	private void checkImport(DomainElement classDecl, DomainElement importDecl, Object ctx) {
-		boolean ok = classDecl.checkDependencyTo(importDecl);
-		if (!ok) {
-			Object[] args = new Object[] { importDecl.getDomain(), importDecl.getNodeName() };
-			addViolation(ctx, importDecl.getNode(), args);
+	/**
+	 * @return <code>true</code> if the name starts with a variable (by Java naming conventions) and is not qualified by
+	 *         a package either, e.g. <code>list</code> or <code>list.add</code>
+	 */
+	static boolean isVariableName(String name) {
+		return !Character.isUpperCase(name.charAt(0)) && qualifiedTypeLength(name) < 0;
+	}
+
+	/**
+	 * @return length of the simple type name a name starts with (e.g. of <code>Foo</code> in <code>Foo.bar</code>, by
+	 *         Java naming conventions), <code>-1</code> if the name does not start with a type name
+	 */
+	static int simpleTypeNameLength(String name, boolean typeName) {
+		if (name.isEmpty() || !Character.isUpperCase(name.charAt(0))) {
+			return -1;
+		}
+		int dot = name.indexOf('.');
+		if (dot < 0) {
+			return typeName ? name.length() : -1; // otherwise a variable or constant
+		}
+		for (int i = 1; i < dot; i++) {
+			if (Character.isLowerCase(name.charAt(i))) {
+				return dot;
+			}
+		}
+		return -1; // a constant, e.g. INSTANCE.run()
+	}
+
+	/**
+	 * @return length of the type name a qualified name starts with (e.g. of <code>com.acme.Foo</code> in
+	 *         <code>com.acme.Foo.bar</code>, by Java naming conventions), <code>-1</code> if the name does not start
+	 *         with a package name
+	 */
+	static int qualifiedTypeLength(String name) {
+		int dot = name.indexOf('.');
+		if (dot <= 0 || !Character.isLowerCase(name.charAt(0))) {
+			return -1; // simple name or starts with a type or variable
+		}
+		int start = dot + 1;
+		while (start < name.length()) {
+			int end = name.indexOf('.', start);
+			if (Character.isUpperCase(name.charAt(start))) {
+				return (end < 0) ? name.length() : end;
+			}
+			if (end < 0) {
+				return -1;
+			}
+			start = end + 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return <code>true</code> if a violation was reported
+	 */
+	private boolean checkReference(ResolvedDomain classDomain, Node node, Reference reference, FileContext file) {
+		if (file.resolver.mayAccess(classDomain, reference.domain)) {
+			return false;
+		}
+		Object[] args = new Object[] { reference.domain.getDomain(), reference.name };
+		addViolation(file.ruleContext, node, args);
+		if (this.metrics != null) {
+			this.metrics.violation(reference.domain.getDomain());
+		}
+		if (file.result != null) {
+			// the location and scope of the violation, to report it again without the AST
+			RuleViolation violation = new JavaRuleViolation(this, file.ruleContext, (JavaNode) node, null);
+			file.result.addViolation(new Violation(reference.index, violation));
 		}
+		return true;
 	}
 
 	@Override
 	public void end(RuleContext ctx) {
-		ctx.removeAttribute(CONFIG_KEY);
+		for (CompiledConfig compiledConfig : this.config.getAll()) {
+			DomainResolver resolver = compiledConfig.getResolver();
+			LOGGER.log(Level.FINE, "{0} resolution cache: {1}, fast path rejects: {2}",
+					new Object[] { RULE_NAME, resolver.getResolutionCache(), resolver.getFastPathRejectCount() });
+			if (compiledConfig.getAnalysisCache() != null) {
+				compiledConfig.getAnalysisCache().save();
+			}
+		}
+		if (this.classMetadata != null) {
+			LOGGER.log(Level.FINE, "{0} class metadata cache: {1}", new Object[] { RULE_NAME, this.classMetadata });
+		}
+		if (this.dependencyGraph != null && this.dependencyGraphFile != null) {
+			if (this.headerOnlyFiles) {
+				LOGGER.log(Level.INFO, "Domain dependency graph not written, it is incomplete in header mode");
+			}
+			else {
+				writeDependencyGraph();
+			}
+		}
+		if (this.metrics != null) {
+			LOGGER.log(Level.INFO, "{0} metrics: {1}", new Object[] { RULE_NAME, this.metrics });
+		}
 		super.end(ctx);
 	}
 
+	private void writeDependencyGraph() {
+		try {
+			this.dependencyGraph.writeTo(this.dependencyGraphFile);
+			LOGGER.log(Level.INFO, "Domain dependency graph ({0} edges) written to {1}",
+					new Object[] { this.dependencyGraph.size(), this.dependencyGraphFile });
+		}
+		catch (IOException ex) {
+			LOGGER.log(Level.WARNING, "Could not write domain dependency graph to " + this.dependencyGraphFile, ex);
+		}
+	}
+
+	/**
+	 * The collaborators of a rule instance, all optional except for the config. The default constructor uses the
+	 * global ones, shared by all rule instances of the JVM.
+	 */
+	static final class Dependencies {
+		private final RuleConfigHolder config;
+		private final DomainResolver resolver;
+		private AnalysisCache analysisCache;
+		private DomainDependencyGraph dependencyGraph;
+		private Path dependencyGraphFile;
+		private ClassMetadataCache classMetadata;
+		private RuleMetrics metrics;
+
+		/**
+		 * Uses the given (fixed) config, see {@link RuleConfigHolder#fixed(DomainResolver, AnalysisCache)}.
+		 */
+		Dependencies(DomainResolver resolver) {
+			this.config = null;
+			this.resolver = resolver;
+		}
+
+		private Dependencies(RuleConfigHolder config) {
+			this.config = config;
+			this.resolver = null;
+		}
+
+		/**
+		 * Caches the results of the analyzed files (fixed config only).
+		 */
+		Dependencies analysisCache(AnalysisCache analysisCache) {
+			this.analysisCache = analysisCache;
+			return this;
+		}
+
+		/**
+		 * Collects the references between domains, written to the given file (if not <code>null</code>) at the end
+		 * of a run.
+		 */
+		Dependencies dependencyGraph(DomainDependencyGraph dependencyGraph, Path dependencyGraphFile) {
+			this.dependencyGraph = dependencyGraph;
+			this.dependencyGraphFile = dependencyGraphFile;
+			return this;
+		}
+
+		/**
+		 * Enables the type resolution mode.
+		 */
+		Dependencies classMetadata(ClassMetadataCache classMetadata) {
+			this.classMetadata = classMetadata;
+			return this;
+		}
+
+		Dependencies metrics(RuleMetrics metrics) {
+			this.metrics = metrics;
+			return this;
+		}
+
+		private RuleConfigHolder config() {
+			return (this.config != null) ? this.config : RuleConfigHolder.fixed(this.resolver, this.analysisCache);
+		}
+	}
+
+	/**
+	 * Analysis state of a single file (compilation unit), passed down the AST instead of the {@link RuleContext}.
+	 */
+	private static final class FileContext {
+		private final RuleContext ruleContext;
+		private final ASTCompilationUnit compilationUnit;
+		private final DomainResolver resolver;
+		// null if disabled or if only the header of the file has been parsed
+		private final AnalysisCache analysisCache;
+		private final boolean headerOnly;
+		private final String packageName;
+		// last top level type declaration (completes the file), null if there is none
+		private final ASTTypeDeclaration lastTypeDeclaration;
+		// true if there is exactly one top level type, then it is known upfront
+		private final boolean singleTypeDeclaration;
+		private final Node singleTopLevelType;
+		private final List<ASTImportDeclaration> importNodes = new ArrayList<>();
+		private final List<Reference> importReferences = new ArrayList<>();
+		// on-demand imports of internal domain packages, checked lazily (only if there is one)
+		private final List<WildcardImport> wildcardImports = new ArrayList<>(1);
+		// true once no simple name needs to be bound to them anymore
+		private boolean wildcardImportsChecked;
+		private LocalSymbolTable symbols;
+		// types resolved by PMD and checked in this file (type resolution mode only)
+		private Set<Class<?>> resolvedTypes;
+		// all names resolved in this file, and the ones of them that belong to a domain
+		private final Map<String, Reference> resolvedNames = new HashMap<>();
+		private final List<Reference> references = new ArrayList<>();
+		private final List<String> classDomains = new ArrayList<>();
+		// resolved top level types (there are only a few per file)
+		private final List<Node> typeNodes = new ArrayList<>(1);
+		private final List<ResolvedDomain> typeNodeDomains = new ArrayList<>(1);
+		// only set if the result is to be cached
+		private String path;
+		private FileResult.Builder result;
+
+		FileContext(RuleContext ruleContext, ASTCompilationUnit compilationUnit, CompiledConfig compiledConfig) {
+			this.ruleContext = ruleContext;
+			this.compilationUnit = compilationUnit;
+			this.resolver = compiledConfig.getResolver();
+			this.headerOnly = ruleContext.getAttribute(HEADER_ONLY) != null;
+			this.analysisCache = this.headerOnly ? null : compiledConfig.getAnalysisCache();
+			ASTPackageDeclaration packageDecl = compilationUnit.getFirstChildOfType(ASTPackageDeclaration.class);
+			this.packageName = (packageDecl == null) ? "" : packageDecl.getPackageNameImage();
+			ASTTypeDeclaration last = null;
+			ASTTypeDeclaration single = null;
+			int typeDeclarations = 0;
+			for (int i = 0; i < compilationUnit.jjtGetNumChildren(); i++) {
+				Node child = compilationUnit.jjtGetChild(i);
+				if (child instanceof ASTTypeDeclaration) {
+					last = (ASTTypeDeclaration) child;
+					if (child.jjtGetNumChildren() > 0) { // not just a semicolon
+						single = last;
+						typeDeclarations++;
+					}
+				}
+			}
+			this.lastTypeDeclaration = last;
+			this.singleTypeDeclaration = (typeDeclarations == 1);
+			this.singleTopLevelType = this.singleTypeDeclaration ? declaredType(single) : null;
+		}
+
+		Set<Class<?>> resolvedTypes() {
+			if (this.resolvedTypes == null) {
+				this.resolvedTypes = Collections.newSetFromMap(new IdentityHashMap<>());
+			}
+			return this.resolvedTypes;
+		}
+
+		LocalSymbolTable symbols() {
+			if (this.symbols == null) {
+				this.symbols = new LocalSymbolTable(this.compilationUnit, this.ruleContext.getSourceCodeFile());
+			}
+			return this.symbols;
+		}
+
+		ResolvedDomain typeDomain(Node typeNode) {
+			for (int i = 0; i < this.typeNodes.size(); i++) {
+				if (this.typeNodes.get(i) == typeNode) {
+					return this.typeNodeDomains.get(i);
+				}
+			}
+			ResolvedDomain typeDomain = this.resolver.resolveType(this.packageName, typeNode.getImage());
+			this.typeNodes.add(typeNode);
+			this.typeNodeDomains.add(typeDomain);
+			return typeDomain;
+		}
+
+		Reference addReference(String name, ResolvedDomain domain) {
+			Reference reference;
+			if (domain.hasDomain()) {
+				reference = new Reference(name, domain, this.references.size());
+				this.references.add(reference);
+				if (this.result != null) {
+					this.result.addImport(name, domain.getDomain(), domain.getType());
+				}
+			}
+			else {
+				reference = new Reference(name, domain, -1);
+			}
+			this.resolvedNames.put(name, reference);
+			return reference;
+		}
+	}
+
+	/**
+	 * An on-demand import of a domain package.
+	 */
+	private static final class WildcardImport {
+		private final ASTImportDeclaration node;
+		private final String packageName;
+		private final ResolvedDomain domain;
+		// set once a simple name binds to the import
+		private Reference reference;
+		private boolean reported;
+
+		WildcardImport(ASTImportDeclaration node, String packageName, ResolvedDomain domain) {
+			this.node = node;
+			this.packageName = packageName;
+			this.domain = domain;
+		}
+	}
+
+	/**
+	 * A name (imported or fully qualified type name) resolved within a file.
+	 */
+	private static final class Reference {
+		private final String name;
+		private final ResolvedDomain domain;
+		// index in the references of the file, -1 if the name does not belong to a domain
+		private final int index;
+
+		Reference(String name, ResolvedDomain domain, int index) {
+			this.name = name;
+			this.domain = domain;
+			this.index = index;
+		}
+	}
+
 }
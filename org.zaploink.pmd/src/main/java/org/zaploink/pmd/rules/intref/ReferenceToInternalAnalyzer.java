@@ -0,0 +1,461 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.zaploink.pmd.rules.ZaploinkPMD;
+
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.Report.ProcessingError;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSetFactory;
+import net.sourceforge.pmd.RuleSetNotFoundException;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.lang.LanguageRegistry;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.LanguageVersionHandler;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.java.JavaLanguageModule;
+import net.sourceforge.pmd.lang.java.ast.ASTImportDeclaration;
+import net.sourceforge.pmd.renderers.Renderer;
+import net.sourceforge.pmd.renderers.RendererFactory;
+
+/**
+ * Standalone command line entry point that runs only the {@link ReferenceToInternal} rule. The rule is loaded from its
+ * rule set once and applied through PMD's rule chain, but without the rest of a PMD run (rule sets loaded per thread,
+ * data flow analysis, incremental renderers etc.).
+ *
+ * <p>
+ * Source roots are walked in parallel on a fork-join pool (one task per directory and per file), the rule instance is
+ * shared by all threads. The report is PMD-compatible (any PMD renderer: <code>text</code>, <code>xml</code>, ...), the
+ * exit code is 0 if there are no violations, 4 if there are (like PMD) and 1 on usage errors or if any file could not
+ * be analyzed (the report lists these files).
+ *
+ * <p>
+ * If the analysis cache is enabled, unchanged files are neither parsed nor visited, their cached violations are
+ * reported as they are (see {@link ReferenceToInternal#reportCachedResult(RuleContext)}).
+ *
+ * <p>
+ * In header mode (<code>-mode header</code>) only the header of a file (package, imports and top level type
+ * declarations, see {@link HeaderScanner}) is parsed, fully qualified references in the type bodies are not checked.
+ * Files with on-demand imports of non-JDK packages (checked where their types are used) are parsed completely, as are
+ * all files in type resolution mode. The results of header-only files are incomplete, hence neither read from nor written to the
+ * analysis cache, and the dependency graph is not written.
+ *
+ * <pre>
+ * java -Dorg.zaploink.pmd.intref.configFile=&lt;rule config&gt; org.zaploink.pmd.rules.intref.ReferenceToInternalAnalyzer
+ *     -d &lt;source root&gt;[,&lt;source root&gt;...] [-f text|xml] [-r &lt;report file&gt;] [-threads &lt;n&gt;]
+ *     [-encoding &lt;charset&gt;] [-auxclasspath &lt;classpath&gt;] [-mode full|header]
+ * </pre>
+ *
+ * @author kvg
+ */
+public final class ReferenceToInternalAnalyzer {
+	private static final Logger LOGGER = ZaploinkPMD.getLogger();
+	private static final String RULE_SET = "rulesets/zaploink/custom.xml";
+	private static final String RULE_NAME = ReferenceToInternal.class.getSimpleName();
+	private static final LanguageVersion JAVA = LanguageRegistry.getLanguage(JavaLanguageModule.NAME)
+			.getDefaultVersion();
+
+	static final int EXIT_OK = 0;
+	static final int EXIT_ERROR = 1;
+	static final int EXIT_VIOLATIONS = 4;
+
+	private final RuleSet ruleSet;
+	// reports the cached results of unchanged files, null if the rule is not the ReferenceToInternal rule itself
+	private final ReferenceToInternal cachingRule;
+	private final Options options;
+	// the rule chain visitor of a rule set is not thread-safe, hence one per thread (the rule itself is)
+	private final ThreadLocal<RuleSets> ruleSets;
+	private final ConcurrentLinkedQueue<RuleViolation> violations = new ConcurrentLinkedQueue<>();
+	private final ConcurrentLinkedQueue<ProcessingError> errors = new ConcurrentLinkedQueue<>();
+	private ClassLoader auxClassLoader;
+	private boolean headerOnly;
+
+	ReferenceToInternalAnalyzer(Rule rule, Options options) {
+		this.ruleSet = RuleSet.createFor(RULE_NAME, rule);
+		this.cachingRule = (rule instanceof ReferenceToInternal) ? (ReferenceToInternal) rule : null;
+		this.options = options;
+		this.ruleSets = ThreadLocal.withInitial(() -> new RuleSets(this.ruleSet));
+	}
+
+	public static void main(String[] args) {
+		System.exit(run(args));
+	}
+
+	static int run(String[] args) {
+		Options options;
+		try {
+			options = Options.parse(args);
+		}
+		catch (IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			System.err.println(Options.USAGE);
+			return EXIT_ERROR;
+		}
+		try {
+			Rule rule = new RuleSetFactory().createRuleSet(RULE_SET).getRuleByName(RULE_NAME);
+			return new ReferenceToInternalAnalyzer(rule, options).analyze();
+		}
+		catch (RuleSetNotFoundException | IOException ex) {
+			LOGGER.log(Level.SEVERE, "Analysis failed", ex);
+			System.err.println("Analysis failed: " + ex);
+			return EXIT_ERROR;
+		}
+	}
+
+	/**
+	 * Analyzes all Java files below the source roots and writes the report.
+	 *
+	 * @return exit code
+	 */
+	int analyze() throws IOException {
+		long start = System.nanoTime();
+		Report report;
+		try (URLClassLoader auxClassLoader = createAuxClassLoader(this.options.auxClasspath)) {
+			this.auxClassLoader = (auxClassLoader == null)
+					? ReferenceToInternalAnalyzer.class.getClassLoader()
+					: auxClassLoader;
+			report = analyzeSourceRoots();
+		}
+		writeReport(report);
+		LOGGER.log(Level.INFO, "{0}: {1} violations, {2} errors in {3} ms", new Object[] { RULE_NAME, report.size(),
+				this.errors.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) });
+		if (report.hasErrors()) {
+			return EXIT_ERROR; // the analysis is incomplete
+		}
+		return (report.size() == 0) ? EXIT_OK : EXIT_VIOLATIONS;
+	}
+
+	private Report analyzeSourceRoots() {
+		this.headerOnly = this.options.headerOnly;
+		if (this.headerOnly && this.ruleSet.usesTypeResolution(JAVA.getLanguage())) {
+			LOGGER.log(Level.INFO, "{0}: header mode is not available in type resolution mode, parsing all files",
+					RULE_NAME);
+			this.headerOnly = false;
+		}
+		// a package may be spread over several of them (e.g. main and test sources)
+		LocalSymbolTable.addSourceRoots(this.options.sourceRoots);
+		RuleContext runContext = newRuleContext(null);
+		RuleSets mainRuleSets = new RuleSets(this.ruleSet);
+		mainRuleSets.start(runContext);
+		ForkJoinPool pool = new ForkJoinPool(this.options.threads);
+		try {
+			List<DirectoryTask> roots = new ArrayList<>();
+			for (Path root : this.options.sourceRoots) {
+				roots.add(new DirectoryTask(root));
+			}
+			for (DirectoryTask root : roots) {
+				pool.execute(root);
+			}
+			for (DirectoryTask root : roots) {
+				root.join();
+			}
+		}
+		finally {
+			pool.shutdown();
+			mainRuleSets.end(runContext);
+		}
+
+		Report report = new Report();
+		for (RuleViolation violation : this.violations) {
+			report.addRuleViolation(violation); // sorted by file and line
+		}
+		for (ProcessingError error : this.errors) {
+			report.addError(error);
+		}
+		return report;
+	}
+
+	private void writeReport(Report report) throws IOException {
+		Renderer renderer = RendererFactory.createRenderer(this.options.format, new Properties());
+		Writer writer = (this.options.reportFile == null)
+				? new OutputStreamWriter(System.out, Charset.defaultCharset())
+				: Files.newBufferedWriter(this.options.reportFile, StandardCharsets.UTF_8);
+		try {
+			renderer.setWriter(writer);
+			renderer.start();
+			renderer.renderFileReport(report);
+			renderer.end();
+			renderer.flush();
+		}
+		finally {
+			if (this.options.reportFile != null) {
+				writer.close();
+			}
+		}
+	}
+
+	private void analyzeFile(Path file) {
+		String fileName = file.toString();
+		RuleContext ctx = newRuleContext(file);
+		try {
+			if (!this.headerOnly && this.cachingRule != null && this.cachingRule.reportCachedResult(ctx)) {
+				addViolations(ctx);
+				return; // unchanged, neither parsed nor visited
+			}
+			LanguageVersionHandler handler = JAVA.getLanguageVersionHandler();
+			Node compilationUnit = this.headerOnly ? parseHeader(file, handler) : null;
+			if (compilationUnit == null) {
+				try (BufferedReader reader = Files.newBufferedReader(file, this.options.encoding)) {
+					compilationUnit = parse(fileName, reader, handler);
+				}
+			}
+			else {
+				ctx.setAttribute(ReferenceToInternal.HEADER_ONLY, Boolean.TRUE);
+			}
+			// scopes are needed to report violations
+			handler.getSymbolFacade().start(compilationUnit);
+			if (this.ruleSet.usesTypeResolution(JAVA.getLanguage())) {
+				handler.getTypeResolutionFacade(this.auxClassLoader).start(compilationUnit);
+			}
+			List<Node> nodes = new ArrayList<>(1);
+			nodes.add(compilationUnit);
+			this.ruleSets.get().apply(nodes, ctx, JAVA.getLanguage());
+		}
+		catch (Exception | StackOverflowError ex) { // e.g. a deeply nested expression, other errors are fatal
+			LOGGER.log(Level.WARNING, "Could not analyze " + fileName, ex);
+			this.errors.add(new ProcessingError(String.valueOf(ex), fileName));
+			return;
+		}
+		addViolations(ctx);
+	}
+
+	private void addViolations(RuleContext ctx) {
+		for (Iterator<RuleViolation> it = ctx.getReport().iterator(); it.hasNext();) {
+			this.violations.add(it.next());
+		}
+	}
+
+	private static Node parse(String fileName, Reader reader, LanguageVersionHandler handler) {
+		return handler.getParser(handler.getDefaultParserOptions()).parse(fileName, reader);
+	}
+
+	/**
+	 * @return compilation unit of the header of the file, <code>null</code> if the whole file has to be parsed
+	 */
+	private Node parseHeader(Path file, LanguageVersionHandler handler) throws IOException {
+		String header = HeaderScanner.header(file, this.options.encoding);
+		if (header == null) {
+			return null;
+		}
+		Node compilationUnit = parse(file.toString(), new StringReader(header), handler);
+		for (int i = 0; i < compilationUnit.jjtGetNumChildren(); i++) {
+			Node child = compilationUnit.jjtGetChild(i);
+			if (child instanceof ASTImportDeclaration) {
+				ASTImportDeclaration importDecl = (ASTImportDeclaration) child;
+				if (importDecl.isImportOnDemand() && !importDecl.isStatic()
+						&& !LocalSymbolTable.isJdkPackage(importDecl.getImportedName())) {
+					return null; // needs the type bodies to tell whether the import is used
+				}
+			}
+		}
+		return compilationUnit;
+	}
+
+	private RuleContext newRuleContext(Path file) {
+		RuleContext ctx = new RuleContext();
+		ctx.setReport(new Report());
+		ctx.setLanguageVersion(JAVA);
+		if (file != null) {
+			ctx.setSourceCodeFilename(file.toString());
+			ctx.setSourceCodeFile(file.toFile());
+		}
+		return ctx;
+	}
+
+	/**
+	 * @return class loader of the auxclasspath (to be closed by the caller), <code>null</code> if there is none
+	 */
+	private static URLClassLoader createAuxClassLoader(String auxClasspath) throws MalformedURLException {
+		if (auxClasspath == null || auxClasspath.isEmpty()) {
+			return null;
+		}
+		List<URL> urls = new ArrayList<>();
+		for (String entry : auxClasspath.split(File.pathSeparator)) {
+			if (!entry.isEmpty()) {
+				urls.add(Paths.get(entry).toUri().toURL());
+			}
+		}
+		return new URLClassLoader(urls.toArray(new URL[urls.size()]),
+				ReferenceToInternalAnalyzer.class.getClassLoader());
+	}
+
+	private static boolean isJavaFile(Path file) {
+		return file.getFileName().toString().endsWith(".java") && Files.isRegularFile(file);
+	}
+
+	/**
+	 * Walks a directory: forks a task per subdirectory and per Java file.
+	 */
+	private final class DirectoryTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Path dir;
+
+		DirectoryTask(Path dir) {
+			this.dir = dir;
+		}
+
+		@Override
+		protected void compute() {
+			if (isJavaFile(this.dir)) { // a source root may also be a single file
+				analyzeFile(this.dir);
+				return;
+			}
+			List<RecursiveAction> tasks = new ArrayList<>();
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(this.dir)) {
+				for (Path entry : entries) {
+					RecursiveAction task = null;
+					if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+						task = new DirectoryTask(entry);
+					}
+					else if (isJavaFile(entry)) {
+						task = new FileTask(entry);
+					}
+					if (task != null) {
+						task.fork();
+						tasks.add(task);
+					}
+				}
+			}
+			catch (IOException ex) {
+				LOGGER.log(Level.WARNING, "Could not read directory " + this.dir, ex);
+				ReferenceToInternalAnalyzer.this.errors.add(new ProcessingError(String.valueOf(ex), this.dir.toString()));
+			}
+			for (RecursiveAction task : tasks) {
+				task.join();
+			}
+		}
+	}
+
+	private final class FileTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Path file;
+
+		FileTask(Path file) {
+			this.file = file;
+		}
+
+		@Override
+		protected void compute() {
+			analyzeFile(this.file);
+		}
+	}
+
+	/**
+	 * Command line options (named like the ones of PMD).
+	 */
+	static final class Options {
+		static final String USAGE = "Usage: ReferenceToInternalAnalyzer -d <source root>[,<source root>...] "
+				+ "[-f text|xml] [-r <report file>] [-threads <n>] [-encoding <charset>] [-auxclasspath <classpath>] "
+				+ "[-mode full|header]";
+
+		private final List<Path> sourceRoots = new ArrayList<>();
+		private String format = "text";
+		private Path reportFile;
+		private int threads = Runtime.getRuntime().availableProcessors();
+		private Charset encoding = StandardCharsets.UTF_8;
+		private String auxClasspath;
+		private boolean headerOnly;
+
+		static Options parse(String[] args) {
+			Options options = new Options();
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (i + 1 >= args.length) {
+					throw new IllegalArgumentException("Missing value of option " + arg);
+				}
+				String value = args[++i];
+				switch (arg) {
+				case "-d":
+				case "-dir":
+					for (String root : value.split(",")) {
+						options.sourceRoots.add(Paths.get(root.trim()));
+					}
+					break;
+				case "-f":
+				case "-format":
+					options.format = checkFormat(arg, value);
+					break;
+				case "-r":
+				case "-reportfile":
+					options.reportFile = Paths.get(value);
+					break;
+				case "-t":
+				case "-threads":
+					options.threads = Math.max(1, parseInt(arg, value));
+					break;
+				case "-e":
+				case "-encoding":
+					options.encoding = Charset.forName(value);
+					break;
+				case "-auxclasspath":
+					options.auxClasspath = value;
+					break;
+				case "-mode":
+					if (!"full".equals(value) && !"header".equals(value)) {
+						throw new IllegalArgumentException("Invalid value of option " + arg + ": " + value);
+					}
+					options.headerOnly = "header".equals(value);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + arg);
+				}
+			}
+			if (options.sourceRoots.isEmpty()) {
+				throw new IllegalArgumentException("No source root given (-d)");
+			}
+			return options;
+		}
+
+		/**
+		 * @return the given report format if PMD has a renderer for it (a built-in format or a renderer class)
+		 */
+		private static String checkFormat(String option, String value) {
+			try {
+				RendererFactory.createRenderer(value, new Properties());
+				return value;
+			}
+			catch (IllegalArgumentException ex) {
+				throw new IllegalArgumentException("Invalid value of option " + option + ": " + value, ex);
+			}
+		}
+
+		private static int parseInt(String option, String value) {
+			try {
+				return Integer.parseInt(value);
+			}
+			catch (NumberFormatException ex) {
+				throw new IllegalArgumentException("Invalid value of option " + option + ": " + value);
+			}
+		}
+	}
+}
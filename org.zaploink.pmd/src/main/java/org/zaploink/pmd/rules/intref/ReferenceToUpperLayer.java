@@ -0,0 +1,119 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.zaploink.pmd.rules.ZaploinkPMD;
+import org.zaploink.pmd.rules.intref.RuleConfigHolder.CompiledConfig;
+
+import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
+import net.sourceforge.pmd.lang.java.ast.ASTImportDeclaration;
+import net.sourceforge.pmd.lang.java.ast.ASTPackageDeclaration;
+import net.sourceforge.pmd.lang.java.rule.AbstractJavaRule;
+
+/**
+ * Detects imports of classes of an upper layer, e.g. of a <code>service</code> class in a <code>storage</code> class if
+ * the layers are declared as <code>api</code>, <code>service</code>, <code>storage</code> (from top to bottom). Classes
+ * that do not belong to a layer are not checked and may be referenced from any layer.
+ *
+ * Only imports are checked: a reference by fully qualified name (<code>com.acme.api.Client client;</code>) and a type
+ * of the same or of another package that is used without import are not reported.
+ *
+ * The layers are declared in the <code>layers</code> section of the {@link ReferenceToInternal} rule config (see
+ * {@link org.zaploink.pmd.rules.intref.config.RuleConfigData}). Both rules use the same config holder (see
+ * {@link RuleConfigHolder#shared()}), so the config file is watched and compiled once and the layer ranks of the
+ * packages (see {@link LayerIndex}) are cached once for both rules. The layer of a package is independent of its
+ * domain: the domain resolution of {@link ReferenceToInternal} (see {@link ResolvedDomain}) is not used.
+ *
+ * @author kvg
+ */
+public class ReferenceToUpperLayer extends AbstractJavaRule {
+	private static final Logger LOGGER = ZaploinkPMD.getLogger();
+	private static final String RULE_NAME = ReferenceToUpperLayer.class.getSimpleName();
+	private static final RuleConfigHolder CONFIG = RuleConfigHolder.shared();
+
+	// shared by all rule instances (i.e. all PMD threads)
+	private final RuleConfigHolder config;
+
+	public ReferenceToUpperLayer() {
+		this(CONFIG);
+	}
+
+	ReferenceToUpperLayer(DomainResolver resolver) {
+		this(RuleConfigHolder.fixed(resolver, null));
+	}
+
+	private ReferenceToUpperLayer(RuleConfigHolder config) {
+		this.config = config;
+		// the imports are children of the compilation unit, no need for a visitor pass over the whole AST
+		addRuleChainVisit(ASTCompilationUnit.class);
+	}
+
+	@Override
+	public boolean usesTypeResolution() {
+		return false;
+	}
+
+	@Override
+	public void start(RuleContext ctx) {
+		this.config.refresh();
+		if (this.config.get() == null) {
+			LOGGER.log(Level.SEVERE, "Could not load configuration for {0} rule.", RULE_NAME);
+		}
+		super.start(ctx);
+	}
+
+	@Override
+	public Object visit(ASTCompilationUnit node, Object data) {
+		RuleContext ctx = (RuleContext) data;
+		CompiledConfig compiledConfig = this.config.get(ctx.getSourceCodeFile());
+		if (compiledConfig == null || compiledConfig.getResolver().getLayers().isEmpty()) {
+			return null;
+		}
+		LayerIndex layers = compiledConfig.getResolver().getLayers();
+		ASTPackageDeclaration packageDecl = node.getFirstChildOfType(ASTPackageDeclaration.class);
+		int ownRank = layers.rankOf((packageDecl == null) ? "" : packageDecl.getPackageNameImage());
+		if (ownRank == LayerIndex.NO_LAYER) {
+			return null;
+		}
+		for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+			Node child = node.jjtGetChild(i);
+			if (child instanceof ASTImportDeclaration) {
+				checkImport((ASTImportDeclaration) child, ownRank, layers, ctx);
+			}
+		}
+		return null;
+	}
+
+	private void checkImport(ASTImportDeclaration node, int ownRank, LayerIndex layers, RuleContext ctx) {
+		String importedName = DomainResolver.importedName(node);
+		int rank = layers.rankOf(packageName(importedName, node.isImportOnDemand() && !node.isStatic()));
+		if (rank < ownRank) {
+			addViolation(ctx, node, new Object[] { layers.nameOf(rank), layers.nameOf(ownRank), importedName });
+		}
+	}
+
+	/**
+	 * @return package of an imported name, i.e. the part before the first type name (by Java naming conventions, the
+	 *         imported type may be a nested type)
+	 */
+	static String packageName(String importedName, boolean packageImport) {
+		if (packageImport) {
+			return importedName;
+		}
+		int start = 0;
+		while (start < importedName.length()) {
+			if (Character.isUpperCase(importedName.charAt(start))) {
+				return (start == 0) ? "" : importedName.substring(0, start - 1);
+			}
+			int dot = importedName.indexOf('.', start);
+			if (dot < 0) {
+				break;
+			}
+			start = dot + 1;
+		}
+		return importedName.substring(0, Math.max(0, importedName.lastIndexOf('.')));
+	}
+}
@@ -0,0 +1,67 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.util.function.BiFunction;
+
+/**
+ * Bounded, thread-safe cache of domain resolutions keyed by fully qualified name (and length of its package part), see
+ * {@link BoundedCache}.
+ *
+ * @author kvg
+ */
+final class ResolutionCache {
+	private final BoundedCache<String, ResolvedDomain> entries;
+	private final BiFunction<String, String, ResolvedDomain> resolver;
+
+	/**
+	 * @param maxSize
+	 *            maximal number of cached resolutions, <code>0</code> disables caching
+	 * @param resolver
+	 *            computes the resolution of a (fully qualified name, package name) pair on a cache miss
+	 */
+	ResolutionCache(int maxSize, BiFunction<String, String, ResolvedDomain> resolver) {
+		this.resolver = resolver;
+		this.entries = new BoundedCache<>(maxSize, 1 << 12);
+	}
+
+	/**
+	 * Returns the cached resolution of the given name or computes (and caches) it. Does not allocate on a cache hit.
+	 *
+	 * @param nodeName
+	 *            fully qualified name
+	 * @param packageLength
+	 *            length of the package part of the fully qualified name (the package name is only extracted on a miss)
+	 */
+	ResolvedDomain get(String nodeName, int packageLength) {
+		ResolvedDomain resolved = this.entries.get(nodeName, packageLength);
+		if (resolved == null) {
+			resolved = this.resolver.apply(nodeName, nodeName.substring(0, packageLength));
+			this.entries.put(nodeName, packageLength, resolved);
+		}
+		return resolved;
+	}
+
+	public long getHitCount() {
+		return this.entries.getHitCount();
+	}
+
+	public long getMissCount() {
+		return this.entries.getMissCount();
+	}
+
+	public long getEvictionCount() {
+		return this.entries.getEvictionCount();
+	}
+
+	public int size() {
+		return this.entries.size();
+	}
+
+	public int getMaxSize() {
+		return this.entries.getMaxSize();
+	}
+
+	@Override
+	public String toString() {
+		return this.entries.toString();
+	}
+}
@@ -0,0 +1,117 @@
+package org.zaploink.pmd.rules.intref;
+
+import org.zaploink.pmd.rules.intref.DomainElement.Type;
+
+/**
+ * Immutable result of a domain lookup: the name of the domain and whether the resolved element belongs to its public
+ * or private part.
+ *
+ * <p>
+ * Instances are created once when the rule configuration is compiled and are shared by all lookups, so resolving an
+ * element does not allocate.
+ *
+ * @author kvg
+ */
+final class ResolvedDomain {
+	/** Result for elements that do not belong to any domain (these are always considered public). */
+	static final ResolvedDomain NONE = new ResolvedDomain(null, Type.PUBLIC, Integer.MAX_VALUE, new int[0]);
+
+	private final String domain;
+	private final Type type;
+	private final int order;
+	private final int id;
+	// IDs of the parent domains and of this domain, top level domain first
+	private final int[] path;
+
+	/**
+	 * @param domain
+	 *            domain name
+	 * @param type
+	 *            public or private part
+	 * @param order
+	 *            declaration order of the domain in the rule config (lower wins if several declarations match)
+	 * @param path
+	 *            IDs of the parent domains and of the domain (see {@link DomainIds#pathOf}), empty if none
+	 */
+	ResolvedDomain(String domain, Type type, int order, int[] path) {
+		this.domain = domain;
+		this.type = type;
+		this.order = order;
+		this.path = path;
+		this.id = (path.length == 0) ? -1 : path[path.length - 1];
+	}
+
+	String getDomain() {
+		return this.domain;
+	}
+
+	Type getType() {
+		return this.type;
+	}
+
+	boolean hasDomain() {
+		return this.domain != null;
+	}
+
+	int getOrder() {
+		return this.order;
+	}
+
+	/**
+	 * @return ID of the domain, <code>-1</code> if none
+	 */
+	int getId() {
+		return this.id;
+	}
+
+	/**
+	 * Checks whether an element of this domain may depend on an element of the given domain (resolved by the same
+	 * resolver), not taking allowed dependencies into account (see {@link DomainResolver#mayAccess}). A sub-domain may
+	 * access the private parts of its parent domains, but not vice versa.
+	 *
+	 * @return <code>true</code> if OK, <code>false</code> otherwise (i.e. not permitted)
+	 */
+	boolean mayAccess(ResolvedDomain target) {
+		// must either be same (or parent) domain or - if different domain - reference to other domain must be public
+		return target.type == Type.PUBLIC || isWithin(target);
+	}
+
+	/**
+	 * @return <code>true</code> if this domain is the given domain or one of its (direct or indirect) sub-domains
+	 */
+	boolean isWithin(ResolvedDomain other) {
+		int depth = other.path.length;
+		return depth > 0 && depth <= this.path.length && this.path[depth - 1] == other.id;
+	}
+
+	/**
+	 * @param outer
+	 *            domain declared for a package, <code>null</code> if none
+	 * @param inner
+	 *            domain declared for one of its sub-packages, <code>null</code> if none
+	 * @return the inner domain if it is a sub-domain of the outer one, the first declared of both otherwise
+	 */
+	static ResolvedDomain nested(ResolvedDomain outer, ResolvedDomain inner) {
+		if (outer != null && inner != null && inner.isWithin(outer)) {
+			return inner;
+		}
+		return first(outer, inner);
+	}
+
+	static ResolvedDomain first(ResolvedDomain a, ResolvedDomain b) {
+		if (a == null) {
+			return b;
+		}
+		if (b == null) {
+			return a;
+		}
+		return (b.order < a.order) ? b : a;
+	}
+
+	@Override
+	public String toString() {
+		return (this.domain == null)
+				? "no domain"
+				: String.format("%s %s", this.type == Type.PUBLIC ? "public" : "private", this.domain);
+	}
+}
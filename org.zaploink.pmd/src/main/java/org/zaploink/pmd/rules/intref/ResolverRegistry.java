@@ -0,0 +1,231 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.zaploink.pmd.rules.ZaploinkPMD;
+import org.zaploink.pmd.rules.intref.RuleConfigHolder.CompiledConfig;
+import org.zaploink.pmd.rules.intref.config.RuleConfigFingerprint;
+import org.zaploink.pmd.rules.intref.config.RuleConfigReaderException;
+
+/**
+ * Registry of the compiled rule configs of a JVM, keyed by the content (a hash) of the config file, so several
+ * projects with different rule configs (e.g. in a Gradle daemon or in Eclipse) each keep their compiled config and
+ * switching between them does not recompile anything, and projects with copies of the same config file share one
+ * compiled config. The hash of a config file is kept with its modification time and size (see {@link FileStamp}), so
+ * an unchanged config file is not read again.
+ *
+ * <p>
+ * Entries are reference counted: a {@link RuleConfigHolder} holds a {@link Lease} on the config it currently uses.
+ * If the registry grows beyond its maximal size, the least recently used entries that are not leased are evicted.
+ *
+ * <p>
+ * Configs are compiled and analysis caches saved outside of the registry lock, so a large config being compiled
+ * for one project does not block the other projects; threads acquiring a config that is being compiled wait for it.
+ *
+ * @author kvg
+ */
+final class ResolverRegistry {
+	private static final Logger LOGGER = ZaploinkPMD.getLogger();
+	private static final ResolverRegistry SHARED = new ResolverRegistry(
+			ZaploinkPMD.getConfig().resolverRegistrySize());
+
+	private final int maxSize;
+	// by content hash, access ordered, least recently used first; guarded by this
+	private final Map<String, Lease> entries = new LinkedHashMap<>(16, 0.75f, true);
+	// content hash of each config file as of its last known stamp; guarded by this
+	private final Map<Path, ContentHash> contentHashes = new HashMap<>();
+
+	ResolverRegistry(int maxSize) {
+		this.maxSize = Math.max(1, maxSize);
+	}
+
+	static ResolverRegistry shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Returns the compiled config of the current content of the given config file, compiled with the given compiler if
+	 * it is not registered yet. The lease has to be {@link #release(Lease) released} when it is no longer used.
+	 */
+	Lease acquire(Path configFile, Compiler compiler) throws RuleConfigReaderException {
+		String key = contentHash(configFile.toAbsolutePath().normalize());
+		Lease lease;
+		boolean compile = false;
+		List<Lease> evicted;
+		synchronized (this) {
+			lease = this.entries.get(key);
+			if (lease == null) {
+				lease = new Lease(key, configFile);
+				this.entries.put(key, lease);
+				compile = true;
+			}
+			lease.references++;
+			evicted = evict();
+		}
+		saveAnalysisCaches(evicted);
+		if (compile) {
+			compile(lease, compiler);
+		}
+		else {
+			LOGGER.log(Level.FINE, "Reusing compiled rule config {0}", configFile);
+			awaitCompiled(lease);
+		}
+		return lease;
+	}
+
+	/**
+	 * @return hash of the current content of the given config file, only read if it changed since it was last hashed
+	 */
+	private String contentHash(Path configFile) throws RuleConfigReaderException {
+		FileStamp stamp = FileStamp.of(configFile);
+		if (stamp == null) {
+			throw RuleConfigReaderException.readError(configFile, new NoSuchFileException(configFile.toString()));
+		}
+		synchronized (this) {
+			ContentHash known = this.contentHashes.get(configFile);
+			if (known != null && known.stamp.equals(stamp)) {
+				return known.hash;
+			}
+		}
+		String hash;
+		try {
+			hash = RuleConfigFingerprint.sha256(configFile);
+		}
+		catch (IOException ex) {
+			throw RuleConfigReaderException.readError(configFile, ex);
+		}
+		// only kept if the file did not change while it was read
+		if (stamp.equals(FileStamp.of(configFile))) {
+			synchronized (this) {
+				this.contentHashes.put(configFile, new ContentHash(stamp, hash));
+			}
+		}
+		return hash;
+	}
+
+	private void compile(Lease lease, Compiler compiler) throws RuleConfigReaderException {
+		try {
+			lease.config.complete(compiler.compile());
+		}
+		catch (RuleConfigReaderException | RuntimeException | Error ex) {
+			synchronized (this) {
+				this.entries.remove(lease.key, lease); // compiled again on next use
+			}
+			lease.config.completeExceptionally(ex);
+			throw ex;
+		}
+	}
+
+	private void awaitCompiled(Lease lease) throws RuleConfigReaderException {
+		try {
+			lease.config.join();
+		}
+		catch (CompletionException ex) {
+			synchronized (this) {
+				lease.references--;
+			}
+			if (ex.getCause() instanceof RuleConfigReaderException) {
+				throw (RuleConfigReaderException) ex.getCause();
+			}
+			if (ex.getCause() instanceof Error) {
+				throw (Error) ex.getCause();
+			}
+			throw (RuntimeException) ex.getCause();
+		}
+	}
+
+	void release(Lease lease) {
+		List<Lease> evicted;
+		synchronized (this) {
+			if (lease.references > 0) {
+				lease.references--;
+			}
+			evicted = evict();
+		}
+		saveAnalysisCaches(evicted);
+	}
+
+	/**
+	 * @return the evicted entries, whose analysis caches are still to be saved
+	 */
+	private List<Lease> evict() {
+		List<Lease> evicted = Collections.emptyList();
+		Iterator<Lease> it = this.entries.values().iterator();
+		while (this.entries.size() > this.maxSize && it.hasNext()) {
+			Lease lease = it.next();
+			if (lease.references == 0) { // leases being compiled are referenced by the compiling thread
+				it.remove();
+				if (evicted.isEmpty()) {
+					evicted = new ArrayList<>();
+				}
+				evicted.add(lease);
+				LOGGER.log(Level.FINE, "Evicted compiled rule config {0}", lease.configFile);
+			}
+		}
+		return evicted;
+	}
+
+	private static void saveAnalysisCaches(List<Lease> leases) {
+		for (Lease lease : leases) {
+			AnalysisCache analysisCache = lease.getConfig().getAnalysisCache();
+			if (analysisCache != null) {
+				analysisCache.save();
+			}
+		}
+	}
+
+	synchronized int size() {
+		return this.entries.size();
+	}
+
+	@FunctionalInterface
+	interface Compiler {
+		CompiledConfig compile() throws RuleConfigReaderException;
+	}
+
+	/**
+	 * A registered compiled config and the number of its current users.
+	 */
+	static final class Lease {
+		// content hash of the config file
+		private final String key;
+		// the config file it was compiled from (there may be copies of it)
+		private final Path configFile;
+		// completed by the thread that compiles it
+		private final CompletableFuture<CompiledConfig> config = new CompletableFuture<>();
+		// guarded by the registry
+		private int references;
+
+		Lease(String key, Path configFile) {
+			this.key = key;
+			this.configFile = configFile;
+		}
+
+		CompiledConfig getConfig() {
+			return this.config.join();
+		}
+	}
+
+	private static final class ContentHash {
+		private final FileStamp stamp;
+		private final String hash;
+
+		ContentHash(FileStamp stamp, String hash) {
+			this.stamp = stamp;
+			this.hash = hash;
+		}
+	}
+}
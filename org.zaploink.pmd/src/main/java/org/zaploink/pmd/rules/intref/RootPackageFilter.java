@@ -0,0 +1,104 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Cheap pre-check that rejects names which cannot belong to any domain, based on the root package segment (e.g.
+ * <code>java</code>, <code>javax</code>, <code>org</code>) of all explicit declarations and the literal prefixes of all
+ * recognition patterns of a rule config.
+ *
+ * <p>
+ * If any recognition pattern has no literal prefix, nothing can be rejected and {@link #mightMatch(String)} always
+ * returns <code>true</code>.
+ *
+ * @author kvg
+ */
+final class RootPackageFilter {
+	private final String[] roots;
+	private final String[] rootPrefixes;
+	private final boolean acceptAll;
+
+	private RootPackageFilter(Set<String> roots, Set<String> rootPrefixes, boolean acceptAll) {
+		this.roots = roots.toArray(new String[roots.size()]);
+		this.rootPrefixes = rootPrefixes.toArray(new String[rootPrefixes.size()]);
+		this.acceptAll = acceptAll;
+	}
+
+	/**
+	 * @param qualifiedName
+	 *            fully qualified class or package name
+	 * @return <code>false</code> if the name can never belong to a domain, <code>true</code> if it might
+	 */
+	boolean mightMatch(String qualifiedName) {
+		if (this.acceptAll) {
+			return true;
+		}
+		for (String root : this.roots) {
+			if (qualifiedName.startsWith(root)
+					&& (qualifiedName.length() == root.length() || qualifiedName.charAt(root.length()) == '.')) {
+				return true;
+			}
+		}
+		for (String rootPrefix : this.rootPrefixes) {
+			if (qualifiedName.startsWith(rootPrefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	boolean acceptsAll() {
+		return this.acceptAll;
+	}
+
+	@Override
+	public String toString() {
+		return this.acceptAll
+				? "accept all"
+				: String.format("roots=%s, rootPrefixes=%s", Arrays.toString(this.roots),
+						Arrays.toString(this.rootPrefixes));
+	}
+
+	static class Builder {
+		private final Set<String> roots = new LinkedHashSet<>();
+		private final Set<String> rootPrefixes = new LinkedHashSet<>();
+		private boolean acceptAll;
+
+		/**
+		 * Adds root packages of explicitly declared class and package names (see {@link DomainIndex#getRootNames()}).
+		 */
+		Builder addRootNames(Collection<String> rootNames) {
+			this.roots.addAll(rootNames);
+			return this;
+		}
+
+		/**
+		 * Adds the literal prefix of a recognition pattern (see {@link PackageRecognizer#literalPrefix(String)}).
+		 */
+		Builder addLiteralPrefix(String literalPrefix) {
+			int dot = literalPrefix.indexOf('.');
+			if (literalPrefix.isEmpty()) {
+				this.acceptAll = true;
+			}
+			else if (dot < 0) {
+				this.rootPrefixes.add(literalPrefix);
+			}
+			else {
+				this.roots.add(literalPrefix.substring(0, dot));
+			}
+			return this;
+		}
+
+		Builder addLiteralPrefixes(Collection<String> literalPrefixes) {
+			literalPrefixes.forEach(this::addLiteralPrefix);
+			return this;
+		}
+
+		RootPackageFilter build() {
+			return new RootPackageFilter(this.roots, this.rootPrefixes, this.acceptAll);
+		}
+	}
+}
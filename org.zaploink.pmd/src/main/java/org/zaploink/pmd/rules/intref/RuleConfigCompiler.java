@@ -0,0 +1,225 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.zaploink.pmd.rules.ZaploinkPMD;
+import org.zaploink.pmd.rules.intref.config.RuleConfigData;
+import org.zaploink.pmd.rules.intref.config.RuleConfigData.AutoDomainRecognition;
+import org.zaploink.pmd.rules.intref.config.RuleConfigData.LayerDeclaration;
+import org.zaploink.pmd.rules.intref.config.RuleConfigReaderException;
+
+/**
+ * Precompiles a JSON rule config into a compact binary file (<code>&lt;config file&gt;.bin</code>, next to the JSON
+ * file) that is loaded without JSON parsing, without computing the config fingerprints and without indexing the
+ * explicit domain declarations, which saves start-up time in short PMD runs (e.g. one per Gradle subproject).
+ *
+ * <p>
+ * The JSON file is read with the {@link RuleConfigStreamReader}, just like a config that is not precompiled, so both
+ * accept the same files and compute the same fingerprints. The binary file holds the compiled index of the explicit
+ * domain declarations (see {@link DomainIndex#write}), the bulk of large configs, the other (small) sections of the
+ * config as {@link RuleConfigData} and the fingerprints. The domains of the index are stored by name, they get their
+ * IDs when the index is loaded (see {@link DomainIds}). The regular expressions of the config are still compiled on
+ * every load, patterns cannot be stored in compiled form.
+ *
+ * <p>
+ * The binary file records the modification time and size of the JSON file it was compiled from (see
+ * {@link FileStamp}), so checking whether it is up to date does not read the JSON file. {@link #load(Path)} ignores
+ * it if it is missing, stale (the JSON file changed) or of another format version, the rule config is then read from
+ * the JSON file as usual.
+ *
+ * <pre>
+ * java org.zaploink.pmd.rules.intref.RuleConfigCompiler &lt;rule config&gt; [&lt;binary file&gt;]
+ * </pre>
+ *
+ * @author kvg
+ */
+public final class RuleConfigCompiler {
+	private static final Logger LOGGER = ZaploinkPMD.getLogger();
+	private static final String FILE_SUFFIX = ".bin";
+	private static final int MAGIC = 0x5A504B52;
+	private static final int FORMAT_VERSION = 7;
+
+	private RuleConfigCompiler() {
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 1 || args.length > 2) {
+			System.err.println("Usage: RuleConfigCompiler <rule config> [<binary file>]");
+			System.exit(1);
+		}
+		Path configFile = Paths.get(args[0]);
+		Path binaryFile = (args.length > 1) ? Paths.get(args[1]) : binaryFileOf(configFile);
+		try {
+			compile(configFile, binaryFile);
+			System.out.println("Compiled " + configFile + " to " + binaryFile);
+		}
+		catch (IOException ex) { // incl. RuleConfigReaderException
+			System.err.println("Could not compile " + configFile + ": " + ex.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * @return the binary file {@link #load(Path)} looks for
+	 */
+	static Path binaryFileOf(Path configFile) {
+		return configFile.resolveSibling(configFile.getFileName() + FILE_SUFFIX);
+	}
+
+	/**
+	 * Compiles the given JSON rule config to the given binary file.
+	 */
+	static void compile(Path configFile, Path binaryFile) throws IOException {
+		FileStamp stamp = FileStamp.of(configFile);
+		byte[] json = Files.readAllBytes(configFile);
+		if (stamp == null || !stamp.equals(FileStamp.of(configFile))) {
+			throw new IOException("Rule config file changed while it was read: " + configFile);
+		}
+		IndexedRuleConfig config;
+		try (Reader reader = new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8)) {
+			config = RuleConfigStreamReader.read(reader);
+		}
+		if (config == null) {
+			throw RuleConfigReaderException.noConfig(configFile);
+		}
+		RuleConfigData ruleConfig = config.getRuleConfig();
+		Path dir = binaryFile.toAbsolutePath().getParent();
+		Path tmpFile = Files.createTempFile(dir, binaryFile.getFileName().toString(), ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeLong(stamp.getLastModified());
+			out.writeLong(stamp.getSize());
+			out.writeUTF(config.getConfigFingerprint());
+			out.writeUTF(config.getExplicitDeclarationsFingerprint());
+			out.writeInt(ruleConfig.getVersion());
+			writeList(ruleConfig.getAutomaticDomainRecognition().getPublicPackages(), out);
+			writeList(ruleConfig.getAutomaticDomainRecognition().getPrivatePackages(), out);
+			Map<String, List<String>> allowedDependencies = ruleConfig.getAllowedDependencies();
+			out.writeInt((allowedDependencies == null) ? -1 : allowedDependencies.size());
+			if (allowedDependencies != null) {
+				for (Entry<String, List<String>> entry : allowedDependencies.entrySet()) {
+					out.writeUTF(entry.getKey());
+					writeList(entry.getValue(), out);
+				}
+			}
+			List<LayerDeclaration> layers = ruleConfig.getLayers();
+			out.writeInt((layers == null) ? -1 : layers.size());
+			if (layers != null) {
+				for (LayerDeclaration layer : layers) {
+					writeString(layer.getName(), out);
+					writeList(layer.getPackages(), out);
+				}
+			}
+			config.getExplicitDeclarations().write(out);
+		}
+		catch (IOException ex) {
+			Files.deleteIfExists(tmpFile);
+			throw ex;
+		}
+		Files.move(tmpFile, binaryFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Loads the precompiled form of the given JSON rule config.
+	 *
+	 * @return the precompiled config, <code>null</code> if there is no up-to-date binary file
+	 */
+	static IndexedRuleConfig load(Path configFile) {
+		Path binaryFile = binaryFileOf(configFile);
+		if (!Files.isRegularFile(binaryFile)) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(binaryFile)))) {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+				LOGGER.log(Level.INFO, "Ignoring {0} of another format version", binaryFile);
+				return null;
+			}
+			if (!new FileStamp(in.readLong(), in.readLong()).equals(FileStamp.of(configFile))) {
+				LOGGER.log(Level.INFO, "Ignoring stale {0}, {1} has changed", new Object[] { binaryFile, configFile });
+				return null;
+			}
+			String configFingerprint = in.readUTF();
+			String explicitDeclarationsFingerprint = in.readUTF();
+			int version = in.readInt();
+			AutoDomainRecognition recognition = new AutoDomainRecognition(readList(in), readList(in));
+			int allowed = in.readInt();
+			Map<String, List<String>> allowedDependencies = (allowed < 0) ? null : new LinkedHashMap<>();
+			for (int i = 0; i < allowed; i++) {
+				allowedDependencies.put(in.readUTF(), readList(in));
+			}
+			int layerCount = in.readInt();
+			List<LayerDeclaration> layers = (layerCount < 0) ? null : new ArrayList<>(layerCount);
+			for (int i = 0; i < layerCount; i++) {
+				LayerDeclaration layer = new LayerDeclaration();
+				layer.setName(readString(in));
+				layer.setPackages(readList(in));
+				layers.add(layer);
+			}
+			DomainIndex explicitDeclarations = DomainIndex.read(in, new DomainIds());
+			RuleConfigData ruleConfig = new RuleConfigData(recognition);
+			ruleConfig.setVersion(version);
+			ruleConfig.setAllowedDependencies(allowedDependencies);
+			ruleConfig.setLayers(layers);
+			return new IndexedRuleConfig(ruleConfig, explicitDeclarations, configFingerprint,
+					explicitDeclarationsFingerprint);
+		}
+		catch (IOException | RuntimeException ex) {
+			String msg = MessageFormat.format("Could not load {0}, reading {1}", binaryFile, configFile);
+			LOGGER.log(Level.WARNING, msg, ex);
+			return null;
+		}
+	}
+
+	private static void writeList(List<String> list, DataOutputStream out) throws IOException {
+		out.writeInt((list == null) ? -1 : list.size());
+		if (list != null) {
+			for (String element : list) {
+				writeString(element, out);
+			}
+		}
+	}
+
+	private static List<String> readList(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		if (size < 0) {
+			return null;
+		}
+		List<String> list = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			list.add(readString(in));
+		}
+		return list;
+	}
+
+	private static void writeString(String string, DataOutputStream out) throws IOException {
+		out.writeBoolean(string != null);
+		if (string != null) {
+			out.writeUTF(string);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+}
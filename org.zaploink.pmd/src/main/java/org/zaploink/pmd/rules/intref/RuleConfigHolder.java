@@ -0,0 +1,326 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.zaploink.pmd.rules.ZaploinkPMD;
+import org.zaploink.pmd.rules.intref.ResolverRegistry.Lease;
+import org.zaploink.pmd.rules.intref.config.RuleConfigReader;
+import org.zaploink.pmd.rules.intref.config.RuleConfigReaderException;
+
+/**
+ * Holds the compiled rule config of the {@link ReferenceToInternal} rule and reloads it when the config file changes,
+ * so config changes are picked up without restarting the JVM (e.g. in Eclipse or in a Gradle daemon).
+ *
+ * <p>
+ * {@link #refresh()} is called at the start of every PMD run (between analysis runs, never during one). It checks the
+ * modification time and size of the config file that {@link RuleConfigReader} would read and, if the file changed,
+ * compiles the new config (reusing the unchanged compiled parts of the current one) and atomically swaps it in. If the
+ * new config cannot be read, the current one is kept.
+ *
+ * <p>
+ * If there is an up-to-date precompiled form of the config file (see {@link RuleConfigCompiler}), it is loaded instead
+ * of the JSON file. Compiled configs are shared through the {@link ResolverRegistry}, so switching back to a config
+ * file that has been used before (e.g. by another project in the same JVM) does not recompile it.
+ *
+ * <p>
+ * If the installed strategy assigns config files to source files (e.g. per Eclipse project, see
+ * {@link RuleConfigReader#getConfigFile(File)}), these are compiled on first use and checked for changes at the start
+ * of every PMD run and after {@link RuleConfigReader#invalidate()}.
+ *
+ * @author kvg
+ */
+final class RuleConfigHolder {
+	private static final Logger LOGGER = ZaploinkPMD.getLogger();
+	private static final String RULE_NAME = ReferenceToInternal.class.getSimpleName();
+
+	private final boolean watching;
+	private final ResolverRegistry registry;
+	private volatile CompiledConfig current;
+	// guarded by this
+	private Path configFile;
+	private FileStamp configStamp;
+	private Lease lease;
+	// configs assigned to source files by the strategy, by config file
+	private final Map<Path, FileConfig> fileConfigs = new ConcurrentHashMap<>();
+	private volatile long seenInvalidations = RuleConfigReader.getInvalidationCount();
+
+	private RuleConfigHolder(CompiledConfig initial, boolean watching, ResolverRegistry registry) {
+		this.current = initial;
+		this.watching = watching;
+		this.registry = registry;
+	}
+
+	/**
+	 * @return the watching holder of the rules that are configured by the {@link ReferenceToInternal} config, so the
+	 *         config file is checked (and a broken config is reported) once per PMD run, not once per rule
+	 */
+	static RuleConfigHolder shared() {
+		return SharedHolder.INSTANCE;
+	}
+
+	/**
+	 * @return holder that loads its config with the installed {@link RuleConfigReader} strategy and watches the config
+	 *         file for changes
+	 */
+	static RuleConfigHolder watching() {
+		return watching(ResolverRegistry.shared());
+	}
+
+	static RuleConfigHolder watching(ResolverRegistry registry) {
+		RuleConfigHolder holder = new RuleConfigHolder(null, true, registry);
+		holder.refresh();
+		return holder;
+	}
+
+	/**
+	 * @return holder of a fixed config that is never reloaded
+	 */
+	static RuleConfigHolder fixed(DomainResolver resolver, AnalysisCache analysisCache) {
+		return new RuleConfigHolder((resolver == null) ? null : new CompiledConfig(resolver, analysisCache), false,
+				null);
+	}
+
+	/**
+	 * @return current config, <code>null</code> if no config could be loaded
+	 */
+	CompiledConfig get() {
+		return this.current;
+	}
+
+	/**
+	 * @return config of the given source file: the one of its own config file if the strategy assigns one, the current
+	 *         config otherwise, <code>null</code> if no config could be loaded
+	 */
+	CompiledConfig get(File sourceFile) {
+		if (!this.watching || sourceFile == null) {
+			return this.current;
+		}
+		Path file = RuleConfigReader.getConfigFile(sourceFile);
+		if (file == null) {
+			return this.current;
+		}
+		if (this.seenInvalidations != RuleConfigReader.getInvalidationCount()) {
+			revalidateFileConfigs();
+		}
+		FileConfig fileConfig = this.fileConfigs.get(file);
+		if (fileConfig == null) {
+			fileConfig = loadFileConfig(file);
+		}
+		return (fileConfig.lease != null) ? fileConfig.lease.getConfig() : this.current;
+	}
+
+	/**
+	 * @return the current config and the configs of source files
+	 */
+	List<CompiledConfig> getAll() {
+		List<CompiledConfig> configs = new ArrayList<>();
+		if (this.current != null) {
+			configs.add(this.current);
+		}
+		for (FileConfig fileConfig : this.fileConfigs.values()) {
+			if (fileConfig.lease != null && !configs.contains(fileConfig.lease.getConfig())) {
+				configs.add(fileConfig.lease.getConfig());
+			}
+		}
+		return configs;
+	}
+
+	private synchronized FileConfig loadFileConfig(Path file) {
+		FileConfig fileConfig = this.fileConfigs.get(file);
+		if (fileConfig != null) {
+			return fileConfig;
+		}
+		FileStamp stamp = FileStamp.of(file);
+		Lease fileLease = null;
+		try {
+			fileLease = this.registry.acquire(file,
+					() -> compile(file, null));
+		}
+		catch (RuleConfigReaderException | RuntimeException ex) {
+			// don't try again until the file changes
+			LOGGER.log(Level.SEVERE, "Could not load rule config " + file + ", using the default one", ex);
+		}
+		fileConfig = new FileConfig(stamp, fileLease);
+		this.fileConfigs.put(file, fileConfig);
+		return fileConfig;
+	}
+
+	/**
+	 * Drops the configs of source files whose config file has changed (they are loaded again on next use).
+	 */
+	private synchronized void revalidateFileConfigs() {
+		this.seenInvalidations = RuleConfigReader.getInvalidationCount();
+		for (Iterator<Entry<Path, FileConfig>> it = this.fileConfigs.entrySet().iterator(); it.hasNext();) {
+			Entry<Path, FileConfig> entry = it.next();
+			FileConfig fileConfig = entry.getValue();
+			if (!Objects.equals(FileStamp.of(entry.getKey()), fileConfig.stamp)) {
+				it.remove();
+				if (fileConfig.lease != null) {
+					this.registry.release(fileConfig.lease);
+					AnalysisCache analysisCache = fileConfig.lease.getConfig().analysisCache;
+					if (analysisCache != null) {
+						analysisCache.save();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reloads the config if the config file has changed since it was last loaded.
+	 */
+	synchronized void refresh() {
+		if (!this.watching) {
+			return;
+		}
+		revalidateFileConfigs();
+		Path file = RuleConfigReader.getConfigFile();
+		FileStamp stamp = FileStamp.of(file);
+		if (this.current != null && Objects.equals(file, this.configFile) && Objects.equals(stamp, this.configStamp)) {
+			return; // unchanged
+		}
+		if (this.current != null && file == null) {
+			return; // cannot detect changes, keep what we have
+		}
+
+		CompiledConfig previous = this.current;
+		Lease newLease = null;
+		CompiledConfig compiled;
+		try {
+			if (file == null) {
+				compiled = compile(null, previous); // nothing to register it by
+			}
+			else {
+				newLease = this.registry.acquire(file, () -> compile(file, previous));
+				compiled = newLease.getConfig();
+			}
+		}
+		catch (RuleConfigReaderException | RuntimeException ex) {
+			String msg = (this.current == null)
+					? "Could not initialize domain resolver"
+					: "Could not reload changed rule config, keeping the current one";
+			LOGGER.log(Level.SEVERE, msg, ex);
+			// don't try again until the file changes
+			this.configFile = file;
+			this.configStamp = stamp;
+			return;
+		}
+		this.current = compiled;
+		this.configFile = file;
+		this.configStamp = stamp;
+		if (this.lease != null) {
+			this.registry.release(this.lease);
+		}
+		this.lease = newLease;
+		if (previous != null && previous.analysisCache != null) {
+			previous.analysisCache.save();
+		}
+	}
+
+	/**
+	 * Reads and compiles the rule config: from its precompiled form if it is up to date, in a single pass over the
+	 * config file otherwise (see {@link RuleConfigStreamReader}).
+	 *
+	 * @param file
+	 *            the config file, <code>null</code> if unknown (the installed {@link RuleConfigReader} strategy reads
+	 *            the config then)
+	 */
+	private static CompiledConfig compile(Path file, CompiledConfig previous) throws RuleConfigReaderException {
+		long start = System.nanoTime();
+		IndexedRuleConfig precompiled = (file == null) ? null : RuleConfigCompiler.load(file);
+		int cacheSize = ZaploinkPMD.getConfig().resolutionCacheSize();
+		DomainResolver previousResolver = (previous == null) ? null : previous.resolver;
+		DomainResolver resolver;
+		if (precompiled != null) {
+			resolver = precompiled.compile(cacheSize, previousResolver);
+		}
+		else if (file != null) {
+			resolver = RuleConfigStreamReader.read(file, cacheSize, previousResolver);
+		}
+		else {
+			resolver = new DomainResolver(RuleConfigReader.readConfig(), cacheSize, previousResolver);
+		}
+		// with type resolution, results also depend on the auxclasspath which the cache does not track
+		AnalysisCache analysisCache = ZaploinkPMD.getConfig().isAnalysisCacheEnabled()
+				&& !ZaploinkPMD.getConfig().isTypeResolutionEnabled()
+				? AnalysisCache.open(ZaploinkPMD.getConfig().analysisCacheDir(), resolver.getConfigFingerprint())
+				: null;
+
+		long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		long heapUsedMB = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() >> 20;
+		LOGGER.log(Level.INFO, "{0} {1} rule config {2}{3} in {4} ms, heap used {5} MB (peak {6} MB)",
+				new Object[] { (previous == null) ? "Loaded" : "Reloaded", RULE_NAME, file,
+						(precompiled == null) ? "" : " (precompiled)", millis, heapUsedMB, peakHeapUsed() >> 20 });
+		return new CompiledConfig(resolver, analysisCache);
+	}
+
+	/**
+	 * @return peak heap usage since the JVM started (sum of the peaks of the heap memory pools)
+	 */
+	private static long peakHeapUsed() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	/**
+	 * Immutable snapshot of a compiled rule config.
+	 */
+	static final class CompiledConfig {
+		private final DomainResolver resolver;
+		private final AnalysisCache analysisCache;
+
+		CompiledConfig(DomainResolver resolver, AnalysisCache analysisCache) {
+			this.resolver = resolver;
+			this.analysisCache = analysisCache;
+		}
+
+		DomainResolver getResolver() {
+			return this.resolver;
+		}
+
+		/**
+		 * @return analysis cache, <code>null</code> if disabled
+		 */
+		AnalysisCache getAnalysisCache() {
+			return this.analysisCache;
+		}
+	}
+
+	/**
+	 * Config of the source files assigned to a config file.
+	 */
+	private static final class FileConfig {
+		private final FileStamp stamp;
+		// null if the config file could not be loaded
+		private final Lease lease;
+
+		FileConfig(FileStamp stamp, Lease lease) {
+			this.stamp = stamp;
+			this.lease = lease;
+		}
+	}
+
+	// created on first use, i.e. when the first rule is loaded
+	private static final class SharedHolder {
+		static final RuleConfigHolder INSTANCE = watching();
+	}
+}
@@ -0,0 +1,295 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.zaploink.pmd.rules.intref.config.Json;
+import org.zaploink.pmd.rules.intref.config.RuleConfigData;
+import org.zaploink.pmd.rules.intref.config.RuleConfigData.AutoDomainRecognition;
+import org.zaploink.pmd.rules.intref.config.RuleConfigData.DomainDeclaration.Section;
+import org.zaploink.pmd.rules.intref.config.RuleConfigData.LayerDeclaration;
+import org.zaploink.pmd.rules.intref.config.RuleConfigFingerprint;
+import org.zaploink.pmd.rules.intref.config.RuleConfigFingerprint.DeclarationsFingerprint;
+import org.zaploink.pmd.rules.intref.config.RuleConfigReader;
+import org.zaploink.pmd.rules.intref.config.RuleConfigReaderException;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+/**
+ * Reads a JSON rule config and compiles it into a {@link DomainResolver} in a single pass over the JSON tokens.
+ *
+ * <p>
+ * The explicit domain declarations, the bulk of large (e.g. generated) configs, are added to the {@link DomainIndex}
+ * and hashed for the config fingerprints (see {@link DeclarationsFingerprint}) name by name while they are read, so
+ * they are never held in memory, neither as {@link RuleConfigData} nor as JSON, not even a single declaration. The
+ * other sections of the config are small and bound with Gson. The resolver is the same as the one compiled from the
+ * {@link RuleConfigData} that {@link RuleConfigReader} reads from the same file, with the same fingerprints.
+ *
+ * <p>
+ * Unlike Gson's binding, which keeps the last value of a key that occurs twice, this reader rejects duplicate domains
+ * and parts. The {@link RuleConfigCompiler} reads configs with this reader as well, so a config file is accepted or
+ * rejected the same way whether it is loaded from JSON or from its precompiled form.
+ *
+ * @author kvg
+ */
+final class RuleConfigStreamReader {
+	private static final String EXPLICIT_DECLARATIONS = "explicitDomainDeclarations";
+	private static final Type ALLOWED_DEPENDENCIES = new TypeToken<Map<String, List<String>>>() {
+	}.getType();
+	private static final Type LAYERS = new TypeToken<List<LayerDeclaration>>() {
+	}.getType();
+
+	private final DomainIndex.Builder declarations;
+	private final DeclarationsFingerprint declarationsFingerprint = new DeclarationsFingerprint();
+	private boolean declarationsRead;
+	// defaults as for a RuleConfigData bound by Gson
+	private int version;
+	private AutoDomainRecognition automaticDomainRecognition = new AutoDomainRecognition();
+	private Map<String, List<String>> allowedDependencies = Collections.emptyMap();
+	private List<LayerDeclaration> layers = Collections.emptyList();
+
+	private RuleConfigStreamReader() {
+		this.declarations = new DomainIndex.Builder(new DomainIds());
+	}
+
+	/**
+	 * Reads and compiles the given rule config file (UTF-8), reusing the compiled parts of a previous resolver that
+	 * are unchanged.
+	 *
+	 * @param previous
+	 *            resolver compiled from a previous version of the rule config, may be <code>null</code>
+	 */
+	static DomainResolver read(Path configFile, int cacheSize, DomainResolver previous)
+			throws RuleConfigReaderException {
+		return read(configFile).compile(cacheSize, previous);
+	}
+
+	/**
+	 * Reads the given rule config file (UTF-8) and indexes its explicit domain declarations.
+	 */
+	static IndexedRuleConfig read(Path configFile) throws RuleConfigReaderException {
+		try (BufferedReader fileReader = Files.newBufferedReader(configFile)) {
+			IndexedRuleConfig config = read(fileReader);
+			if (config == null) {
+				throw RuleConfigReaderException.noConfig(configFile);
+			}
+			return config;
+		}
+		catch (RuleConfigReaderException ex) {
+			throw ex;
+		}
+		catch (NoSuchFileException ex) {
+			throw RuleConfigReaderException.missingConfig(configFile);
+		}
+		catch (IOException ex) {
+			throw RuleConfigReaderException.readError(configFile, ex);
+		}
+	}
+
+	/**
+	 * Reads and compiles a rule config, see {@link #read(Path, int, DomainResolver)}.
+	 *
+	 * @return the compiled rule config, <code>null</code> if the JSON document is empty
+	 */
+	static DomainResolver read(Reader reader, int cacheSize, DomainResolver previous)
+			throws RuleConfigReaderException {
+		IndexedRuleConfig config = read(reader);
+		return (config == null) ? null : config.compile(cacheSize, previous);
+	}
+
+	/**
+	 * Reads a rule config and indexes its explicit domain declarations.
+	 *
+	 * @return the read rule config, <code>null</code> if the JSON document is empty
+	 */
+	static IndexedRuleConfig read(Reader reader) throws RuleConfigReaderException {
+		RuleConfigStreamReader config = new RuleConfigStreamReader();
+		JsonReader json = new JsonReader(reader);
+		json.setLenient(true); // like Gson
+		try {
+			if (!config.read(json)) {
+				return null;
+			}
+		}
+		catch (MalformedJsonException | EOFException | IllegalStateException | NumberFormatException ex) {
+			throw RuleConfigReaderException.invalidConfig(new JsonSyntaxException(ex));
+		}
+		catch (IOException ex) {
+			throw RuleConfigReaderException.invalidConfig(new JsonIOException(ex));
+		}
+		catch (JsonParseException ex) {
+			throw RuleConfigReaderException.invalidConfig(ex);
+		}
+		return config.finish();
+	}
+
+	/**
+	 * @return <code>false</code> if the JSON document is empty
+	 */
+	private boolean read(JsonReader json) throws IOException {
+		try {
+			if (json.peek() == JsonToken.NULL) {
+				return false;
+			}
+		}
+		catch (EOFException ex) {
+			return false; // no token at all
+		}
+		json.beginObject();
+		while (json.hasNext()) {
+			switch (json.nextName()) {
+			case "version":
+				Integer versionValue = Json.GSON.fromJson(json, Integer.class);
+				this.version = (versionValue == null) ? this.version : versionValue;
+				break;
+			case "automaticDomainRecognition":
+				this.automaticDomainRecognition = Json.GSON.fromJson(json, AutoDomainRecognition.class);
+				break;
+			case EXPLICIT_DECLARATIONS:
+				readDeclarations(json);
+				break;
+			case "allowedDependencies":
+				this.allowedDependencies = Json.GSON.fromJson(json, ALLOWED_DEPENDENCIES);
+				break;
+			case "layers":
+				this.layers = Json.GSON.fromJson(json, LAYERS);
+				break;
+			default:
+				json.skipValue(); // unknown, ignored by Gson as well
+			}
+		}
+		json.endObject();
+		if (json.peek() != JsonToken.END_DOCUMENT) {
+			throw new JsonIOException("JSON document was not fully consumed.");
+		}
+		return true;
+	}
+
+	private void readDeclarations(JsonReader json) throws IOException {
+		if (this.declarationsRead) {
+			throw new JsonSyntaxException("duplicate key: " + EXPLICIT_DECLARATIONS);
+		}
+		this.declarationsRead = true;
+		if (json.peek() == JsonToken.NULL) {
+			json.nextNull();
+			return;
+		}
+		Set<String> domains = new HashSet<>();
+		json.beginObject();
+		while (json.hasNext()) {
+			String domain = json.nextName();
+			if (!domains.add(domain)) {
+				throw new JsonSyntaxException("duplicate key: " + domain);
+			}
+			this.declarationsFingerprint.startDomain(domain);
+			this.declarations.startDomain(domain);
+			readDeclaration(json, domain);
+		}
+		json.endObject();
+	}
+
+	/**
+	 * Reads a domain declaration name by name. Unlike Gson, which binds the last one, a part that is declared twice is
+	 * rejected.
+	 */
+	private void readDeclaration(JsonReader json, String domain) throws IOException {
+		if (json.peek() == JsonToken.NULL) {
+			json.nextNull();
+			return;
+		}
+		boolean publicPartsRead = false;
+		boolean privatePartsRead = false;
+		json.beginObject();
+		while (json.hasNext()) {
+			String name = json.nextName();
+			if ("publicParts".equals(name) && !publicPartsRead) {
+				publicPartsRead = true;
+				readParts(json, Section.PUBLIC_CLASSES, Section.PUBLIC_PACKAGES);
+			}
+			else if ("privateParts".equals(name) && !privatePartsRead) {
+				privatePartsRead = true;
+				readParts(json, Section.PRIVATE_CLASSES, Section.PRIVATE_PACKAGES);
+			}
+			else if ("publicParts".equals(name) || "privateParts".equals(name)) {
+				throw new JsonSyntaxException("duplicate key: " + domain + "." + name);
+			}
+			else {
+				json.skipValue(); // unknown, ignored by Gson as well
+			}
+		}
+		json.endObject();
+	}
+
+	private void readParts(JsonReader json, Section classes, Section packages) throws IOException {
+		if (json.peek() == JsonToken.NULL) {
+			json.nextNull();
+			return;
+		}
+		boolean classesRead = false;
+		boolean packagesRead = false;
+		json.beginObject();
+		while (json.hasNext()) {
+			String name = json.nextName();
+			if ("classes".equals(name) && !classesRead) {
+				classesRead = true;
+				readNames(json, classes);
+			}
+			else if ("packages".equals(name) && !packagesRead) {
+				packagesRead = true;
+				readNames(json, packages);
+			}
+			else if ("classes".equals(name) || "packages".equals(name)) {
+				throw new JsonSyntaxException("duplicate key: " + name);
+			}
+			else {
+				json.skipValue();
+			}
+		}
+		json.endObject();
+	}
+
+	private void readNames(JsonReader json, Section section) throws IOException {
+		if (json.peek() == JsonToken.NULL) {
+			json.nextNull();
+			return;
+		}
+		json.beginArray();
+		while (json.hasNext()) {
+			if (json.peek() == JsonToken.NULL) {
+				json.nextNull();
+				continue;
+			}
+			String name = json.nextString();
+			this.declarationsFingerprint.addName(section, name);
+			this.declarations.addName(section, name);
+		}
+		json.endArray();
+	}
+
+	private IndexedRuleConfig finish() {
+		RuleConfigData ruleConfig = new RuleConfigData(this.automaticDomainRecognition);
+		ruleConfig.setVersion(this.version);
+		ruleConfig.setAllowedDependencies(this.allowedDependencies);
+		ruleConfig.setLayers(this.layers);
+		String explicitDeclarationsFingerprint = this.declarationsFingerprint.finish();
+		return new IndexedRuleConfig(ruleConfig, this.declarations.build(),
+				RuleConfigFingerprint.of(ruleConfig, explicitDeclarationsFingerprint), explicitDeclarationsFingerprint);
+	}
+}
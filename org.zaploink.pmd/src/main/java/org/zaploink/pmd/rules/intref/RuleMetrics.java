@@ -0,0 +1,245 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.zaploink.pmd.rules.ZaploinkPMD;
+
+/**
+ * Counters of the {@link ReferenceToInternal} rule and its {@link DomainResolver}s: files processed, imports resolved,
+ * resolution latency, cache hit ratio, fast path rejects and violations per domain.
+ *
+ * <p>
+ * Only enabled with {@link org.zaploink.pmd.rules.ZaploinkPMDConfig#isMetricsEnabled()}, otherwise {@link #global()}
+ * is <code>null</code> and recording costs a single <code>null</code> check. The counters are striped
+ * ({@link LongAdder}), so PMD threads do not contend on them. The resolution cache hits and misses and the fast path
+ * rejects are not counted twice: they are read from the counters of the tracked {@link DomainResolver}s (those of
+ * resolvers that have been garbage collected after a config reload are no longer included). The global metrics are
+ * registered with the platform MBean server (see {@link RuleMetricsMXBean}) and their summary is logged at the end of
+ * every PMD run.
+ *
+ * @author kvg
+ */
+final class RuleMetrics implements RuleMetricsMXBean {
+	private static final Logger LOGGER = ZaploinkPMD.getLogger();
+	private static final String OBJECT_NAME = "org.zaploink.pmd:type=ReferenceToInternal,name=Metrics";
+	private static final int LATENCY_BUCKETS = 32; // up to 2^30 ns (about 1 s), the last one for anything slower
+	// indexes of the counters read from the domain resolvers
+	private static final int CACHE_HITS = 0;
+	private static final int CACHE_MISSES = 1;
+	private static final int FAST_PATH_REJECTS = 2;
+	private static final RuleMetrics GLOBAL = ZaploinkPMD.getConfig().isMetricsEnabled() ? register(new RuleMetrics())
+			: null;
+
+	private final LongAdder filesProcessed = new LongAdder();
+	private final LongAdder filesFromAnalysisCache = new LongAdder();
+	private final LongAdder importsResolved = new LongAdder();
+	private final LongAdder[] latencyHistogram = new LongAdder[LATENCY_BUCKETS];
+	private final Map<String, LongAdder> violationsPerDomain = new ConcurrentHashMap<>();
+	// tracked domain resolvers and their counters at the last reset; guarded by itself
+	private final Map<DomainResolver, long[]> resolvers = new WeakHashMap<>();
+
+	RuleMetrics() {
+		for (int i = 0; i < LATENCY_BUCKETS; i++) {
+			this.latencyHistogram[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * @return metrics of this JVM, <code>null</code> if disabled
+	 */
+	static RuleMetrics global() {
+		return GLOBAL;
+	}
+
+	private static RuleMetrics register(RuleMetrics metrics) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name); // e.g. registered by the rule classes of a previous Gradle build
+			}
+			server.registerMBean(metrics, name);
+		}
+		catch (JMException | RuntimeException ex) {
+			LOGGER.log(Level.WARNING, "Could not register " + OBJECT_NAME, ex);
+		}
+		return metrics;
+	}
+
+	void fileProcessed(boolean fromAnalysisCache) {
+		this.filesProcessed.increment();
+		if (fromAnalysisCache) {
+			this.filesFromAnalysisCache.increment();
+		}
+	}
+
+	void importResolved() {
+		this.importsResolved.increment();
+	}
+
+	/**
+	 * Includes the resolution cache and fast path counters of the given resolver in these metrics, from now on.
+	 */
+	void track(DomainResolver resolver) {
+		long[] counts = counts(resolver);
+		synchronized (this.resolvers) {
+			this.resolvers.put(resolver, counts);
+		}
+	}
+
+	void resolved(long nanos) {
+		this.latencyHistogram[latencyBucket(nanos)].increment();
+	}
+
+	void violation(String domain) {
+		LongAdder violations = this.violationsPerDomain.get(domain);
+		if (violations == null) {
+			violations = this.violationsPerDomain.computeIfAbsent(domain, d -> new LongAdder());
+		}
+		violations.increment();
+	}
+
+	/**
+	 * @return index of the bucket of the given latency, bucket <code>i</code> covers <code>[2^(i-1), 2^i)</code> ns
+	 */
+	static int latencyBucket(long nanos) {
+		return Math.min(LATENCY_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos)));
+	}
+
+	@Override
+	public long getFilesProcessed() {
+		return this.filesProcessed.sum();
+	}
+
+	@Override
+	public long getFilesFromAnalysisCache() {
+		return this.filesFromAnalysisCache.sum();
+	}
+
+	@Override
+	public long getImportsResolved() {
+		return this.importsResolved.sum();
+	}
+
+	@Override
+	public long getResolutions() {
+		long resolutions = 0;
+		for (LongAdder bucket : this.latencyHistogram) {
+			resolutions += bucket.sum();
+		}
+		return resolutions;
+	}
+
+	@Override
+	public double getCacheHitRatio() {
+		long[] counts = resolverCounts();
+		long accesses = counts[CACHE_HITS] + counts[CACHE_MISSES];
+		return (accesses == 0) ? 0 : (double) counts[CACHE_HITS] / accesses;
+	}
+
+	@Override
+	public long getFastPathRejects() {
+		return resolverCounts()[FAST_PATH_REJECTS];
+	}
+
+	/**
+	 * @return the counters of the tracked resolvers since the last reset, summed up
+	 */
+	private long[] resolverCounts() {
+		long[] counts = new long[3];
+		synchronized (this.resolvers) {
+			this.resolvers.forEach((resolver, atReset) -> {
+				long[] current = counts(resolver);
+				for (int i = 0; i < counts.length; i++) {
+					counts[i] += current[i] - atReset[i];
+				}
+			});
+		}
+		return counts;
+	}
+
+	private static long[] counts(DomainResolver resolver) {
+		ResolutionCache cache = resolver.getResolutionCache();
+		return new long[] { cache.getHitCount(), cache.getMissCount(), resolver.getFastPathRejectCount() };
+	}
+
+	@Override
+	public long getViolations() {
+		long violations = 0;
+		for (LongAdder domainViolations : this.violationsPerDomain.values()) {
+			violations += domainViolations.sum();
+		}
+		return violations;
+	}
+
+	@Override
+	public Map<String, Long> getViolationsPerDomain() {
+		Map<String, Long> violations = new TreeMap<>();
+		this.violationsPerDomain.forEach((domain, count) -> violations.put(domain, count.sum()));
+		return violations;
+	}
+
+	@Override
+	public long[] getResolutionLatencyHistogram() {
+		long[] histogram = new long[LATENCY_BUCKETS];
+		for (int i = 0; i < LATENCY_BUCKETS; i++) {
+			histogram[i] = this.latencyHistogram[i].sum();
+		}
+		return histogram;
+	}
+
+	/**
+	 * @return upper bound (in ns) of the given quantile of the resolution latencies, <code>0</code> if there are none
+	 */
+	long latencyQuantile(double quantile) {
+		long[] histogram = getResolutionLatencyHistogram();
+		long total = 0;
+		for (long count : histogram) {
+			total += count;
+		}
+		long threshold = (long) Math.ceil(total * quantile);
+		long seen = 0;
+		for (int i = 0; i < LATENCY_BUCKETS && total > 0; i++) {
+			seen += histogram[i];
+			if (seen >= threshold) {
+				return 1L << i;
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public void reset() {
+		this.filesProcessed.reset();
+		this.filesFromAnalysisCache.reset();
+		this.importsResolved.reset();
+		synchronized (this.resolvers) {
+			this.resolvers.replaceAll((resolver, atReset) -> counts(resolver));
+		}
+		for (LongAdder bucket : this.latencyHistogram) {
+			bucket.reset();
+		}
+		this.violationsPerDomain.clear();
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"files=%d (from analysis cache: %d), imports resolved=%d, resolutions=%d (p50 < %d ns, p99 < %d ns), "
+						+ "cache hit ratio=%.3f, fast path rejects=%d, violations=%d %s",
+				getFilesProcessed(), getFilesFromAnalysisCache(), getImportsResolved(), getResolutions(),
+				latencyQuantile(0.5), latencyQuantile(0.99), getCacheHitRatio(), getFastPathRejects(), getViolations(),
+				getViolationsPerDomain());
+	}
+}
@@ -0,0 +1,43 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link RuleMetrics} of the {@link ReferenceToInternal} rule (object name
+ * <code>org.zaploink.pmd:type=ReferenceToInternal,name=Metrics</code>). All counts are totals since the metrics were
+ * created or last reset.
+ *
+ * @author kvg
+ */
+public interface RuleMetricsMXBean {
+
+	long getFilesProcessed();
+
+	/**
+	 * @return number of processed files whose result was taken from the analysis cache
+	 */
+	long getFilesFromAnalysisCache();
+
+	long getImportsResolved();
+
+	long getResolutions();
+
+	/**
+	 * @return resolution cache hits / (hits + misses), <code>0</code> if nothing has been resolved yet
+	 */
+	double getCacheHitRatio();
+
+	long getFastPathRejects();
+
+	long getViolations();
+
+	Map<String, Long> getViolationsPerDomain();
+
+	/**
+	 * @return number of resolutions per latency bucket: bucket <code>i</code> counts resolutions that took less than
+	 *         <code>2^i</code> ns (and at least <code>2^(i-1)</code> ns), the last bucket everything slower
+	 */
+	long[] getResolutionLatencyHistogram();
+
+	void reset();
+}
@@ -0,0 +1,16 @@
+package org.zaploink.pmd.rules.intref.config;
+
+import com.google.gson.Gson;
+
+/**
+ * Holds the {@link Gson} instance that reads and hashes rule configs. It is created on first use, so loading a
+ * precompiled config (whose fingerprints are already computed) does not load Gson.
+ *
+ * @author kvg
+ */
+public final class Json {
+	public static final Gson GSON = new Gson();
+
+	private Json() {
+	}
+}
@@ -17,7 +17,7 @@ import java.util.Map;
 	},
 
 	"explicitDomainDeclarations" : {
-		"example" : {
+		"example (sub-domains are named parent.child)" : {
 			"publicParts" : {
 				"packages" : [ "fully qualified package name", ...],
 				"classes" : [ "fully qualified class name", ... ]
@@ -27,7 +27,17 @@ import java.util.Map;
 				"classes" : [ "fully qualified class name", ... ]
 			}
 		}
-	}
+	},
+
+	"allowedDependencies" : {
+		"domain" : [ "domain whose private parts it may access", ... ]
+	},
+
+	"layers" : [
+		{ "name" : "top layer, e.g. api", "packages" : [ "package regex", ... ] },
+		{ "name" : "layer below, e.g. service", "packages" : [ "package regex", ... ] },
+		...
+	]
 }
  * </pre>
  *
@@ -38,10 +48,18 @@ public class RuleConfigData {
 	private int version;
 	private final AutoDomainRecognition automaticDomainRecognition;
 	private Map<String, DomainDeclaration> explicitDomainDeclarations;
+	private Map<String, List<String>> allowedDependencies;
+	private List<LayerDeclaration> layers;
 
 	public RuleConfigData() {
-		this.automaticDomainRecognition = new AutoDomainRecognition();
+		this(new AutoDomainRecognition());
+	}
+
+	public RuleConfigData(AutoDomainRecognition automaticDomainRecognition) {
+		this.automaticDomainRecognition = automaticDomainRecognition;
 		this.explicitDomainDeclarations = Collections.emptyMap();
+		this.allowedDependencies = Collections.emptyMap();
+		this.layers = Collections.emptyList();
 	}
 
 	public int getVersion() {
@@ -60,6 +78,29 @@ public class RuleConfigData {
 		this.explicitDomainDeclarations = explicitDomainDeclarations;
 	}
 
+	/**
+	 * @return domains (of explicit declarations or recognized automatically) whose private parts a domain may access,
+	 *         by that domain
+	 */
+	public Map<String, List<String>> getAllowedDependencies() {
+		return this.allowedDependencies;
+	}
+
+	public void setAllowedDependencies(Map<String, List<String>> allowedDependencies) {
+		this.allowedDependencies = allowedDependencies;
+	}
+
+	/**
+	 * @return layers from top to bottom, a class must not depend on a class of an upper layer
+	 */
+	public List<LayerDeclaration> getLayers() {
+		return this.layers;
+	}
+
+	public void setLayers(List<LayerDeclaration> layers) {
+		this.layers = layers;
+	}
+
 	public AutoDomainRecognition getAutomaticDomainRecognition() {
 		return this.automaticDomainRecognition;
 	}
@@ -69,8 +110,12 @@ public class RuleConfigData {
 		private final List<String> privatePackages;
 
 		public AutoDomainRecognition() {
-			this.publicPackages = Collections.emptyList();
-			this.privatePackages = Collections.emptyList();
+			this(Collections.emptyList(), Collections.emptyList());
+		}
+
+		public AutoDomainRecognition(List<String> publicPackages, List<String> privatePackages) {
+			this.publicPackages = publicPackages;
+			this.privatePackages = privatePackages;
 		}
 
 		public List<String> getPublicPackages() {
@@ -108,6 +153,60 @@ public class RuleConfigData {
 			this.privateParts = privateParts;
 		}
 
+		/**
+		 * @return the names of the given section, none if the section or its part is <code>null</code>
+		 */
+		public List<String> getNames(Section section) {
+			DomainParts parts = section.isPrivate() ? this.privateParts : this.publicParts;
+			List<String> names = (parts == null) ? null
+					: section.isPackages() ? parts.getPackages() : parts.getClasses();
+			return (names == null) ? Collections.<String> emptyList() : names;
+		}
+
+		/**
+		 * The class and package names of the public and private parts of a domain declaration.
+		 */
+		public enum Section {
+			PUBLIC_CLASSES, PUBLIC_PACKAGES, PRIVATE_CLASSES, PRIVATE_PACKAGES;
+
+			public boolean isPrivate() {
+				return this == PRIVATE_CLASSES || this == PRIVATE_PACKAGES;
+			}
+
+			public boolean isPackages() {
+				return this == PUBLIC_PACKAGES || this == PRIVATE_PACKAGES;
+			}
+		}
+
+	}
+
+	public static class LayerDeclaration {
+		private String name;
+		private List<String> packages;
+
+		public LayerDeclaration() {
+			this.packages = Collections.emptyList();
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * @return regular expressions, a class belongs to the layer if the name of its package matches one of them
+		 */
+		public List<String> getPackages() {
+			return this.packages;
+		}
+
+		public void setPackages(List<String> packages) {
+			this.packages = packages;
+		}
+
 	}
 
 	public static class DomainParts {
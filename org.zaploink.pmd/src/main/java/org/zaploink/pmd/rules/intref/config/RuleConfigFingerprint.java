@@ -0,0 +1,228 @@
+package org.zaploink.pmd.rules.intref.config;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.zaploink.pmd.rules.intref.config.RuleConfigData.AutoDomainRecognition;
+import org.zaploink.pmd.rules.intref.config.RuleConfigData.DomainDeclaration;
+import org.zaploink.pmd.rules.intref.config.RuleConfigData.DomainDeclaration.Section;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Computes a fingerprint of a {@link RuleConfigData} (a hash over its canonical JSON form). Two configs with the same
+ * fingerprint declare the same domains, results computed with one of them remain valid for the other.
+ *
+ * <p>
+ * The explicit domain declarations, the bulk of large configs, are hashed on their own and only their fingerprint is
+ * part of the canonical form of the config, so the fingerprints of a config can also be computed while it is read
+ * (see {@link DeclarationsFingerprint}).
+ *
+ * @author kvg
+ */
+public final class RuleConfigFingerprint {
+
+	private RuleConfigFingerprint() {
+	}
+
+	public static String of(RuleConfigData ruleConfig) {
+		return of(ruleConfig, of(ruleConfig.getExplicitDomainDeclarations()));
+	}
+
+	/**
+	 * @param explicitDeclarationsFingerprint
+	 *            fingerprint of the explicit domain declarations of the rule config, which are ignored
+	 * @return fingerprint of the given rule config
+	 */
+	public static String of(RuleConfigData ruleConfig, String explicitDeclarationsFingerprint) {
+		MessageDigest digest = sha256Digest();
+		try (JsonWriter json = Json.GSON.newJsonWriter(digestWriter(digest))) {
+			json.beginObject();
+			json.name("version").value(ruleConfig.getVersion());
+			json.name("automaticDomainRecognition");
+			Json.GSON.toJson(ruleConfig.getAutomaticDomainRecognition(), AutoDomainRecognition.class, json);
+			json.name("explicitDomainDeclarations").value(explicitDeclarationsFingerprint);
+			json.name("allowedDependencies");
+			Json.GSON.toJson(ruleConfig.getAllowedDependencies(), Map.class, json);
+			json.name("layers");
+			Json.GSON.toJson(ruleConfig.getLayers(), List.class, json);
+			json.endObject();
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException(ex); // nothing is written to any device
+		}
+		return hex(digest.digest());
+	}
+
+	/**
+	 * @return fingerprint of the explicit domain declarations of a rule config only
+	 */
+	public static String of(Map<String, DomainDeclaration> explicitDomainDeclarations) {
+		DeclarationsFingerprint fingerprint = new DeclarationsFingerprint();
+		for (Entry<String, DomainDeclaration> entry : explicitDomainDeclarations.entrySet()) {
+			fingerprint.add(entry.getKey(), entry.getValue());
+		}
+		return fingerprint.finish();
+	}
+
+	/**
+	 * @return hex encoded SHA-256 hash of the given bytes
+	 */
+	public static String sha256(byte[] bytes) {
+		return hex(sha256Digest().digest(bytes));
+	}
+
+	/**
+	 * @return hex encoded SHA-256 hash of the content of the given file, read in chunks (rule configs may be large)
+	 */
+	public static String sha256(Path file) throws IOException {
+		MessageDigest digest = sha256Digest();
+		byte[] buffer = new byte[8192];
+		try (InputStream in = Files.newInputStream(file)) {
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				digest.update(buffer, 0, n);
+			}
+		}
+		return hex(digest.digest());
+	}
+
+	/**
+	 * @return writer that hashes what is written to it (buffered, JSON writers write many small strings)
+	 */
+	private static Writer digestWriter(MessageDigest digest) {
+		OutputStream digestStream = new OutputStream() {
+			@Override
+			public void write(int b) {
+				digest.update((byte) b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+				digest.update(b, off, len);
+			}
+		};
+		return new BufferedWriter(new OutputStreamWriter(digestStream, StandardCharsets.UTF_8));
+	}
+
+	private static MessageDigest sha256Digest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException("SHA-256 not supported", ex); // mandatory for every JRE
+		}
+	}
+
+	private static String hex(byte[] hash) {
+		StringBuilder sb = new StringBuilder(2 * hash.length);
+		for (byte b : hash) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Fingerprint of explicit domain declarations that are hashed name by name as they are added (e.g. while they are
+	 * read), so they never have to be held in memory, not even a single declaration. Equal to
+	 * {@link RuleConfigFingerprint#of(Map)} of the same declarations in the same order.
+	 *
+	 * <p>
+	 * The names of each section of a declaration (see {@link Section}) are hashed on their own, so it does not matter
+	 * in which order the sections of a declaration are read. A missing (or <code>null</code>) section is hashed like an
+	 * empty one, it declares the same.
+	 */
+	public static final class DeclarationsFingerprint {
+		private static final Section[] SECTIONS = Section.values();
+
+		private final MessageDigest digest = sha256Digest();
+		// names of the sections of the current domain
+		private final MessageDigest[] sections = new MessageDigest[SECTIONS.length];
+		private final int[] sectionSizes = new int[SECTIONS.length];
+		private String domain;
+
+		public DeclarationsFingerprint() {
+			for (int i = 0; i < SECTIONS.length; i++) {
+				this.sections[i] = sha256Digest();
+			}
+		}
+
+		public void add(String domainName, DomainDeclaration declaration) {
+			startDomain(domainName);
+			if (declaration != null) {
+				for (Section section : SECTIONS) {
+					for (String name : declaration.getNames(section)) {
+						addName(section, name);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Starts the declaration of the given domain, declared after the ones started before, its names are added with
+		 * {@link #addName(Section, String)}.
+		 */
+		public void startDomain(String domainName) {
+			finishDomain();
+			this.domain = domainName;
+		}
+
+		/**
+		 * Adds a name of the given section of the current domain declaration (<code>null</code> names are ignored,
+		 * they do not declare anything).
+		 */
+		public void addName(Section section, String name) {
+			if (name != null) {
+				update(this.sections[section.ordinal()], name);
+				this.sectionSizes[section.ordinal()]++;
+			}
+		}
+
+		private void finishDomain() {
+			if (this.domain == null) {
+				return;
+			}
+			update(this.digest, this.domain);
+			for (int i = 0; i < SECTIONS.length; i++) {
+				updateInt(this.digest, this.sectionSizes[i]);
+				this.digest.update(this.sections[i].digest()); // resets the section
+				this.sectionSizes[i] = 0;
+			}
+			this.domain = null;
+		}
+
+		/**
+		 * @return the fingerprint of the declarations added so far, no more can be added
+		 */
+		public String finish() {
+			finishDomain();
+			return hex(this.digest.digest());
+		}
+
+		private static void update(MessageDigest digest, String value) {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			updateInt(digest, bytes.length);
+			digest.update(bytes);
+		}
+
+		private static void updateInt(MessageDigest digest, int value) {
+			digest.update((byte) (value >>> 24));
+			digest.update((byte) (value >>> 16));
+			digest.update((byte) (value >>> 8));
+			digest.update((byte) value);
+		}
+	}
+}
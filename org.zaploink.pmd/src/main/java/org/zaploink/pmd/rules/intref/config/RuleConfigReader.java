@@ -1,19 +1,19 @@
 package org.zaploink.pmd.rules.intref.config;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.text.MessageFormat;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.zaploink.pmd.rules.ZaploinkPMD;
 import org.zaploink.pmd.rules.intref.ReferenceToInternal;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonParseException;
 
 /**
@@ -27,6 +27,9 @@ import com.google.gson.JsonParseException;
  * <p>
  * The {@link DefaultStrategy} first tries to read a system property then a global configuration file placed in
  * <code>$USER_HOME</code> .
+ * <p>
+ * A strategy may also assign config files to source files (e.g. per Eclipse project), see
+ * {@link RuleConfigReaderStrategy#getConfigFile(File)}.
  *
  * @author kvg
  *
@@ -34,6 +37,8 @@ import com.google.gson.JsonParseException;
 public class RuleConfigReader {
 	public static final DefaultStrategy DEFAULT_STRATEGY = new DefaultStrategy();
 
+	private static final AtomicLong INVALIDATIONS = new AtomicLong();
+
 	private static RuleConfigReaderStrategy strategy = DEFAULT_STRATEGY;
 
 	public static void setStrategy(RuleConfigReaderStrategy newStrategy) {
@@ -51,8 +56,56 @@ public class RuleConfigReader {
 		return strategy.readConfig();
 	}
 
+	/**
+	 * @return the config file that would be read by {@link #readConfig()} (used to detect config changes),
+	 *         <code>null</code> if unknown
+	 */
+	public static Path getConfigFile() {
+		return strategy.getConfigFile();
+	}
+
+	/**
+	 * @return the config file of the given source file if the installed strategy assigns one, <code>null</code> if the
+	 *         config of {@link #readConfig()} applies
+	 */
+	public static Path getConfigFile(File sourceFile) {
+		return strategy.getConfigFile(sourceFile);
+	}
+
+	/**
+	 * Signals that config files or their assignment to source files may have changed (e.g. on a resource change event
+	 * in Eclipse). The config files of source files are only checked for changes at the start of a PMD run or after
+	 * this call.
+	 */
+	public static void invalidate() {
+		INVALIDATIONS.incrementAndGet();
+	}
+
+	/**
+	 * @return number of {@link #invalidate()} calls so far
+	 */
+	public static long getInvalidationCount() {
+		return INVALIDATIONS.get();
+	}
+
 	public static interface RuleConfigReaderStrategy {
 		public RuleConfigData readConfig() throws RuleConfigReaderException;
+
+		/**
+		 * @return the config file that is read by {@link #readConfig()}, <code>null</code> if unknown or not read from
+		 *         a file
+		 */
+		public default Path getConfigFile() {
+			return null;
+		}
+
+		/**
+		 * @return the config file of the given source file if it has its own (e.g. the one of its project),
+		 *         <code>null</code> if the config of {@link #readConfig()} applies
+		 */
+		public default Path getConfigFile(File sourceFile) {
+			return null;
+		}
 	}
 
 	public static class DefaultStrategy implements RuleConfigReaderStrategy {
@@ -61,30 +114,34 @@ public class RuleConfigReader {
 		private static final String RULE_NAME = ReferenceToInternal.class.getSimpleName();
 		private static final String CONFIG_PROP = "org.zaploink.pmd.intref.configFile";
 		private static final String CONFIG_FILE = "ReferenceToInternal.ruleConfig";
-		private static final Gson GSON = new Gson();
 
 		private DefaultStrategy() {
 		}
 
 		@Override
 		public RuleConfigData readConfig() throws RuleConfigReaderException {
-			Path configFile = readConfigFileFromSystemProperty();
+			Path configFile = getConfigFile();
 			if (configFile == null) {
-				configFile = readConfigFileFromUserHome();
+				throw RuleConfigReaderException.missingConfig(CONFIG_PROP, CONFIG_FILE);
 			}
 			if (!Files.exists(configFile)) {
-				throw new RuntimeException("Missing rule config file: " + configFile);
+				throw RuleConfigReaderException.missingConfig(configFile);
 			}
 
 			return readConfig(configFile);
 		}
 
+		@Override
+		public Path getConfigFile() {
+			Path configFile = readConfigFileFromSystemProperty();
+			return (configFile == null) ? readConfigFileFromUserHome() : configFile;
+		}
+
 		private Path readConfigFileFromSystemProperty() {
 			String filePath = System.getProperty(CONFIG_PROP);
 			if (filePath == null) {
-				String msg = MessageFormat.format("{0} config system property not defined: {1}", RULE_NAME,
-						CONFIG_PROP);
-				LOGGER.log(Level.FINE, msg);
+				LOGGER.log(Level.FINE, "{0} config system property not defined: {1}",
+						new Object[] { RULE_NAME, CONFIG_PROP });
 				return null;
 			}
 			return Paths.get(filePath);
@@ -94,12 +151,11 @@ public class RuleConfigReader {
 			String userHome = System.getProperty("user.home");
 			Path filePath = Paths.get(userHome, ZaploinkPMD.ZAPLOINK_CONFIG_DIR, CONFIG_FILE);
 			if (!Files.exists(filePath)) {
-				String msg = MessageFormat.format("{0} config file not found in $USER_HOME: {1}", RULE_NAME, filePath);
-				LOGGER.log(Level.INFO, msg);
+				LOGGER.log(Level.INFO, "{0} config file not found in $USER_HOME: {1}",
+						new Object[] { RULE_NAME, filePath });
 				return null;
 			}
-			String msg = MessageFormat.format("{0} config file found in $USER_HOME: {1}", RULE_NAME, filePath);
-			LOGGER.log(Level.FINE, msg);
+			LOGGER.log(Level.FINE, "{0} config file found in $USER_HOME: {1}", new Object[] { RULE_NAME, filePath });
 			return filePath;
 		}
 
@@ -118,12 +174,11 @@ public class RuleConfigReader {
 
 		public RuleConfigData readConfig(Reader reader) throws RuleConfigReaderException {
 			try {
-				return GSON.fromJson(reader, RuleConfigData.class);
+				return Json.GSON.fromJson(reader, RuleConfigData.class);
 			}
 			catch (JsonParseException ex) {
 				throw RuleConfigReaderException.invalidConfig(ex);
 			}
 		}
-
 	}
 }
\ No newline at end of file
@@ -16,6 +16,16 @@ public class RuleConfigReaderException extends IOException {
 		return new RuleConfigReaderException("Empty rule config file: " + file, null);
 	}
 
+	public static RuleConfigReaderException missingConfig(Path file) {
+		return new RuleConfigReaderException("Missing rule config file: " + file, null);
+	}
+
+	public static RuleConfigReaderException missingConfig(String systemProperty, String fileName) {
+		String msg = String.format("No rule config found (neither system property %s nor $USER_HOME file %s)",
+				systemProperty, fileName);
+		return new RuleConfigReaderException(msg, null);
+	}
+
 	public static RuleConfigReaderException invalidConfig(JsonParseException cause) {
 		return new RuleConfigReaderException("Invalid JSON (not a valid rule config)", cause);
 	}
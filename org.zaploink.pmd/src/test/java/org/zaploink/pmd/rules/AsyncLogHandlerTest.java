@@ -0,0 +1,118 @@
+package org.zaploink.pmd.rules;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.Test;
+
+public class AsyncLogHandlerTest {
+
+	@Test
+	public void close_writesAllQueuedRecordsInOrder() throws InterruptedException {
+		CollectingHandler target = new CollectingHandler(null);
+		AsyncLogHandler handler = new AsyncLogHandler(target, 1000);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			String thread = "t" + t;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 100; i++) {
+					handler.publish(new LogRecord(Level.INFO, thread + ":" + i));
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		handler.close();
+
+		assertThat(target.messages.size(), is(400));
+		for (int t = 0; t < threads.length; t++) {
+			int last = -1;
+			for (String message : target.messages) {
+				if (message.startsWith("t" + t + ":")) {
+					int i = Integer.parseInt(message.substring(message.indexOf(':') + 1));
+					assertThat(i, is(last + 1));
+					last = i;
+				}
+			}
+		}
+		assertThat(target.closed, is(true));
+	}
+
+	@Test
+	public void publish_fullQueue_dropsRecordsWithoutBlocking() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		CollectingHandler target = new CollectingHandler(release);
+		AsyncLogHandler handler = new AsyncLogHandler(target, 2);
+		handler.publish(new LogRecord(Level.INFO, "blocks the writer"));
+		while (target.messages.isEmpty()) {
+			Thread.sleep(1);
+		}
+		for (int i = 0; i < 5; i++) {
+			handler.publish(new LogRecord(Level.INFO, "queued " + i));
+		}
+		assertThat(handler.getDroppedCount(), is(3L));
+
+		release.countDown();
+		handler.close();
+		assertThat(target.messages.subList(1, target.messages.size()),
+				is(Arrays.asList("queued 0", "queued 1", "Log queue full, dropped {0} log records")));
+	}
+
+	@Test
+	public void publish_belowLevel_isIgnored() {
+		CollectingHandler target = new CollectingHandler(null);
+		target.setLevel(Level.INFO);
+		AsyncLogHandler handler = new AsyncLogHandler(target, 10);
+		handler.publish(new LogRecord(Level.FINE, "debug"));
+		handler.publish(new LogRecord(Level.INFO, "info"));
+		handler.close();
+
+		assertThat(target.messages, is(Collections.singletonList("info")));
+	}
+
+	/**
+	 * Records the messages; the first record blocks until released (if a latch is given).
+	 */
+	private static final class CollectingHandler extends Handler {
+		private final CountDownLatch release;
+		private final List<String> messages = Collections.synchronizedList(new ArrayList<>());
+		private volatile boolean closed;
+
+		CollectingHandler(CountDownLatch release) {
+			this.release = release;
+		}
+
+		@Override
+		public void publish(LogRecord record) {
+			this.messages.add(record.getMessage());
+			if (this.release != null && this.messages.size() == 1) {
+				try {
+					this.release.await();
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+			this.closed = true;
+		}
+	}
+}
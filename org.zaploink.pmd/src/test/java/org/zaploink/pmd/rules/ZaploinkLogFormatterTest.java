@@ -0,0 +1,36 @@
+package org.zaploink.pmd.rules;
+
+import static org.hamcrest.CoreMatchers.endsWith;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.Test;
+import org.zaploink.pmd.rules.ZaploinkPMD.ZaploinkLogFormatter;
+
+public class ZaploinkLogFormatterTest {
+	private final ZaploinkLogFormatter formatter = new ZaploinkLogFormatter();
+
+	@Test
+	public void format_withParameters_formatsMessage() {
+		LogRecord record = new LogRecord(Level.INFO, "Loaded ''{0}''");
+		record.setParameters(new Object[] { "rules.json" });
+
+		assertThat(this.formatter.format(record), endsWith("] Loaded 'rules.json'\n"));
+	}
+
+	@Test
+	public void format_withoutParameters_unescapesQuotes() {
+		LogRecord record = new LogRecord(Level.INFO, "Could not load ''rules.json''");
+
+		assertThat(this.formatter.format(record), endsWith("] Could not load 'rules.json'\n"));
+	}
+
+	@Test
+	public void format_plainMessage_isUnchanged() {
+		LogRecord record = new LogRecord(Level.INFO, "Loaded 12 domains");
+
+		assertThat(this.formatter.format(record), endsWith("] Loaded 12 domains\n"));
+	}
+}
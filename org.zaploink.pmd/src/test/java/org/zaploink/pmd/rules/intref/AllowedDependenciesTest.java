@@ -0,0 +1,52 @@
+package org.zaploink.pmd.rules.intref;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class AllowedDependenciesTest {
+
+	@Test
+	public void allows_onlyDeclaredDirections() {
+		DomainIds ids = new DomainIds();
+		int other = ids.idOf("other"); // declared before, not part of the matrix
+		Map<String, List<String>> declared = new LinkedHashMap<>();
+		declared.put("billing", Arrays.asList("payments", "accounts"));
+		declared.put("payments", Collections.singletonList("accounts"));
+		AllowedDependencies allowed = new AllowedDependencies(declared, ids);
+
+		int billing = ids.idOf("billing");
+		int payments = ids.idOf("payments");
+		int accounts = ids.idOf("accounts");
+		assertThat(allowed.allows(billing, payments), is(true));
+		assertThat(allowed.allows(billing, accounts), is(true));
+		assertThat(allowed.allows(payments, accounts), is(true));
+		assertThat(allowed.allows(payments, billing), is(false));
+		assertThat(allowed.allows(accounts, accounts), is(false)); // same domain is checked by ResolvedDomain
+		assertThat(allowed.allows(billing, other), is(false));
+		assertThat(allowed.allows(ids.idOf("recognized later"), accounts), is(false));
+		assertThat(allowed.allows(-1, accounts), is(false));
+	}
+
+	@Test
+	public void allows_withManyDomains() {
+		DomainIds ids = new DomainIds();
+		Map<String, List<String>> declared = new LinkedHashMap<>();
+		for (int i = 0; i < 300; i++) {
+			declared.put("d" + i, Collections.singletonList("d" + ((i + 1) % 300)));
+		}
+		AllowedDependencies allowed = new AllowedDependencies(declared, ids);
+
+		for (int i = 0; i < 300; i++) {
+			assertThat(allowed.allows(ids.idOf("d" + i), ids.idOf("d" + ((i + 1) % 300))), is(true));
+			assertThat(allowed.allows(ids.idOf("d" + ((i + 1) % 300)), ids.idOf("d" + i)), is(false));
+		}
+	}
+}
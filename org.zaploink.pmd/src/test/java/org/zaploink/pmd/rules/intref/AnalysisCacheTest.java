@@ -0,0 +1,200 @@
+package org.zaploink.pmd.rules.intref;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.RuleViolation;
+
+public class AnalysisCacheTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private DomainResolver dr;
+	private Path cacheDir;
+	private File source;
+
+	@Before
+	public void setUp() throws IOException {
+		this.dr = RuleRunner.acmeResolver();
+		this.cacheDir = this.tmp.newFolder("cache").toPath();
+		this.source = this.tmp.newFile("Client.java");
+		write(this.source, "package com.acme.client;\n\n"
+				+ "import java.util.List;\n"
+				+ "import com.acme.foo.Foo;\n"
+				+ "import com.acme.foo.internal.FooImpl;\n"
+				+ "import com.acme.bar.internal.BarImpl;\n\n"
+				+ "public class Client {\n}\n");
+	}
+
+	@Test
+	public void reportCachedResult_unchangedFile_reportsViolationsOfPreviousRun() throws IOException {
+		List<String> violations = apply(AnalysisCache.open(this.cacheDir, this.dr.getConfigFingerprint()));
+		assertThat(violations, is(Arrays.asList(
+				"Client.java:5: Reference to internal class of module 'foo': com.acme.foo.internal.FooImpl",
+				"Client.java:6: Reference to internal class of module 'bar': com.acme.bar.internal.BarImpl")));
+
+		// next run (new JVM): use cache from disk only
+		AnalysisCache cache = AnalysisCache.load(this.cacheDir, this.dr.getConfigFingerprint());
+		assertThat(cache.size(), is(1));
+		assertThat(reportCachedResult(cache), is(violations));
+	}
+
+	@Test
+	public void reportCachedResult_changedFile_isNotReported() throws IOException {
+		apply(AnalysisCache.open(this.cacheDir, this.dr.getConfigFingerprint()));
+		write(this.source, "package com.acme.client;\n\n"
+				+ "import com.acme.foo.internal.FooImpl;\n\n"
+				+ "public class Client {\n}\n");
+
+		assertThat(reportCachedResult(AnalysisCache.open(this.cacheDir, this.dr.getConfigFingerprint())),
+				is(nullValue()));
+	}
+
+	@Test
+	public void reportCachedResult_unchangedFile_reportsViolationsOfQualifiedNames() throws IOException {
+		write(this.source, "package com.acme.client;\n\n"
+				+ "public class Client {\n"
+				+ "\tprivate com.acme.foo.internal.FooImpl foo = com.acme.foo.internal.FooImpl.create();\n"
+				+ "}\n");
+		List<String> violations = apply(AnalysisCache.open(this.cacheDir, this.dr.getConfigFingerprint()));
+		assertThat(violations.size(), is(2));
+
+		assertThat(reportCachedResult(AnalysisCache.open(this.cacheDir, this.dr.getConfigFingerprint())),
+				is(violations));
+	}
+
+	@Test
+	public void apply_cachedFile_isAnalyzedAgain() throws IOException {
+		AnalysisCache cache = AnalysisCache.open(this.cacheDir, this.dr.getConfigFingerprint());
+		apply(cache);
+		// same modification time and size: only a PMD run sees the change, it does not read the cache
+		FileTime lastModified = Files.getLastModifiedTime(this.source.toPath());
+		String source = new String(Files.readAllBytes(this.source.toPath()), StandardCharsets.UTF_8);
+		write(this.source, source.replace("FooImpl", "FooBase"));
+		Files.setLastModifiedTime(this.source.toPath(), lastModified);
+
+		assertThat(apply(cache), is(Arrays.asList(
+				"Client.java:5: Reference to internal class of module 'foo': com.acme.foo.internal.FooBase",
+				"Client.java:6: Reference to internal class of module 'bar': com.acme.bar.internal.BarImpl")));
+	}
+
+	@Test
+	public void apply_fileModifiedJustNow_isNotCached() throws IOException {
+		AnalysisCache cache = AnalysisCache.open(this.cacheDir, this.dr.getConfigFingerprint());
+		Files.setLastModifiedTime(this.source.toPath(), FileTime.fromMillis(System.currentTimeMillis()));
+
+		assertThat(apply(cache).size(), is(2));
+		assertThat(cache.size(), is(0));
+	}
+
+	@Test
+	public void save_deletedFile_dropsItsResult() throws IOException {
+		apply(AnalysisCache.open(this.cacheDir, this.dr.getConfigFingerprint()));
+		Files.delete(this.source.toPath());
+
+		AnalysisCache.open(this.cacheDir, this.dr.getConfigFingerprint()).save();
+		assertThat(AnalysisCache.load(this.cacheDir, this.dr.getConfigFingerprint()).size(), is(0));
+	}
+
+	@Test
+	public void open_sameConfig_sharesCache() {
+		AnalysisCache cache = AnalysisCache.open(this.cacheDir, this.dr.getConfigFingerprint());
+		assertThat(AnalysisCache.open(this.cacheDir, this.dr.getConfigFingerprint()), is(sameInstance(cache)));
+	}
+
+	@Test
+	public void open_otherConfig_keepsCachesInUse() throws IOException {
+		AnalysisCache cache = AnalysisCache.open(this.cacheDir, this.dr.getConfigFingerprint());
+		apply(cache);
+		try (DirectoryStream<Path> cacheFiles = Files.newDirectoryStream(this.cacheDir, "ReferenceToInternal-*")) {
+			for (Path cacheFile : cacheFiles) {
+				setAge(cacheFile, 30);
+			}
+		}
+
+		assertThat(AnalysisCache.open(this.cacheDir, "other").size(), is(0));
+		assertThat(AnalysisCache.load(this.cacheDir, this.dr.getConfigFingerprint()).size(), is(1));
+	}
+
+	@Test
+	public void open_otherConfig_deletesOnlyCachesUnusedForAWhile() throws IOException {
+		Path recent = Files.createFile(this.cacheDir.resolve("ReferenceToInternal-recent.cache"));
+		Path unused = Files.createFile(this.cacheDir.resolve("ReferenceToInternal-unused.cache"));
+		setAge(recent, 1);
+		setAge(unused, 30);
+
+		AnalysisCache.open(this.cacheDir, "other");
+		assertThat(Files.exists(recent), is(true));
+		assertThat(Files.exists(unused), is(false));
+	}
+
+	private List<String> apply(AnalysisCache cache) throws IOException {
+		return RuleRunner.apply(newRule(cache), this.source);
+	}
+
+	/**
+	 * Reports the cached result of the source file without parsing it, like the standalone analyzer does.
+	 *
+	 * @return the reported violations, <code>null</code> if there is no cached result
+	 */
+	private List<String> reportCachedResult(AnalysisCache cache) {
+		RuleContext ctx = new RuleContext();
+		ctx.setReport(new Report());
+		ctx.setSourceCodeFilename(this.source.getName());
+		ctx.setSourceCodeFile(this.source);
+		if (!newRule(cache).reportCachedResult(ctx)) {
+			return null;
+		}
+		List<String> violations = new ArrayList<>();
+		for (Iterator<RuleViolation> it = ctx.getReport().iterator(); it.hasNext();) {
+			RuleViolation violation = it.next();
+			violations.add(String.format("%s:%d: %s", this.source.getName(), violation.getBeginLine(),
+					violation.getDescription()));
+		}
+		return violations;
+	}
+
+	private ReferenceToInternal newRule(AnalysisCache cache) {
+		ReferenceToInternal rule = new ReferenceToInternal(
+				new ReferenceToInternal.Dependencies(this.dr).analysisCache(cache));
+		rule.setMessage(RuleRunner.MESSAGE);
+		return rule;
+	}
+
+	private static void setAge(Path file, int days) throws IOException {
+		Files.setLastModifiedTime(file,
+				FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days)));
+	}
+
+	/**
+	 * Writes the given file as if it was written a minute ago, so its results are cached.
+	 */
+	private static void write(File file, String content) throws IOException {
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(file.toPath(),
+				FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(1)));
+	}
+}
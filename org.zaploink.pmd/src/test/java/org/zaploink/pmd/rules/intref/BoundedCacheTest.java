@@ -0,0 +1,90 @@
+package org.zaploink.pmd.rules.intref;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+public class BoundedCacheTest {
+
+	@Test
+	public void get_cachedKey_isHit() {
+		BoundedCache<String, String> cache = new BoundedCache<>(10, 16);
+
+		assertThat(cache.get("a"), is(nullValue()));
+		cache.put("a", "A");
+		assertThat(cache.get("a"), is("A"));
+
+		assertThat(cache.getHitCount(), is(1L));
+		assertThat(cache.getMissCount(), is(1L));
+	}
+
+	@Test
+	public void get_otherVariant_isMissAndReplaced() {
+		BoundedCache<String, String> cache = new BoundedCache<>(10, 16);
+		cache.put("a.b.C", 3, "package a.b");
+
+		assertThat(cache.get("a.b.C", 1), is(nullValue()));
+		cache.put("a.b.C", 1, "package a");
+
+		assertThat(cache.get("a.b.C", 1), is("package a"));
+		assertThat(cache.get("a.b.C", 3), is(nullValue()));
+		assertThat(cache.size(), is(1));
+	}
+
+	@Test
+	public void put_fullCache_evictsAnEntry() {
+		BoundedCache<Integer, Integer> cache = new BoundedCache<>(3, 16);
+
+		for (int i = 0; i < 10; i++) {
+			cache.put(i, i);
+		}
+
+		assertThat(cache.size(), is(3));
+		assertThat(cache.getEvictionCount(), is(7L));
+	}
+
+	@Test
+	public void put_concurrently_neverExceedsMaxSize() throws InterruptedException {
+		BoundedCache<Integer, Integer> cache = new BoundedCache<>(100, 16);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			int offset = t * 10_000;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 10_000; i++) {
+					cache.put(offset + i, i);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertThat(cache.size() <= 100, is(true));
+		assertThat(cache.size() + cache.getEvictionCount(), is(40_000L));
+	}
+
+	@Test
+	public void clear_removesAllEntries() {
+		BoundedCache<Integer, Integer> cache = new BoundedCache<>(3, 16);
+		cache.put(1, 1);
+		cache.put(2, 2);
+
+		cache.clear();
+
+		assertThat(cache.size(), is(0));
+		assertThat(cache.get(1), is(nullValue()));
+	}
+
+	@Test
+	public void put_disabledCache_cachesNothing() {
+		BoundedCache<Integer, Integer> cache = new BoundedCache<>(0, 16);
+
+		cache.put(1, 1);
+
+		assertThat(cache.size(), is(0));
+		assertThat(cache.get(1), is(nullValue()));
+	}
+}
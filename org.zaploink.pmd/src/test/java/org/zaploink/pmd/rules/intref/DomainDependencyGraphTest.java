@@ -0,0 +1,80 @@
+package org.zaploink.pmd.rules.intref;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.zaploink.pmd.rules.intref.DomainDependencyGraph.EdgeCount;
+import org.zaploink.pmd.rules.intref.DomainDependencyGraph.Format;
+import org.zaploink.pmd.rules.intref.DomainElement.Type;
+
+public class DomainDependencyGraphTest {
+
+	private DomainDependencyGraph graph;
+	private ReferenceToInternal rule;
+
+	@Before
+	public void setUp() throws IOException {
+		DomainResolver dr = RuleRunner.acmeResolver();
+		this.graph = new DomainDependencyGraph();
+		this.rule = new ReferenceToInternal(new ReferenceToInternal.Dependencies(dr).dependencyGraph(this.graph, null));
+		this.rule.setMessage(RuleRunner.MESSAGE);
+	}
+
+	@Test
+	public void apply_countsReferencesBetweenDomains() {
+		RuleRunner.apply(this.rule, "Foo.java", "package com.acme.foo;\n\n"
+				+ "import java.util.List;\n"
+				+ "import com.acme.foo.internal.FooImpl;\n"
+				+ "import com.acme.bar.Bar;\n"
+				+ "import com.acme.bar.internal.BarImpl;\n"
+				+ "import com.acme.baz.Baz;\n\n"
+				+ "public class Foo {\n}\n");
+
+		assertThat(edges(), is("[foo -> bar: 1/1, foo -> baz: 1/0]"));
+	}
+
+	@Test
+	public void start_clearsGraphOfPreviousRun() {
+		String source = "package com.acme.foo;\n\nimport com.acme.bar.Bar;\n\npublic class Foo {\n}\n";
+		RuleRunner.apply(this.rule, "Foo.java", source);
+		RuleRunner.apply(this.rule, "Foo.java", source);
+
+		assertThat(edges(), is("[foo -> bar: 1/0]"));
+	}
+
+	@Test
+	public void write_formats() throws IOException {
+		this.graph.addReference("foo", "bar", Type.PUBLIC);
+		this.graph.addReference("foo", "bar", Type.PRIVATE);
+		this.graph.addReference("bar", "foo", Type.PUBLIC);
+
+		assertThat(write(Format.CSV), is("from,to,public,private\nbar,foo,1,0\nfoo,bar,1,1\n"));
+		assertThat(write(Format.DOT), is("digraph domains {\n"
+				+ "\t\"bar\" -> \"foo\" [label=\"1/0\"];\n"
+				+ "\t\"foo\" -> \"bar\" [label=\"1/1\", color=red];\n"
+				+ "}\n"));
+		assertThat(write(Format.JSON).replaceAll("\\s", ""), is("[{\"from\":\"bar\",\"to\":\"foo\",\"public\":1,"
+				+ "\"private\":0},{\"from\":\"foo\",\"to\":\"bar\",\"public\":1,\"private\":1}]"));
+	}
+
+	private String edges() {
+		List<String> edges = new ArrayList<>();
+		for (EdgeCount edge : this.graph.getEdges()) {
+			edges.add(edge.toString());
+		}
+		return edges.toString();
+	}
+
+	private String write(Format format) throws IOException {
+		StringWriter out = new StringWriter();
+		this.graph.write(out, format);
+		return out.toString();
+	}
+}
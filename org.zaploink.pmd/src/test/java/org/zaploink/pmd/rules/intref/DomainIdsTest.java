@@ -0,0 +1,52 @@
+package org.zaploink.pmd.rules.intref;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class DomainIdsTest {
+
+	@Test
+	public void pathOf_subDomain_startsWithParentPath() {
+		DomainIds ids = new DomainIds();
+
+		int[] path = ids.pathOf("payments.refunds");
+
+		assertThat(path.length, is(2));
+		assertThat(path[0], is(ids.idOf("payments")));
+		assertThat(path[1], is(ids.idOf("payments.refunds")));
+		assertThat(ids.pathOf("payments.refunds"), is(sameInstance(path)));
+	}
+
+	@Test
+	public void retaining_keepsIdsOfDomainsAndTheirParents() {
+		DomainIds ids = new DomainIds();
+		ids.pathOf("billing");
+		int[] path = ids.pathOf("payments.refunds");
+
+		DomainIds retained = ids.retaining(Collections.singletonList("payments.refunds"));
+
+		assertThat(retained.size(), is(2));
+		assertThat(retained.pathOf("payments.refunds"), is(sameInstance(path)));
+		assertThat(retained.idOf("payments"), is(ids.idOf("payments")));
+	}
+
+	@Test
+	public void retaining_assignsFreedIdsAgain() {
+		DomainIds ids = new DomainIds();
+		int billing = ids.idOf("billing");
+		int payments = ids.idOf("payments");
+
+		DomainIds retained = ids.retaining(Collections.singletonList("payments"));
+		int accounts = retained.idOf("accounts");
+
+		assertThat(accounts, is(billing));
+		assertThat(accounts, is(not(payments)));
+		assertThat(retained.idOf("other"), is(2));
+	}
+}
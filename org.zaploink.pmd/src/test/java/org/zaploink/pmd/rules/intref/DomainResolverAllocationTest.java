@@ -0,0 +1,96 @@
+package org.zaploink.pmd.rules.intref;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.zaploink.pmd.rules.intref.config.RuleConfigData;
+import org.zaploink.pmd.rules.intref.config.RuleConfigReader;
+
+/**
+ * Measures the heap allocated by steady-state import checks (all imports have been resolved before).
+ */
+public class DomainResolverAllocationTest {
+
+	private static final String[] IMPORTS = { "java.util.List", "java.util.Map", "com.acme.service.foo.Foo",
+			"com.acme.service.foo.internal.FooImpl", "com.acme.storage.foo.data.Dat1", "com.acme.storage.db.FooDAO",
+			"com.acme.facade.import.FooImport", "com.other.Unrelated" };
+	private static final int ITERATIONS = 100_000;
+
+	private static DomainResolver dr;
+
+	@BeforeClass
+	public static void setUpOnce() throws IOException {
+		String resource = "ReferenceToInternal.testRuleConfig";
+		try (InputStream is = DomainResolverAllocationTest.class.getResourceAsStream(resource)) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(is, "UTF-8"));
+			RuleConfigData ruleConfig = RuleConfigReader.DEFAULT_STRATEGY.readConfig(reader);
+			dr = new DomainResolver(ruleConfig, 1000);
+		}
+	}
+
+	@Test
+	public void checkImports_steadyState_doesNotAllocate() {
+		ThreadAllocation allocation = ThreadAllocation.current();
+		assumeTrue("thread allocation measurement not supported", allocation != null);
+
+		ResolvedDomain thisClass = dr.resolveType("com.acme.service.bar", "Client");
+		int violations = checkImports(thisClass, ITERATIONS); // warm up
+		long before = allocation.allocatedBytes();
+		violations = checkImports(thisClass, ITERATIONS);
+		long allocated = allocation.allocatedBytes() - before;
+
+		assertThat(violations, is(3 * ITERATIONS));
+		// allow for some noise (e.g. the measurement itself), but not for a single byte per check
+		assertTrue("allocated bytes: " + allocated, allocated < ITERATIONS);
+	}
+
+	private static int checkImports(ResolvedDomain thisClass, int iterations) {
+		int violations = 0;
+		for (int i = 0; i < iterations; i++) {
+			for (String importedName : IMPORTS) {
+				if (dr.mightHaveDomain(importedName)) {
+					ResolvedDomain importDomain = dr.resolve(importedName, importedName.lastIndexOf('.'));
+					if (importDomain.hasDomain() && !dr.mayAccess(thisClass, importDomain)) {
+						violations++;
+					}
+				}
+			}
+		}
+		return violations;
+	}
+
+	private static final class ThreadAllocation {
+		private final com.sun.management.ThreadMXBean bean;
+
+		private ThreadAllocation(com.sun.management.ThreadMXBean bean) {
+			this.bean = bean;
+		}
+
+		static ThreadAllocation current() {
+			java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+				return null;
+			}
+			com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+			if (!sunBean.isThreadAllocatedMemorySupported()) {
+				return null;
+			}
+			sunBean.setThreadAllocatedMemoryEnabled(true);
+			return new ThreadAllocation(sunBean);
+		}
+
+		long allocatedBytes() {
+			return this.bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+	}
+}
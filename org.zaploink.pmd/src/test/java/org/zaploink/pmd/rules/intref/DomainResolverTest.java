@@ -86,6 +86,29 @@ public class DomainResolverTest {
 		assertThat(repr(dr.resolveDomainFor(className("com.acme.storage.db.BarDAO"))), is("?-public"));
 	}
 
+	@Test
+	public void resolveDomain_explicitPrivatePackages_matchWholeSegmentsOnly() {
+		assertThat(repr(dr.resolveDomainFor(className("com.acme.storage.foobar.Dat0"))), is("?-public"));
+		assertThat(repr(dr.resolveDomainFor(className("com.acme.storage.fo.Dat0"))), is("?-public"));
+		assertThat(repr(dr.resolveDomainFor(className("com.acme.storage.Dat0"))), is("?-public"));
+	}
+
+	@Test
+	public void resolveDomain_explicitPublicPackages_matchExactly() {
+		assertThat(repr(dr.resolveDomainFor(className("com.acme.service.bar.addon.Plug"))), is("bar-public"));
+		assertThat(repr(dr.resolveDomainFor(className("com.acme.service.bar.addon.sub.Plug"))), is("bar-private"));
+	}
+
+	@Test
+	public void mightHaveDomain_rejectsNamesOutsideAllDeclaredRootPackages() {
+		assertThat(dr.mightHaveDomain("java.util.List"), is(false));
+		assertThat(dr.mightHaveDomain("company.Foo"), is(false));
+		assertThat(dr.mightHaveDomain("Foo"), is(false));
+
+		assertThat(dr.mightHaveDomain("com.acme.service.foo.Foo"), is(true));
+		assertThat(dr.mightHaveDomain("com.other.Foo"), is(true)); // might, but is not
+	}
+
 	private String repr(DomainElement element) {
 		String domain = element.getDomain();
 		return String.format("%s-%s", domain == null ? "?" : domain, element.isPublic() ? "public" : "private");
@@ -0,0 +1,102 @@
+package org.zaploink.pmd.rules.intref;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HeaderScannerTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void header_emptiesTypeBodies() throws IOException {
+		String source = "package a;\n\nimport b.C;\n\n"
+				+ "@Names({ \"x\", \"{\" }) // {\n"
+				+ "/* { */ public class A extends C {\n"
+				+ "\tprivate String s = \"}\";\n"
+				+ "\tprivate char c = '{';\n"
+				+ "}\n"
+				+ "class B { int b() { return 0; } } enum E {\n"
+				+ "\tX { };\n"
+				+ "\t}\n";
+
+		assertThat(HeaderScanner.header(write(source.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8),
+				is("package a;\n\nimport b.C;\n\n"
+						+ "@Names({ \"x\", \"{\" }) // {\n"
+						+ "/* { */ public class A extends C {\n\n\n}\n"
+						+ "class B {                       } enum E {\n\n\t}\n"));
+	}
+
+	@Test
+	public void header_ofLargeFile_emptiesTypeBodies() throws IOException {
+		StringBuilder source = new StringBuilder("package a;\n\n");
+		for (int i = 0; i < 2000; i++) {
+			source.append("import b.C").append(i).append(";\n");
+		}
+		StringBuilder header = new StringBuilder(source.append("class A {"));
+		for (int i = 0; i < 2000; i++) {
+			source.append("\tint f").append(i).append(";\n");
+			header.append('\n');
+		}
+		source.append("}\n");
+		header.append("}\n");
+
+		assertThat(HeaderScanner.header(write(source.toString().getBytes(StandardCharsets.UTF_8)),
+				StandardCharsets.UTF_8), is(header.toString()));
+	}
+
+	@Test
+	public void header_unbalancedBraces_isNull() throws IOException {
+		String source = "package a;\n\nclass A {\n\tvoid run() {\n}\n";
+
+		assertThat(HeaderScanner.header(write(source.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8),
+				is(nullValue()));
+	}
+
+	@Test
+	public void header_withoutTypes_isNull() throws IOException {
+		String source = "/** doc */\n@Deprecated\npackage a;\n";
+
+		assertThat(HeaderScanner.header(write(source.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8),
+				is(nullValue()));
+	}
+
+	@Test(expected = CharacterCodingException.class)
+	public void header_malformedInput_fails() throws IOException {
+		ByteArrayOutputStream source = new ByteArrayOutputStream();
+		source.write("package a;\n// caf".getBytes(StandardCharsets.UTF_8));
+		source.write(0xE9); // ISO-8859-1, not UTF-8
+		source.write("\nclass A {\n}\n".getBytes(StandardCharsets.UTF_8));
+
+		HeaderScanner.header(write(source.toByteArray()), StandardCharsets.UTF_8);
+	}
+
+	@Test(expected = CharacterCodingException.class)
+	public void header_malformedInputInTypeBody_fails() throws IOException {
+		// like the full parse, the type bodies are decoded to find further top level types
+		ByteArrayOutputStream source = new ByteArrayOutputStream();
+		source.write("package a;\nclass A {\n\t// caf".getBytes(StandardCharsets.UTF_8));
+		source.write(0xE9); // ISO-8859-1, not UTF-8
+		source.write("\n}\n".getBytes(StandardCharsets.UTF_8));
+
+		HeaderScanner.header(write(source.toByteArray()), StandardCharsets.UTF_8);
+	}
+
+	private Path write(byte[] source) throws IOException {
+		Path file = this.tmp.newFile("A.java").toPath();
+		Files.write(file, source);
+		return file;
+	}
+}
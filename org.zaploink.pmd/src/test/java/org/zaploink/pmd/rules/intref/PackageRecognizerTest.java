@@ -0,0 +1,52 @@
+package org.zaploink.pmd.rules.intref;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.zaploink.pmd.rules.intref.DomainElement.Type;
+
+public class PackageRecognizerTest {
+
+	@Test
+	public void literalPrefix_stopsAtFirstMetaCharacter() {
+		assertThat(PackageRecognizer.literalPrefix("com\\.acme\\.service\\.([^\\.]+)"), is("com.acme.service."));
+		assertThat(PackageRecognizer.literalPrefix("^com\\.acme\\.([^\\.]+)$"), is("com.acme."));
+		assertThat(PackageRecognizer.literalPrefix("com\\.example[0-9]\\.service"), is("com.example"));
+		assertThat(PackageRecognizer.literalPrefix("com\\.legacy\\.priv.([^\\.]+)"), is("com.legacy.priv"));
+	}
+
+	@Test
+	public void literalPrefix_optionalCharacterOrAlternation_isNotPartOfPrefix() {
+		assertThat(PackageRecognizer.literalPrefix("com\\.acmes?\\.(.+)"), is("com.acme"));
+		assertThat(PackageRecognizer.literalPrefix("com\\.acme\\.(x)|org\\.acme\\.(y)"), is(""));
+		assertThat(PackageRecognizer.literalPrefix("com\\.a(?:b|c)\\.(.+)"), is("com.a"));
+		assertThat(PackageRecognizer.literalPrefix("(?i)com\\.acme\\.(.+)"), is(""));
+		assertThat(PackageRecognizer.literalPrefix("\\Qcom.acme\\E\\.(.+)"), is(""));
+	}
+
+	@Test
+	public void recognize_firstMatchingPatternWins() {
+		PackageRecognizer rec = new PackageRecognizer(
+				Arrays.asList("com\\.acme\\.([^\\.]+)\\..*", "com\\.acme\\.service\\.([^\\.]+)\\..*", "(.+)\\.impl"),
+				Type.PRIVATE, new DomainIds());
+
+		assertThat(rec.recognize("com.acme.service.foo.internal").getDomain(), is("service"));
+		assertThat(rec.recognize("org.other.impl").getDomain(), is("org.other"));
+		assertThat(rec.recognize("org.other.api"), is(nullValue()));
+	}
+
+	@Test
+	public void recognize_matchWithoutCapturedDomain_hasNoDomain() {
+		PackageRecognizer rec = new PackageRecognizer(Arrays.asList("com\\.acme(?:\\.([^.]+))?", "com\\.(.+)"),
+				Type.PUBLIC, new DomainIds());
+
+		assertThat(rec.recognize("com.acme.foo").getDomain(), is("foo"));
+		assertThat(rec.recognize("com.acme"), is(sameInstance(ResolvedDomain.NONE)));
+		assertThat(rec.recognize("com.acme").hasDomain(), is(false));
+	}
+}
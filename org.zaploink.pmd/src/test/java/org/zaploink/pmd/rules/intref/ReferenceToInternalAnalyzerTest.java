@@ -0,0 +1,255 @@
+package org.zaploink.pmd.rules.intref;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.zaploink.pmd.rules.intref.ReferenceToInternalAnalyzer.Options;
+
+public class ReferenceToInternalAnalyzerTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private ReferenceToInternal rule;
+	private Path sourceRoot;
+	private Path reportFile;
+
+	@Before
+	public void setUp() throws IOException {
+		DomainResolver dr = RuleRunner.acmeResolver();
+		this.rule = RuleRunner.referenceToInternal(dr);
+		this.rule.setRuleSetName("test"); // set by PMD when loaded from a rule set, needed for XML reports
+		this.sourceRoot = this.tmp.newFolder("src").toPath();
+		this.reportFile = this.tmp.getRoot().toPath().resolve("report.txt");
+	}
+
+	@Test
+	public void analyze_reportsViolationsOfAllFiles() throws IOException {
+		Path client = write("com/acme/client/Client.java", "package com.acme.client;\n\n"
+				+ "import com.acme.foo.internal.Item;\n\n"
+				+ "public class Client {\n}\n");
+		Path other = write("com/acme/client/sub/Other.java", "package com.acme.client.sub;\n\n"
+				+ "public class Other extends com.acme.bar.internal.Base {\n}\n");
+		write("com/acme/foo/Foo.java", "package com.acme.foo;\n\n"
+				+ "import com.acme.foo.internal.Item;\n\n"
+				+ "public class Foo {\n}\n");
+
+		int exitCode = analyze("-threads", "4");
+
+		assertThat(exitCode, is(ReferenceToInternalAnalyzer.EXIT_VIOLATIONS));
+		assertThat(report(), is(Arrays.asList(
+				client + ":3:\tReference to internal class of module 'foo': com.acme.foo.internal.Item",
+				other + ":3:\tReference to internal class of module 'bar': com.acme.bar.internal.Base")));
+	}
+
+	@Test
+	public void analyze_withoutViolations_exitsWithZero() throws IOException {
+		write("com/acme/foo/Foo.java", "package com.acme.foo;\n\npublic class Foo {\n}\n");
+
+		assertThat(analyze(), is(ReferenceToInternalAnalyzer.EXIT_OK));
+		assertThat(report().isEmpty(), is(true));
+	}
+
+	@Test
+	public void analyze_unparsableFile_exitsWithError() throws IOException {
+		write("com/acme/client/Client.java", "package com.acme.client;\n\n"
+				+ "import com.acme.foo.internal.Item;\n\n"
+				+ "public class Client {\n}\n");
+		Path broken = write("com/acme/client/Broken.java", "package com.acme.client;\n\npublic class Broken {\n");
+
+		assertThat(analyze(), is(ReferenceToInternalAnalyzer.EXIT_ERROR));
+		assertThat(String.join("\n", report()), containsString(broken.toString()));
+	}
+
+	@Test
+	public void analyze_xmlReport() throws IOException {
+		write("com/acme/client/Client.java", "package com.acme.client;\n\n"
+				+ "import com.acme.foo.internal.Item;\n\n"
+				+ "public class Client {\n}\n");
+
+		analyze("-f", "xml");
+
+		String xml = new String(Files.readAllBytes(this.reportFile), StandardCharsets.UTF_8);
+		assertThat(xml, containsString("<violation beginline=\"3\""));
+		assertThat(xml, containsString("Reference to internal class of module 'foo': com.acme.foo.internal.Item"));
+	}
+
+	@Test
+	public void analyze_headerMode_checksImportsAndTypeDeclarations() throws IOException {
+		Path client = write("com/acme/client/Client.java", "package com.acme.client;\n\n"
+				+ "import com.acme.foo.internal.Item;\n\n"
+				+ "public class Client extends com.acme.bar.internal.Base {\n"
+				+ "\tprivate com.acme.baz.internal.Other other;\n"
+				+ "}\n"
+				+ "class Helper implements com.acme.qux.internal.Task {\n"
+				+ "}\n");
+		// parsed completely, the on-demand import is checked where it is used
+		Path user = write("com/acme/client/User.java", "package com.acme.client;\n\n"
+				+ "import com.acme.foo.internal.*;\n\n"
+				+ "public class User {\n"
+				+ "\tprivate Item item;\n"
+				+ "}\n");
+
+		assertThat(analyze("-mode", "header"), is(ReferenceToInternalAnalyzer.EXIT_VIOLATIONS));
+		assertThat(report(), is(Arrays.asList(
+				client + ":3:\tReference to internal class of module 'foo': com.acme.foo.internal.Item",
+				client + ":5:\tReference to internal class of module 'bar': com.acme.bar.internal.Base",
+				client + ":8:\tReference to internal class of module 'qux': com.acme.qux.internal.Task",
+				user + ":3:\tReference to internal class of module 'foo': com.acme.foo.internal")));
+	}
+
+	@Test
+	public void analyze_headerModeThenFullMode_doNotShareCachedResults() throws IOException {
+		Path cacheDir = this.tmp.newFolder("cache").toPath();
+		Path client = write("com/acme/client/Client.java", "package com.acme.client;\n\n"
+				+ "import com.acme.foo.internal.Item;\n\n"
+				+ "public class Client {\n"
+				+ "\tprivate com.acme.bar.internal.Other other;\n"
+				+ "}\n");
+		// old enough for its results to be cached
+		Files.setLastModifiedTime(client, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+		List<String> headerViolations = Arrays.asList(
+				client + ":3:\tReference to internal class of module 'foo': com.acme.foo.internal.Item");
+		List<String> allViolations = Arrays.asList(
+				client + ":3:\tReference to internal class of module 'foo': com.acme.foo.internal.Item",
+				client + ":6:\tReference to internal class of module 'bar': com.acme.bar.internal.Other");
+
+		useAnalysisCache(cacheDir);
+		analyze("-mode", "header");
+		assertThat(report(), is(headerViolations));
+
+		useAnalysisCache(cacheDir);
+		analyze();
+		assertThat(report(), is(allViolations));
+
+		useAnalysisCache(cacheDir);
+		analyze("-mode", "header");
+		assertThat(report(), is(headerViolations));
+
+		useAnalysisCache(cacheDir);
+		analyze();
+		assertThat(report(), is(allViolations));
+	}
+
+	@Test
+	public void analyze_unchangedFile_reportsCachedViolationsWithoutParsing() throws IOException {
+		Path cacheDir = this.tmp.newFolder("cache").toPath();
+		String source = "package com.acme.client;\n\n"
+				+ "import com.acme.foo.internal.Item;\n\n"
+				+ "public class Client {\n"
+				+ "\tvoid run() {\n"
+				+ "\t\tnew com.acme.bar.internal.Other();\n"
+				+ "\t}\n"
+				+ "}\n";
+		Path client = write("com/acme/client/Client.java", source);
+		FileTime lastModified = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+		Files.setLastModifiedTime(client, lastModified);
+		useAnalysisCache(cacheDir);
+		analyze("-f", "xml");
+		String xml = xmlReport();
+		assertThat(xml, containsString("method=\"run\""));
+
+		// same modification time and size, but no longer parsable: the cached result is reported
+		write("com/acme/client/Client.java", source.replace('{', '#'));
+		Files.setLastModifiedTime(client, lastModified);
+		useAnalysisCache(cacheDir);
+		assertThat(analyze("-f", "xml"), is(ReferenceToInternalAnalyzer.EXIT_VIOLATIONS));
+		assertThat(xmlReport(), is(xml));
+	}
+
+	@Test
+	public void analyze_siblingAddedToPackage_bindsNameAgain() throws IOException {
+		Path cacheDir = this.tmp.newFolder("cache").toPath();
+		Path user = write("com/acme/client/User.java", "package com.acme.client;\n\n"
+				+ "import com.acme.foo.internal.*;\n\n"
+				+ "public class User {\n"
+				+ "\tprivate Item item;\n"
+				+ "}\n");
+		// old enough for its results to be cached
+		Files.setLastModifiedTime(user, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+		useAnalysisCache(cacheDir);
+		analyze();
+		assertThat(report(), is(Arrays.asList(
+				user + ":3:\tReference to internal class of module 'foo': com.acme.foo.internal")));
+
+		// the unchanged file now refers to a type of its own package
+		write("com/acme/client/Item.java", "package com.acme.client;\n\npublic class Item {\n}\n");
+		useAnalysisCache(cacheDir);
+		assertThat(analyze(), is(ReferenceToInternalAnalyzer.EXIT_OK));
+		assertThat(report().isEmpty(), is(true));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void parseOptions_withoutSourceRoot_fails() {
+		Options.parse(new String[] { "-f", "xml" });
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void parseOptions_unknownFormat_fails() {
+		Options.parse(new String[] { "-d", this.sourceRoot.toString(), "-f", "no-such-format" });
+	}
+
+	@Test
+	public void run_unknownFormat_exitsWithErrorBeforeAnalysis() throws IOException {
+		write("com/acme/foo/Foo.java", "package com.acme.foo;\n\npublic class Foo {\n}\n");
+
+		int exitCode = ReferenceToInternalAnalyzer.run(new String[] { "-d", this.sourceRoot.toString(), "-f",
+				"no-such-format", "-r", this.reportFile.toString() });
+
+		assertThat(exitCode, is(ReferenceToInternalAnalyzer.EXIT_ERROR));
+		assertThat(Files.exists(this.reportFile), is(false));
+	}
+
+	/**
+	 * Uses a new rule instance (as a new PMD run would) with the analysis cache of the given directory.
+	 */
+	private void useAnalysisCache(Path cacheDir) throws IOException {
+		DomainResolver dr = RuleRunner.acmeResolver();
+		this.rule = new ReferenceToInternal(
+				new ReferenceToInternal.Dependencies(dr).analysisCache(AnalysisCache.open(cacheDir, dr.getConfigFingerprint())));
+		this.rule.setMessage(RuleRunner.MESSAGE);
+		this.rule.setRuleSetName("test");
+	}
+
+	private Path write(String relativePath, String source) throws IOException {
+		Path file = this.sourceRoot.resolve(relativePath);
+		Files.createDirectories(file.getParent());
+		Files.write(file, source.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	private int analyze(String... args) throws IOException {
+		String[] allArgs = new String[args.length + 4];
+		allArgs[0] = "-d";
+		allArgs[1] = this.sourceRoot.toString();
+		allArgs[2] = "-r";
+		allArgs[3] = this.reportFile.toString();
+		System.arraycopy(args, 0, allArgs, 4, args.length);
+		return new ReferenceToInternalAnalyzer(this.rule, Options.parse(allArgs)).analyze();
+	}
+
+	private List<String> report() throws IOException {
+		return Files.readAllLines(this.reportFile, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return the XML report without its time stamp
+	 */
+	private String xmlReport() throws IOException {
+		String xml = new String(Files.readAllBytes(this.reportFile), StandardCharsets.UTF_8);
+		return xml.replaceAll("timestamp=\"[^\"]*\"", "");
+	}
+}
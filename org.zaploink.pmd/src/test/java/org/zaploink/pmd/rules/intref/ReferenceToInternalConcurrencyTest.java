@@ -0,0 +1,139 @@
+package org.zaploink.pmd.rules.intref;
+
+import static org.hamcrest.CoreMatchers.endsWith;
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.sourceforge.pmd.lang.ast.Node;
+
+/**
+ * Runs {@link ReferenceToInternal} concurrently over many files and compares the violations to a single-threaded run.
+ * The files refer to internal types by import, by fully qualified name and by simple names that bind to an on-demand
+ * import, so that each kind of reference looks up the file context of its thread.
+ */
+public class ReferenceToInternalConcurrencyTest {
+	private static final int FILES = 400;
+	private static final int THREADS = 8;
+	private static final String[] PACKAGES = { "com.acme.client", "com.acme.foo", "com.acme.bar",
+			"com.acme.foo.internal", "com.acme.baz" };
+	private static final String[] IMPORTS = { "java.util.List", "java.util.*", "com.acme.foo.Foo",
+			"com.acme.foo.internal.Item", "com.acme.foo.internal.*", "com.acme.bar.Bar", "com.acme.bar.internal.*",
+			"com.acme.bar.internal.Base", "com.acme.baz.sub.Zob" };
+	private static final String[] MEMBERS = { "\tprivate com.acme.foo.internal.Item item;\n",
+			"\tprivate java.util.List<com.acme.bar.internal.Base> bases;\n",
+			"\tprivate Object bar = com.acme.bar.internal.Bar.INSTANCE;\n",
+			"\tprivate Widget widget;\n",
+			"\tprivate com.acme.foo.Foo foo;\n" };
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void apply_concurrentlyWithSharedRule_reportsSameViolationsAsSingleThreaded() throws Exception {
+		List<File> sourceFiles = new ArrayList<>();
+		List<Node> files = new ArrayList<>();
+		for (int i = 0; i < FILES; i++) {
+			File sourceFile = write(i);
+			sourceFiles.add(sourceFile);
+			files.add(RuleRunner.parse(sourceFile.getName(), source(i)));
+		}
+
+		List<String> expected = new ArrayList<>();
+		ReferenceToInternal singleThreaded = RuleRunner.referenceToInternal(RuleRunner.acmeResolver());
+		for (int i = 0; i < FILES; i++) {
+			expected.addAll(RuleRunner.apply(singleThreaded, sourceFiles.get(i), files.get(i)));
+		}
+		Collections.sort(expected);
+		// by import, by fully qualified type and name and by a simple name bound to an on-demand import
+		assertThat(expected, hasItem(endsWith(": com.acme.foo.internal.Item")));
+		assertThat(expected, hasItem(endsWith(": com.acme.bar.internal.Base")));
+		assertThat(expected, hasItem(endsWith(": com.acme.bar.internal.Bar")));
+		assertThat(expected, hasItem(endsWith(": com.acme.bar.internal")));
+
+		for (int round = 0; round < 3; round++) {
+			ReferenceToInternal rule = RuleRunner.referenceToInternal(RuleRunner.acmeResolver());
+			List<String> actual = applyConcurrently(rule, sourceFiles, files);
+			assertThat(actual.size(), is(expected.size()));
+			assertThat(actual, is(expected));
+		}
+	}
+
+	private static List<String> applyConcurrently(ReferenceToInternal rule, List<File> sourceFiles, List<Node> files)
+			throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			ConcurrentLinkedQueue<String> violations = new ConcurrentLinkedQueue<>();
+			CountDownLatch startSignal = new CountDownLatch(1);
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < THREADS; t++) {
+				int thread = t;
+				futures.add(executor.submit(() -> {
+					startSignal.await();
+					for (int i = thread; i < FILES; i += THREADS) {
+						violations.addAll(RuleRunner.apply(rule, sourceFiles.get(i), files.get(i)));
+					}
+					return null;
+				}));
+			}
+			startSignal.countDown();
+			for (Future<?> future : futures) {
+				future.get();
+			}
+			List<String> result = new ArrayList<>(violations);
+			Collections.sort(result);
+			return result;
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Writes the source to its package directory, simple names only bind to an on-demand import if the types of the
+	 * own package are known.
+	 */
+	private File write(int i) throws IOException {
+		String packageDir = PACKAGES[i % PACKAGES.length].replace('.', '/');
+		File file = new File(this.tmp.getRoot(), String.format("src/main/java/%s/File%d.java", packageDir, i));
+		Files.createDirectories(file.getParentFile().toPath());
+		Files.write(file.toPath(), source(i).getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	private static String source(int i) {
+		Random random = new Random(i);
+		StringBuilder sb = new StringBuilder();
+		sb.append("package ").append(PACKAGES[i % PACKAGES.length]).append(";\n\n");
+		for (int k = 0; k < 3; k++) {
+			sb.append("import ").append(IMPORTS[random.nextInt(IMPORTS.length)]).append(";\n");
+		}
+		sb.append("\npublic class File").append(i).append(" {\n");
+		List<String> members = new ArrayList<>(Arrays.asList(MEMBERS));
+		Collections.shuffle(members, random);
+		for (String member : members.subList(0, 3)) {
+			sb.append(member);
+		}
+		sb.append("}\n");
+		return sb.toString();
+	}
+}
@@ -0,0 +1,328 @@
+package org.zaploink.pmd.rules.intref;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ReferenceToInternalTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private ReferenceToInternal rule;
+
+	@Before
+	public void setUp() throws IOException {
+		DomainResolver dr = RuleRunner.acmeResolver();
+		this.rule = RuleRunner.referenceToInternal(dr);
+	}
+
+	@Test
+	public void apply_fullyQualifiedTypes_areChecked() {
+		String source = "package com.acme.client;\n\n"
+				+ "public class Client extends com.acme.foo.internal.Base {\n"
+				+ "\tprivate java.util.List<com.acme.foo.internal.Item> items;\n"
+				+ "\tprivate com.acme.foo.Foo foo;\n\n"
+				+ "\tvoid run() {\n"
+				+ "\t\tcom.acme.bar.internal.Bar.create().run();\n"
+				+ "\t\tObject x = com.acme.bar.internal.Bar.INSTANCE;\n"
+				+ "\t}\n"
+				+ "}\n";
+
+		assertThat(RuleRunner.apply(this.rule, "Client.java", source), is(Arrays.asList(
+				"Client.java:3: Reference to internal class of module 'foo': com.acme.foo.internal.Base",
+				"Client.java:4: Reference to internal class of module 'foo': com.acme.foo.internal.Item",
+				"Client.java:8: Reference to internal class of module 'bar': com.acme.bar.internal.Bar",
+				"Client.java:9: Reference to internal class of module 'bar': com.acme.bar.internal.Bar")));
+	}
+
+	@Test
+	public void apply_fullyQualifiedTypesOfOwnDomain_areOk() {
+		String source = "package com.acme.foo;\n\n"
+				+ "public class Foo {\n"
+				+ "\tprivate com.acme.foo.internal.Item item = new com.acme.foo.internal.Item();\n\n"
+				+ "\tclass Nested extends com.acme.foo.internal.Base {\n"
+				+ "\t}\n"
+				+ "}\n";
+
+		assertThat(RuleRunner.apply(this.rule, "Foo.java", source), is(Collections.<String> emptyList()));
+	}
+
+	@Test
+	public void apply_wildcardImports_areReportedIfUsed() throws IOException {
+		File source = write("src/main/java/com/acme/client/Client.java", "package com.acme.client;\n\n"
+				+ "import java.util.*;\n"
+				+ "import com.acme.foo.internal.*;\n\n"
+				+ "public class Client<T> {\n"
+				+ "\tprivate List<String> names = new ArrayList<>();\n"
+				+ "\tprivate T value;\n\n"
+				+ "\t@Override\n"
+				+ "\tpublic String toString() {\n"
+				+ "\t\treturn Item.describe(this.value);\n"
+				+ "\t}\n"
+				+ "}\n");
+
+		assertThat(RuleRunner.apply(this.rule, source), is(Arrays.asList(
+				"Client.java:4: Reference to internal class of module 'foo': com.acme.foo.internal")));
+	}
+
+	@Test
+	public void apply_wildcardImportWithOtherOnDemandImports_isReportedIfUsed() throws IOException {
+		// neither a public package nor a static on-demand import can hold internal types
+		File source = write("src/test/java/com/acme/client/ClientTest.java", "package com.acme.client;\n\n"
+				+ "import static org.junit.Assert.*;\n"
+				+ "import com.acme.foo.internal.*;\n"
+				+ "import com.acme.baz.*;\n"
+				+ "import org.junit.*;\n\n"
+				+ "public class ClientTest {\n"
+				+ "\tprivate Item item;\n"
+				+ "}\n");
+
+		assertThat(RuleRunner.apply(this.rule, source), is(Arrays.asList(
+				"ClientTest.java:4: Reference to internal class of module 'foo': com.acme.foo.internal")));
+	}
+
+	@Test
+	public void apply_severalInternalWildcardImports_areNotReported() throws IOException {
+		// Item may come from either package, it cannot be told apart without a classpath
+		File source = write("src/main/java/com/acme/baz/Baz.java", "package com.acme.baz;\n\n"
+				+ "import com.acme.foo.internal.*;\n"
+				+ "import com.acme.bar.internal.*;\n\n"
+				+ "class Baz {\n"
+				+ "\tItem item;\n"
+				+ "}\n");
+
+		assertThat(RuleRunner.apply(this.rule, source), is(Collections.<String> emptyList()));
+	}
+
+	@Test
+	public void apply_unknownSourceFile_doesNotBindToWildcardImport() {
+		// the types of the own package are unknown, Item may be one of them
+		String source = "package com.acme.client;\n\n"
+				+ "import com.acme.foo.internal.*;\n\n"
+				+ "public class Client {\n"
+				+ "\tprivate Item item;\n"
+				+ "}\n";
+
+		assertThat(RuleRunner.apply(this.rule, "Client.java", source), is(Collections.<String> emptyList()));
+	}
+
+	@Test
+	public void apply_typeOfOwnPackage_doesNotBindToWildcardImport() throws IOException {
+		File source = write("src/main/java/com/acme/client/Client.java", "package com.acme.client;\n\n"
+				+ "import com.acme.foo.internal.*;\n\n"
+				+ "public class Client {\n"
+				+ "\tprivate Helper helper;\n"
+				+ "}\n");
+		write("src/main/java/com/acme/client/Helper.java", "package com.acme.client;\n\nclass Helper {\n}\n");
+
+		assertThat(RuleRunner.apply(this.rule, source), is(Collections.<String> emptyList()));
+	}
+
+	@Test
+	public void apply_typeOfOwnPackageInOtherSourceRoot_doesNotBindToWildcardImport() throws IOException {
+		File source = write("src/test/java/com/acme/client/ClientTest.java", "package com.acme.client;\n\n"
+				+ "import com.acme.foo.internal.*;\n\n"
+				+ "public class ClientTest {\n"
+				+ "\tprivate Helper helper;\n"
+				+ "\tprivate Generated generated;\n"
+				+ "}\n");
+		write("src/main/java/com/acme/client/Helper.java", "package com.acme.client;\n\nclass Helper {\n}\n");
+		write("target/generated-sources/annotations/com/acme/client/Generated.java",
+				"package com.acme.client;\n\nclass Generated {\n}\n");
+
+		assertThat(RuleRunner.apply(this.rule, source), is(Collections.<String> emptyList()));
+	}
+
+	@Test
+	public void apply_directoryNotMatchingPackage_doesNotBindToWildcardImport() throws IOException {
+		// the source root is unknown, Item may be a type of the package in any other source root
+		File source = write("Client.java", "package com.acme.client;\n\n"
+				+ "import com.acme.foo.internal.*;\n\n"
+				+ "public class Client {\n"
+				+ "\tprivate Item item;\n"
+				+ "}\n");
+
+		assertThat(RuleRunner.apply(this.rule, source), is(Collections.<String> emptyList()));
+	}
+
+	@Test
+	public void apply_unusedWildcardImports_areOk() {
+		String source = "package com.acme.client;\n\n"
+				+ "import java.util.*;\n"
+				+ "import com.acme.foo.internal.*;\n"
+				+ "import com.acme.bar.Bar;\n\n"
+				+ "public class Client<T> {\n"
+				+ "\tprivate static final int MAX = 10;\n"
+				+ "\tprivate Map<String, Bar> bars = new HashMap<>();\n\n"
+				+ "\tClient(T value) throws IllegalArgumentException {\n"
+				+ "\t\tSystem.out.println(MAX + Nested.SIZE + Mode.ON.name());\n"
+				+ "\t}\n\n"
+				+ "\tstatic class Nested {\n"
+				+ "\t\tstatic final int SIZE = 1;\n"
+				+ "\t}\n\n"
+				+ "\tenum Mode {\n"
+				+ "\t\tON\n"
+				+ "\t}\n"
+				+ "}\n";
+
+		assertThat(RuleRunner.apply(this.rule, "Client.java", source), is(Collections.<String> emptyList()));
+	}
+
+	@Test
+	public void apply_staticImports_checkTheDeclaringType() {
+		String source = "package com.acme.client;\n\n"
+				+ "import static com.acme.foo.internal.Util.helper;\n"
+				+ "import static com.acme.bar.internal.Constants.*;\n"
+				+ "import static com.acme.baz.Baz.create;\n\n"
+				+ "public class Client {\n"
+				+ "}\n";
+
+		assertThat(RuleRunner.apply(this.rule, "Client.java", source), is(Arrays.asList(
+				"Client.java:3: Reference to internal class of module 'foo': com.acme.foo.internal.Util",
+				"Client.java:4: Reference to internal class of module 'bar': com.acme.bar.internal.Constants")));
+	}
+
+	@Test
+	public void apply_importsOfSeveralAndNestedClasses_areReportedOnce() {
+		String source = "package com.acme.client;\n\n"
+				+ "import com.acme.foo.internal.Item;\n\n"
+				+ "public class Client {\n"
+				+ "\tclass Inner {\n"
+				+ "\t\tclass Innermost {\n"
+				+ "\t\t}\n"
+				+ "\t}\n"
+				+ "}\n\n"
+				+ "interface Helper {\n"
+				+ "}\n";
+
+		assertThat(RuleRunner.apply(this.rule, "Client.java", source), is(Arrays.asList(
+				"Client.java:3: Reference to internal class of module 'foo': com.acme.foo.internal.Item")));
+	}
+
+	@Test
+	public void apply_topLevelEnumsAndAnnotationTypes_areChecked() {
+		String enumSource = "package com.acme.client;\n\n"
+				+ "import com.acme.foo.internal.Item;\n\n"
+				+ "public enum Mode {\n"
+				+ "\tON;\n\n"
+				+ "\tstatic class Nested extends com.acme.bar.internal.Base {\n"
+				+ "\t}\n"
+				+ "}\n";
+		String annotationSource = "package com.acme.client;\n\n"
+				+ "import com.acme.foo.internal.Item;\n\n"
+				+ "public @interface Marker {\n"
+				+ "\tClass<?> value() default com.acme.bar.internal.Base.class;\n"
+				+ "}\n";
+
+		assertThat(RuleRunner.apply(this.rule, "Mode.java", enumSource), is(Arrays.asList(
+				"Mode.java:3: Reference to internal class of module 'foo': com.acme.foo.internal.Item",
+				"Mode.java:8: Reference to internal class of module 'bar': com.acme.bar.internal.Base")));
+		assertThat(RuleRunner.apply(this.rule, "Marker.java", annotationSource), is(Arrays.asList(
+				"Marker.java:3: Reference to internal class of module 'foo': com.acme.foo.internal.Item",
+				"Marker.java:6: Reference to internal class of module 'bar': com.acme.bar.internal.Base")));
+	}
+
+	@Test
+	public void apply_allowedDependencies_mayAccessPrivateParts() throws IOException {
+		String config = RuleRunner.ACME_CONFIG.substring(0, RuleRunner.ACME_CONFIG.length() - 1)
+				+ ", \"allowedDependencies\" : { \"client\" : [ \"foo\" ] } }";
+		DomainResolver dr = RuleRunner.resolver(config);
+		String source = "package com.acme.client;\n\n"
+				+ "import com.acme.foo.internal.Item;\n"
+				+ "import com.acme.bar.internal.Bar;\n\n"
+				+ "public class Client extends com.acme.foo.internal.Base {\n"
+				+ "}\n";
+
+		assertThat(RuleRunner.apply(RuleRunner.referenceToInternal(dr), "Client.java", source), is(Arrays.asList(
+				"Client.java:4: Reference to internal class of module 'bar': com.acme.bar.internal.Bar")));
+	}
+
+	@Test
+	public void apply_subDomains_mayAccessPrivatePartsOfParentDomains() throws IOException {
+		String config = "{ \"explicitDomainDeclarations\" : { "
+				+ domain("payments", "com.acme.payments") + ", "
+				+ domain("payments.refunds", "com.acme.payments.refunds") + ", "
+				+ domain("payments.fees", "com.acme.payments.fees") + " } }";
+		ReferenceToInternal rule = RuleRunner.referenceToInternal(RuleRunner.resolver(config));
+		String refund = "package com.acme.payments.refunds;\n\n"
+				+ "import com.acme.payments.internal.Ledger;\n"
+				+ "import com.acme.payments.fees.internal.Fee;\n\n"
+				+ "public class Refund {\n"
+				+ "}\n";
+		String payment = "package com.acme.payments;\n\n"
+				+ "import com.acme.payments.refunds.internal.RefundQueue;\n\n"
+				+ "public class Payment {\n"
+				+ "}\n";
+
+		assertThat(RuleRunner.apply(rule, "Refund.java", refund), is(Arrays.asList(
+				"Refund.java:4: Reference to internal class of module 'payments.fees': "
+						+ "com.acme.payments.fees.internal.Fee")));
+		assertThat(RuleRunner.apply(rule, "Payment.java", payment), is(Arrays.asList(
+				"Payment.java:3: Reference to internal class of module 'payments.refunds': "
+						+ "com.acme.payments.refunds.internal.RefundQueue")));
+	}
+
+	@Test
+	public void apply_privatePackagesOfSubDomains_belongToTheSubDomain() throws IOException {
+		// the parent domain is declared first, its private package contains the one of the sub-domain
+		String config = "{ \"explicitDomainDeclarations\" : { "
+				+ "\"payments\" : { \"privateParts\" : { \"packages\" : [ \"com.acme.payments.internal\" ] } }, "
+				+ "\"payments.refunds\" : { \"privateParts\" : { \"packages\" : [ "
+				+ "\"com.acme.payments.internal.refunds\" ] } }, "
+				+ domain("payments.fees", "com.acme.payments.fees") + " } }";
+		ReferenceToInternal rule = RuleRunner.referenceToInternal(RuleRunner.resolver(config));
+		String fee = "package com.acme.payments.fees;\n\n"
+				+ "import com.acme.payments.internal.Ledger;\n"
+				+ "import com.acme.payments.internal.refunds.RefundQueue;\n\n"
+				+ "public class Fee {\n"
+				+ "}\n";
+
+		assertThat(RuleRunner.apply(rule, "Fee.java", fee), is(Arrays.asList(
+				"Fee.java:4: Reference to internal class of module 'payments.refunds': "
+						+ "com.acme.payments.internal.refunds.RefundQueue")));
+	}
+
+	private File write(String relativePath, String source) throws IOException {
+		File file = new File(this.tmp.getRoot(), relativePath);
+		Files.createDirectories(file.getParentFile().toPath());
+		Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	private static String domain(String name, String publicPackage) {
+		return String.format("\"%s\" : { \"publicParts\" : { \"packages\" : [ \"%s\" ] }, "
+				+ "\"privateParts\" : { \"packages\" : [ \"%s.internal\" ] } }", name, publicPackage, publicPackage);
+	}
+
+	@Test
+	public void simpleTypeNameLength() {
+		assertThat(ReferenceToInternal.simpleTypeNameLength("Foo", true), is(3));
+		assertThat(ReferenceToInternal.simpleTypeNameLength("Foo", false), is(-1));
+		assertThat(ReferenceToInternal.simpleTypeNameLength("foo", true), is(-1));
+		assertThat(ReferenceToInternal.simpleTypeNameLength("Map.Entry", true), is(3));
+		assertThat(ReferenceToInternal.simpleTypeNameLength("Foo.bar", false), is(3));
+		assertThat(ReferenceToInternal.simpleTypeNameLength("MAX_SIZE.x", false), is(-1));
+	}
+
+	@Test
+	public void qualifiedTypeLength() {
+		assertThat(ReferenceToInternal.qualifiedTypeLength("Foo"), is(-1));
+		assertThat(ReferenceToInternal.qualifiedTypeLength("foo"), is(-1));
+		assertThat(ReferenceToInternal.qualifiedTypeLength("Map.Entry"), is(-1));
+		assertThat(ReferenceToInternal.qualifiedTypeLength("list.size"), is(-1));
+		assertThat(ReferenceToInternal.qualifiedTypeLength("com.acme.Foo"), is(12));
+		assertThat(ReferenceToInternal.qualifiedTypeLength("com.acme.Foo.Inner.create"), is(12));
+	}
+}
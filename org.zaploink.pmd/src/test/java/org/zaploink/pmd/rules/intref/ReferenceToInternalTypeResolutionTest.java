@@ -0,0 +1,79 @@
+package org.zaploink.pmd.rules.intref;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.zaploink.pmd.rules.intref.typeres.foo.Foo;
+
+public class ReferenceToInternalTypeResolutionTest {
+	private static final String PACKAGE = "org.zaploink.pmd.rules.intref.typeres";
+	private static final String CONFIG = "{ \"automaticDomainRecognition\" : { "
+			+ "\"publicPackages\" : [ \"org\\\\.zaploink\\\\.pmd\\\\.rules\\\\.intref\\\\.typeres\\\\.([^\\\\.]+)\" ], "
+			+ "\"privatePackages\" : [ "
+			+ "\"org\\\\.zaploink\\\\.pmd\\\\.rules\\\\.intref\\\\.typeres\\\\.([^\\\\.]+)\\\\.internal\" ] } }";
+
+	private DomainResolver dr;
+	private ClassMetadataCache classMetadata;
+	private ReferenceToInternal rule;
+
+	@Before
+	public void setUp() throws IOException {
+		this.dr = RuleRunner.resolver(CONFIG);
+		this.classMetadata = new ClassMetadataCache(100);
+		this.rule = new ReferenceToInternal(new ReferenceToInternal.Dependencies(this.dr).classMetadata(this.classMetadata));
+		this.rule.setMessage(RuleRunner.MESSAGE);
+	}
+
+	@Test
+	public void apply_typesImportedOnDemand_areReportedWhereUsed() {
+		String source = "package " + PACKAGE + ".client;\n\n"
+				+ "import " + PACKAGE + ".foo.*;\n"
+				+ "import " + PACKAGE + ".foo.internal.*;\n\n"
+				+ "public class Client {\n"
+				+ "\tprivate Foo foo;\n"
+				+ "\tprivate Item item;\n"
+				+ "\tprivate Item other;\n"
+				+ "}\n";
+
+		assertThat(RuleRunner.apply(this.rule, "Client.java", source), is(Arrays.asList(
+				"Client.java:8: Reference to internal class of module 'foo': " + PACKAGE + ".foo.internal.Item")));
+	}
+
+	@Test
+	public void apply_inheritedTypes_areReported() {
+		String source = "package " + PACKAGE + ".client;\n\n"
+				+ "import " + PACKAGE + ".foo.Foo;\n\n"
+				+ "public class Client extends Foo {\n"
+				+ "}\n";
+
+		assertThat(RuleRunner.apply(this.rule, "Client.java", source), is(Arrays.asList(
+				"Client.java:5: Reference to internal class of module 'foo': " + PACKAGE + ".foo.internal.AbstractFoo",
+				"Client.java:5: Reference to internal class of module 'foo': " + PACKAGE + ".foo.internal.Item")));
+	}
+
+	@Test
+	public void apply_inheritedTypesOfOwnDomain_areOk() {
+		String source = "package " + PACKAGE + ".foo;\n\n"
+				+ "public class SpecialFoo extends Foo {\n"
+				+ "\tprivate Foo delegate;\n"
+				+ "}\n";
+
+		assertThat(RuleRunner.apply(this.rule, "SpecialFoo.java", source), is(Collections.<String> emptyList()));
+	}
+
+	@Test
+	public void getInheritedTypes_isCached() {
+		String[] inheritedTypes = this.classMetadata.getInheritedTypes(Foo.class);
+
+		assertThat(Arrays.asList(inheritedTypes),
+				is(Arrays.asList(PACKAGE + ".foo.internal.AbstractFoo", PACKAGE + ".foo.internal.Item")));
+		assertThat(this.classMetadata.getInheritedTypes(Foo.class) == inheritedTypes, is(true));
+		assertThat(this.classMetadata.size(), is(2)); // Foo and AbstractFoo
+	}
+}
@@ -0,0 +1,92 @@
+package org.zaploink.pmd.rules.intref;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReferenceToUpperLayerTest {
+	private static final String MESSAGE = "Reference to class of upper layer ''{0}'' from layer ''{1}'': {2}";
+	private static final String CONFIG = "{ \"layers\" : [ "
+			+ "{ \"name\" : \"api\", \"packages\" : [ \"com\\\\.acme\\\\.[^\\\\.]+\\\\.api(\\\\..*)?\" ] }, "
+			+ "{ \"name\" : \"service\", \"packages\" : [ \"com\\\\.acme\\\\.[^\\\\.]+\\\\.service(\\\\..*)?\" ] }, "
+			+ "{ \"name\" : \"storage\", \"packages\" : [ \"com\\\\.acme\\\\.[^\\\\.]+\\\\.storage(\\\\..*)?\" ] } ] }";
+
+	private DomainResolver dr;
+	private ReferenceToUpperLayer rule;
+
+	@Before
+	public void setUp() throws IOException {
+		this.dr = RuleRunner.resolver(CONFIG);
+		this.rule = new ReferenceToUpperLayer(this.dr);
+		this.rule.setMessage(MESSAGE);
+	}
+
+	@Test
+	public void apply_importsOfUpperLayers_areReported() {
+		String source = "package com.acme.foo.storage;\n\n"
+				+ "import java.util.List;\n"
+				+ "import com.acme.bar.storage.BarData;\n"
+				+ "import com.acme.foo.service.FooService;\n"
+				+ "import com.acme.foo.api.FooApi.Nested;\n"
+				+ "import static com.acme.foo.service.Constants.MAX;\n"
+				+ "import com.acme.bar.api.*;\n\n"
+				+ "public class FooRepository {\n"
+				+ "}\n";
+
+		assertThat(RuleRunner.apply(this.rule, "FooRepository.java", source), is(Arrays.asList(
+				"FooRepository.java:5: Reference to class of upper layer 'service' from layer 'storage': "
+						+ "com.acme.foo.service.FooService",
+				"FooRepository.java:6: Reference to class of upper layer 'api' from layer 'storage': "
+						+ "com.acme.foo.api.FooApi.Nested",
+				"FooRepository.java:7: Reference to class of upper layer 'service' from layer 'storage': "
+						+ "com.acme.foo.service.Constants",
+				"FooRepository.java:8: Reference to class of upper layer 'api' from layer 'storage': "
+						+ "com.acme.bar.api")));
+	}
+
+	@Test
+	public void apply_importsOfLowerLayers_areOk() {
+		String source = "package com.acme.foo.api;\n\n"
+				+ "import com.acme.foo.service.FooService;\n"
+				+ "import com.acme.foo.storage.internal.FooData;\n\n"
+				+ "public class FooApi {\n"
+				+ "}\n";
+
+		assertThat(RuleRunner.apply(this.rule, "FooApi.java", source), is(Collections.<String> emptyList()));
+	}
+
+	@Test
+	public void apply_classOutsideOfLayers_isNotChecked() {
+		String source = "package com.acme.util;\n\n"
+				+ "import com.acme.foo.api.FooApi;\n\n"
+				+ "public class Util {\n"
+				+ "}\n";
+
+		assertThat(RuleRunner.apply(this.rule, "Util.java", source), is(Collections.<String> emptyList()));
+	}
+
+	@Test
+	public void rankOf_isCachedPerPackage() {
+		LayerIndex layers = this.dr.getLayers();
+		assertThat(layers.rankOf("com.acme.foo.service"), is(1));
+		assertThat(layers.rankOf("com.acme.foo.service"), is(1));
+		assertThat(layers.rankOf("com.acme.foo.storage.sub"), is(2));
+		assertThat(layers.rankOf("org.other"), is(LayerIndex.NO_LAYER));
+		assertThat(layers.nameOf(0), is("api"));
+	}
+
+	@Test
+	public void packageName() {
+		assertThat(ReferenceToUpperLayer.packageName("com.acme.Foo", false), is("com.acme"));
+		assertThat(ReferenceToUpperLayer.packageName("com.acme.Foo.Bar", false), is("com.acme"));
+		assertThat(ReferenceToUpperLayer.packageName("com.acme", true), is("com.acme"));
+		assertThat(ReferenceToUpperLayer.packageName("Foo", false), is(""));
+		assertThat(ReferenceToUpperLayer.packageName("com.acme.foo", false), is("com.acme"));
+	}
+}
@@ -0,0 +1,68 @@
+package org.zaploink.pmd.rules.intref;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.zaploink.pmd.rules.intref.DomainElement.Type;
+
+public class ResolutionCacheTest {
+
+	private static final ResolvedDomain FOO = new ResolvedDomain("foo", Type.PUBLIC, 0, new int[] { 0 });
+
+	private final AtomicInteger resolved = new AtomicInteger();
+
+	private ResolvedDomain resolve(String nodeName, String packageName) {
+		this.resolved.incrementAndGet();
+		return packageName.startsWith("com.foo") ? FOO : ResolvedDomain.NONE;
+	}
+
+	@Test
+	public void get_sameNameTwice_resolvesOnce() {
+		ResolutionCache cache = new ResolutionCache(10, this::resolve);
+
+		assertThat(cache.get("com.foo.Bar", 7), is(sameInstance(FOO)));
+		assertThat(cache.get("com.foo.Bar", 7), is(sameInstance(FOO)));
+		assertThat(cache.get("java.util.List", 9), is(sameInstance(ResolvedDomain.NONE)));
+
+		assertThat(this.resolved.get(), is(2));
+		assertThat(cache.getHitCount(), is(1L));
+		assertThat(cache.getMissCount(), is(2L));
+	}
+
+	@Test
+	public void get_sameNameDifferentPackage_isResolvedAgain() {
+		ResolutionCache cache = new ResolutionCache(10, this::resolve);
+
+		assertThat(cache.get("com.foo.Outer.Inner", 7), is(sameInstance(FOO)));
+		assertThat(cache.get("com.foo.Outer.Inner", 13), is(sameInstance(FOO)));
+
+		assertThat(cache.getMissCount(), is(2L));
+	}
+
+	@Test
+	public void get_moreNamesThanMaxSize_evicts() {
+		ResolutionCache cache = new ResolutionCache(3, this::resolve);
+
+		for (int i = 0; i < 10; i++) {
+			cache.get("com.foo.C" + i, 7);
+		}
+
+		assertThat(cache.size(), is(3));
+		assertThat(cache.getEvictionCount(), is(7L));
+	}
+
+	@Test
+	public void get_disabledCache_alwaysResolves() {
+		ResolutionCache cache = new ResolutionCache(0, this::resolve);
+
+		cache.get("com.foo.Bar", 7);
+		cache.get("com.foo.Bar", 7);
+
+		assertThat(this.resolved.get(), is(2));
+		assertThat(cache.size(), is(0));
+	}
+}
@@ -0,0 +1,124 @@
+package org.zaploink.pmd.rules.intref;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.zaploink.pmd.rules.intref.config.RuleConfigData;
+import org.zaploink.pmd.rules.intref.config.RuleConfigFingerprint;
+import org.zaploink.pmd.rules.intref.config.RuleConfigReader;
+import org.zaploink.pmd.rules.intref.config.RuleConfigReaderException;
+
+public class RuleConfigCompilerTest {
+	private static final String CONFIG = "{ \"version\" : 1, \"automaticDomainRecognition\" : { "
+			+ "\"publicPackages\" : [ \"com\\\\.acme\\\\.([^\\\\.]+)\" ], "
+			+ "\"privatePackages\" : [ \"com\\\\.acme\\\\.([^\\\\.]+)\\\\.internal\" ] }, "
+			+ "\"explicitDomainDeclarations\" : { \"legacy\" : { "
+			+ "\"publicParts\" : { \"packages\" : [ \"org.legacy.api\" ] }, "
+			+ "\"privateParts\" : { \"packages\" : [ \"org.legacy\" ], \"classes\" : [ \"org.Legacy\" ] } } }, "
+			+ "\"allowedDependencies\" : { \"foo\" : [ \"legacy\" ] }, "
+			+ "\"layers\" : [ { \"name\" : \"api\", \"packages\" : [ \"com\\\\.acme\\\\.[^\\\\.]+\" ] }, "
+			+ "{ \"name\" : \"legacy\", \"packages\" : [ \"org\\\\.legacy(\\\\..*)?\" ] } ] }";
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private Path configFile;
+
+	@Before
+	public void setUp() throws IOException {
+		this.configFile = this.tmp.newFile("ReferenceToInternal.ruleConfig").toPath();
+		Files.write(this.configFile, CONFIG.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void load_compiledConfig_isEqualToJsonConfig() throws IOException {
+		RuleConfigCompiler.compile(this.configFile, RuleConfigCompiler.binaryFileOf(this.configFile));
+
+		IndexedRuleConfig precompiled = RuleConfigCompiler.load(this.configFile);
+		RuleConfigData json = RuleConfigReader.DEFAULT_STRATEGY.readConfig(this.configFile);
+		assertThat(precompiled, is(notNullValue()));
+		assertThat(precompiled.getConfigFingerprint(), is(RuleConfigFingerprint.of(json)));
+		assertThat(precompiled.getExplicitDeclarationsFingerprint(),
+				is(RuleConfigFingerprint.of(json.getExplicitDomainDeclarations())));
+
+		DomainResolver resolver = precompiled.compile(100, null);
+		assertThat(resolver.resolve("com.acme.foo.internal.Foo", 21).toString(), is("private foo"));
+		assertThat(resolver.resolve("org.legacy.api.Api", 14).toString(), is("public legacy"));
+		assertThat(resolver.resolve("org.legacy.impl.Impl", 15).toString(), is("private legacy"));
+		assertThat(resolver.getLayers().rankOf("org.legacy.impl"), is(1));
+		assertThat(resolver.mayAccess(resolver.resolve("com.acme.foo.Foo", 12), resolver.resolve("org.Legacy", 3)),
+				is(true));
+	}
+
+	@Test
+	public void load_compiledSubDomains_resolveLikeJsonConfig() throws IOException {
+		String config = "{ \"explicitDomainDeclarations\" : { "
+				+ "\"payments\" : { \"publicParts\" : { \"packages\" : [ \"com.acme.payments\" ] }, "
+				+ "\"privateParts\" : { \"packages\" : [ \"com.acme.payments.internal\" ] } }, "
+				+ "\"payments.refunds\" : { \"publicParts\" : { \"classes\" : [ \"com.acme.payments.Refunds\" ] }, "
+				+ "\"privateParts\" : { \"packages\" : [ \"com.acme.payments.internal.refunds\" ], "
+				+ "\"classes\" : [ \"com.acme.payments.RefundJob\" ] } }, "
+				+ "\"billing\" : { \"privateParts\" : { "
+				+ "\"packages\" : [ \"com.acme.billing\", \"org.internal\" ] } } } }";
+		Files.write(this.configFile, config.getBytes(StandardCharsets.UTF_8));
+		RuleConfigCompiler.compile(this.configFile, RuleConfigCompiler.binaryFileOf(this.configFile));
+
+		DomainResolver precompiled = RuleConfigCompiler.load(this.configFile).compile(100, null);
+		DomainResolver json = new DomainResolver(RuleConfigReader.DEFAULT_STRATEGY.readConfig(this.configFile), 100);
+		for (String name : new String[] { "com.acme.payments.Api", "com.acme.payments.internal.Impl",
+				"com.acme.payments.internal.refunds.Job", "com.acme.payments.Refunds", "com.acme.payments.RefundJob",
+				"com.acme.billing.impl.Bill", "org.internal.Util", "org.other.Util" }) {
+			int packageLength = name.lastIndexOf('.');
+			assertThat(name, precompiled.resolve(name, packageLength).toString(),
+					is(json.resolve(name, packageLength).toString()));
+		}
+		assertThat(precompiled.mightHaveDomain("net.acme.Foo"), is(false));
+		assertThat(precompiled.mayAccess(precompiled.resolve("com.acme.payments.internal.refunds.Job", 34),
+				precompiled.resolve("com.acme.payments.internal.Impl", 26)), is(true));
+		assertThat(precompiled.mayAccess(precompiled.resolve("com.acme.payments.internal.Impl", 26),
+				precompiled.resolve("com.acme.payments.internal.refunds.Job", 34)), is(false));
+	}
+
+	@Test
+	public void load_changedJsonConfig_isNull() throws IOException {
+		RuleConfigCompiler.compile(this.configFile, RuleConfigCompiler.binaryFileOf(this.configFile));
+		Files.write(this.configFile, CONFIG.replace("internal", "impl").getBytes(StandardCharsets.UTF_8));
+
+		assertThat(RuleConfigCompiler.load(this.configFile), is(nullValue()));
+	}
+
+	@Test
+	public void load_jsonConfigChangedToSameSize_isNull() throws IOException {
+		RuleConfigCompiler.compile(this.configFile, RuleConfigCompiler.binaryFileOf(this.configFile));
+		FileTime compiled = Files.getLastModifiedTime(this.configFile);
+		Files.write(this.configFile, CONFIG.replace("foo", "bar").getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(this.configFile, FileTime.fromMillis(compiled.toMillis() + 60000));
+
+		assertThat(RuleConfigCompiler.load(this.configFile), is(nullValue()));
+	}
+
+	@Test(expected = RuleConfigReaderException.class)
+	public void compile_duplicateDomain_isInvalidLikeJsonConfig() throws IOException {
+		String config = "{ \"explicitDomainDeclarations\" : { \"foo\" : { }, \"foo\" : { } } }";
+		Files.write(this.configFile, config.getBytes(StandardCharsets.UTF_8));
+
+		RuleConfigCompiler.compile(this.configFile, RuleConfigCompiler.binaryFileOf(this.configFile));
+	}
+
+	@Test
+	public void load_withoutBinaryFile_isNull() {
+		assertThat(RuleConfigCompiler.load(this.configFile), is(nullValue()));
+	}
+}
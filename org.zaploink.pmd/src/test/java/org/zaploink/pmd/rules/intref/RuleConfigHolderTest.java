@@ -0,0 +1,206 @@
+package org.zaploink.pmd.rules.intref;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.zaploink.pmd.rules.intref.ResolverRegistry.Lease;
+import org.zaploink.pmd.rules.intref.RuleConfigHolder.CompiledConfig;
+import org.zaploink.pmd.rules.intref.config.RuleConfigData;
+import org.zaploink.pmd.rules.intref.config.RuleConfigReader;
+import org.zaploink.pmd.rules.intref.config.RuleConfigReader.RuleConfigReaderStrategy;
+import org.zaploink.pmd.rules.intref.config.RuleConfigReaderException;
+
+public class RuleConfigHolderTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private Path configFile;
+	// config file of the source files of project "b"
+	private Path projectConfigFile;
+
+	@Before
+	public void setUp() throws IOException {
+		this.configFile = this.tmp.newFile("ReferenceToInternal.ruleConfig").toPath();
+		write(RuleRunner.acmeConfig("internal"));
+		RuleConfigReader.setStrategy(new RuleConfigReaderStrategy() {
+			@Override
+			public RuleConfigData readConfig() throws RuleConfigReaderException {
+				return RuleConfigReader.DEFAULT_STRATEGY.readConfig(RuleConfigHolderTest.this.configFile);
+			}
+
+			@Override
+			public Path getConfigFile() {
+				return RuleConfigHolderTest.this.configFile;
+			}
+
+			@Override
+			public Path getConfigFile(File sourceFile) {
+				return sourceFile.getPath().startsWith("b") ? RuleConfigHolderTest.this.projectConfigFile : null;
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+		RuleConfigReader.setStrategy(RuleConfigReader.DEFAULT_STRATEGY);
+	}
+
+	@Test
+	public void refresh_unchangedConfig_keepsResolver() {
+		RuleConfigHolder holder = RuleConfigHolder.watching();
+		DomainResolver resolver = holder.get().getResolver();
+
+		holder.refresh();
+		assertThat(holder.get().getResolver(), is(sameInstance(resolver)));
+	}
+
+	@Test
+	public void refresh_changedConfig_reloadsAndReusesUnchangedParts() throws IOException {
+		RuleConfigHolder holder = RuleConfigHolder.watching();
+		DomainResolver resolver = holder.get().getResolver();
+		assertThat(resolver.resolve("com.acme.foo.impl.Foo", 17).getType(), is(DomainElement.Type.PUBLIC));
+
+		write(RuleRunner.acmeConfig("impl"));
+		holder.refresh();
+		DomainResolver reloaded = holder.get().getResolver();
+		assertThat(reloaded, is(not(sameInstance(resolver))));
+		assertThat(reloaded.sharesPartsWith(resolver), is(true));
+		assertThat(reloaded.resolve("com.acme.foo.impl.Foo", 17).getType(), is(DomainElement.Type.PRIVATE));
+	}
+
+	@Test
+	public void refresh_invalidConfig_keepsCurrentResolver() throws IOException {
+		RuleConfigHolder holder = RuleConfigHolder.watching();
+		DomainResolver resolver = holder.get().getResolver();
+
+		write("{ this is not json");
+		holder.refresh();
+		assertThat(holder.get().getResolver(), is(sameInstance(resolver)));
+	}
+
+	@Test
+	public void refresh_switchingConfigFiles_reusesCompiledConfigs() throws IOException {
+		ResolverRegistry registry = new ResolverRegistry(2);
+		Path firstFile = this.configFile;
+		RuleConfigHolder holder = RuleConfigHolder.watching(registry);
+		DomainResolver first = holder.get().getResolver();
+
+		this.configFile = this.tmp.newFile("other.ruleConfig").toPath();
+		write(RuleRunner.acmeConfig("impl"));
+		holder.refresh();
+		DomainResolver second = holder.get().getResolver();
+		assertThat(second, is(not(sameInstance(first))));
+
+		this.configFile = firstFile;
+		holder.refresh();
+		assertThat(holder.get().getResolver(), is(sameInstance(first)));
+		assertThat(registry.size(), is(2));
+	}
+
+	@Test
+	public void refresh_copyOfConfigFile_sharesCompiledConfig() throws IOException {
+		ResolverRegistry registry = new ResolverRegistry(2);
+		RuleConfigHolder holder = RuleConfigHolder.watching(registry);
+		DomainResolver first = holder.get().getResolver();
+
+		this.configFile = this.tmp.newFile("copy.ruleConfig").toPath();
+		write(RuleRunner.acmeConfig("internal"));
+		holder.refresh();
+		assertThat(holder.get().getResolver(), is(sameInstance(first)));
+		assertThat(registry.size(), is(1));
+	}
+
+	@Test
+	public void refresh_fullRegistry_evictsUnusedConfigs() throws IOException {
+		ResolverRegistry registry = new ResolverRegistry(1);
+		Path firstFile = this.configFile;
+		RuleConfigHolder holder = RuleConfigHolder.watching(registry);
+		DomainResolver first = holder.get().getResolver();
+
+		this.configFile = this.tmp.newFile("other.ruleConfig").toPath();
+		write(RuleRunner.acmeConfig("impl"));
+		holder.refresh();
+		assertThat(registry.size(), is(1));
+
+		this.configFile = firstFile;
+		holder.refresh();
+		assertThat(holder.get().getResolver(), is(not(sameInstance(first))));
+		assertThat(registry.size(), is(1));
+	}
+
+	@Test(timeout = 10000)
+	public void acquire_whileAnotherConfigIsCompiled_doesNotWait() throws Exception {
+		ResolverRegistry registry = new ResolverRegistry(4);
+		Path otherFile = this.tmp.newFile("other.ruleConfig").toPath();
+		Files.write(otherFile, RuleRunner.acmeConfig("impl").getBytes(StandardCharsets.UTF_8));
+		CompiledConfig config = new CompiledConfig(RuleRunner.acmeResolver(), null);
+		CountDownLatch compiling = new CountDownLatch(1);
+		CountDownLatch compiled = new CountDownLatch(1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<Lease> slow = executor.submit(() -> registry.acquire(this.configFile, () -> {
+				compiling.countDown();
+				try {
+					compiled.await();
+				}
+				catch (InterruptedException ex) {
+					throw new IllegalStateException(ex);
+				}
+				return config;
+			}));
+			compiling.await();
+
+			assertThat(registry.acquire(otherFile, () -> config).getConfig(), is(sameInstance(config)));
+			compiled.countDown();
+			assertThat(slow.get().getConfig(), is(sameInstance(config)));
+			assertThat(registry.size(), is(2));
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void get_sourceFileWithOwnConfig_usesItUntilInvalidated() throws IOException {
+		RuleConfigHolder holder = RuleConfigHolder.watching(new ResolverRegistry(4));
+		this.projectConfigFile = this.tmp.newFile("b.ruleConfig").toPath();
+		Files.write(this.projectConfigFile, RuleRunner.acmeConfig("impl").getBytes(StandardCharsets.UTF_8));
+
+		File sourceFile = new File("b/src/Foo.java");
+		DomainResolver projectResolver = holder.get(sourceFile).getResolver();
+		assertThat(holder.get(new File("a/src/Foo.java")).getResolver(), is(sameInstance(holder.get().getResolver())));
+		assertThat(projectResolver, is(not(sameInstance(holder.get().getResolver()))));
+		assertThat(projectResolver.resolve("com.acme.foo.impl.Foo", 17).getType(), is(DomainElement.Type.PRIVATE));
+		assertThat(holder.get(sourceFile).getResolver(), is(sameInstance(projectResolver)));
+
+		Files.write(this.projectConfigFile, RuleRunner.acmeConfig("hidden").getBytes(StandardCharsets.UTF_8));
+		assertThat(holder.get(sourceFile).getResolver(), is(sameInstance(projectResolver))); // not checked yet
+		RuleConfigReader.invalidate();
+		DomainResolver reloaded = holder.get(sourceFile).getResolver();
+		assertThat(reloaded, is(not(sameInstance(projectResolver))));
+		assertThat(reloaded.resolve("com.acme.foo.hidden.Foo", 19).getType(), is(DomainElement.Type.PRIVATE));
+		assertThat(holder.getAll().size(), is(2));
+	}
+
+	private void write(String content) throws IOException {
+		Files.write(this.configFile, content.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,118 @@
+package org.zaploink.pmd.rules.intref;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+import org.zaploink.pmd.rules.intref.config.RuleConfigData;
+import org.zaploink.pmd.rules.intref.config.RuleConfigReader;
+import org.zaploink.pmd.rules.intref.config.RuleConfigReaderException;
+
+public class RuleConfigStreamReaderTest {
+	private static final String CONFIG = "{ \"version\" : 1, \"explicitDomainDeclarations\" : { "
+			+ "\"payments\" : { \"publicParts\" : { \"packages\" : [ \"com.acme.payments\" ] }, "
+			+ "\"privateParts\" : { \"packages\" : [ \"com.acme.payments.internal\" ] } }, "
+			+ "\"payments.refunds\" : { "
+			+ "\"privateParts\" : { \"packages\" : [ \"com.acme.payments.internal.refunds\" ] } }, "
+			+ "\"legacy\" : { \"publicParts\" : { \"classes\" : [ \"org.legacy.Api\" ] }, "
+			+ "\"privateParts\" : { \"packages\" : [ \"org.legacy\" ], \"classes\" : [ \"Legacy\" ] } } }, "
+			+ "\"unknown\" : [ 1, 2 ], "
+			+ "\"automaticDomainRecognition\" : { "
+			+ "\"privatePackages\" : [ \"net\\\\.acme\\\\.([^\\\\.]+)\\\\.internal\" ] }, "
+			+ "\"allowedDependencies\" : { \"payments\" : [ \"legacy\" ] }, "
+			+ "\"layers\" : [ { \"name\" : \"api\", \"packages\" : [ \"com\\\\.acme\\\\.[^\\\\.]+\" ] } ] }";
+
+	@Test
+	public void read_config_isCompiledLikeBoundConfig() throws IOException {
+		RuleConfigData bound = RuleConfigReader.DEFAULT_STRATEGY.readConfig(new StringReader(CONFIG));
+		DomainResolver expected = new DomainResolver(bound, 100, null);
+		DomainResolver resolver = RuleConfigStreamReader.read(new StringReader(CONFIG), 100, null);
+
+		assertThat(resolver.getConfigFingerprint(), is(expected.getConfigFingerprint()));
+		assertThat(resolver.getRootPackageFilter().toString(), is(expected.getRootPackageFilter().toString()));
+		for (String className : new String[] { "com.acme.payments.Payment", "com.acme.payments.internal.Ledger",
+				"com.acme.payments.internal.refunds.RefundQueue", "org.legacy.Api", "org.legacy.impl.Impl", "Legacy",
+				"net.acme.foo.internal.Foo", "java.util.List" }) {
+			int packageLength = Math.max(0, className.lastIndexOf('.'));
+			assertThat(className, resolver.resolve(className, packageLength).toString(),
+					is(expected.resolve(className, packageLength).toString()));
+		}
+		assertThat(resolver.getLayers().rankOf("com.acme.payments"), is(0));
+		assertThat(resolver.mayAccess(resolver.resolve("com.acme.payments.Payment", 17),
+				resolver.resolve("org.legacy.impl.Impl", 15)), is(true));
+	}
+
+	@Test
+	public void read_unchangedDeclarations_reusesPreviousIndex() throws IOException {
+		DomainResolver previous = RuleConfigStreamReader.read(new StringReader(CONFIG), 100, null);
+		DomainResolver resolver = RuleConfigStreamReader.read(
+				new StringReader(CONFIG.replace("\"version\" : 1", "\"version\" : 2")), 100, previous);
+
+		assertThat(resolver.getConfigFingerprint().equals(previous.getConfigFingerprint()), is(false));
+		assertThat(resolver.sharesPartsWith(previous), is(true));
+	}
+
+	@Test
+	public void read_repeatedly_reusesFreedDomainIds() throws IOException {
+		DomainResolver resolver = null;
+		for (int i = 0; i < 100; i++) {
+			String config = CONFIG.replace("\"payments\" : [ \"legacy\" ]",
+					"\"payments\" : [ \"legacy\" ], \"tmp" + i + "\" : [ \"payments\" ]");
+			resolver = RuleConfigStreamReader.read(new StringReader(config), 100, resolver);
+			assertThat(resolver.mayAccess(resolve(resolver, "net.acme.tmp" + i + ".internal.Foo"),
+					resolver.resolve("com.acme.payments.internal.Ledger", 26)), is(true));
+		}
+
+		// payments, payments.refunds, legacy and the last tmp domain (recognized and allowed)
+		assertThat(resolver.getDomainIdCount(), is(4));
+		assertThat(resolver.mayAccess(resolver.resolve("com.acme.payments.internal.refunds.RefundQueue", 34),
+				resolver.resolve("com.acme.payments.internal.Ledger", 26)), is(true));
+		assertThat(resolver.mayAccess(resolver.resolve("com.acme.payments.internal.Ledger", 26),
+				resolver.resolve("com.acme.payments.internal.refunds.RefundQueue", 34)), is(false));
+		assertThat(resolver.mayAccess(resolver.resolve("com.acme.payments.Payment", 17),
+				resolver.resolve("org.legacy.impl.Impl", 15)), is(true));
+	}
+
+	private static ResolvedDomain resolve(DomainResolver resolver, String className) {
+		return resolver.resolve(className, className.lastIndexOf('.'));
+	}
+
+	@Test
+	public void read_emptyDocument_isNull() throws IOException {
+		assertThat(RuleConfigStreamReader.read(new StringReader(" "), 100, null), is(nullValue()));
+	}
+
+	@Test(expected = RuleConfigReaderException.class)
+	public void read_duplicateDomain_isInvalid() throws IOException {
+		RuleConfigStreamReader.read(new StringReader("{ \"explicitDomainDeclarations\" : { "
+				+ "\"foo\" : { }, \"foo\" : { } } }"), 100, null);
+	}
+
+	@Test
+	public void read_partsInOtherOrder_haveSameFingerprint() throws IOException {
+		DomainResolver resolver = RuleConfigStreamReader.read(new StringReader(CONFIG), 100, null);
+		String publicParts = "\"publicParts\" : { \"packages\" : [ \"com.acme.payments\" ] }";
+		String privateParts = "\"privateParts\" : { \"packages\" : [ \"com.acme.payments.internal\" ] }";
+		String reordered = CONFIG.replace(publicParts + ", " + privateParts, privateParts.replace(" ] }",
+				" ], \"classes\" : null }") + ", " + publicParts);
+
+		assertThat(reordered.equals(CONFIG), is(false));
+		assertThat(RuleConfigStreamReader.read(new StringReader(reordered), 100, null).getConfigFingerprint(),
+				is(resolver.getConfigFingerprint()));
+	}
+
+	@Test(expected = RuleConfigReaderException.class)
+	public void read_duplicatePart_isInvalid() throws IOException {
+		RuleConfigStreamReader.read(new StringReader("{ \"explicitDomainDeclarations\" : { "
+				+ "\"foo\" : { \"publicParts\" : { }, \"publicParts\" : { } } } }"), 100, null);
+	}
+
+	@Test(expected = RuleConfigReaderException.class)
+	public void read_truncatedDocument_isInvalid() throws IOException {
+		RuleConfigStreamReader.read(new StringReader(CONFIG.substring(0, CONFIG.length() / 2)), 100, null);
+	}
+}
@@ -0,0 +1,117 @@
+package org.zaploink.pmd.rules.intref;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.management.JMX;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class RuleMetricsTest {
+
+	@Test
+	public void apply_withMetrics_countsFilesImportsAndViolations() throws IOException {
+		RuleMetrics metrics = new RuleMetrics();
+		DomainResolver dr = RuleRunner.acmeResolver();
+		ReferenceToInternal rule = new ReferenceToInternal(new ReferenceToInternal.Dependencies(dr).metrics(metrics));
+		rule.setMessage(RuleRunner.MESSAGE);
+		String source = "package com.acme.client;\n\n"
+				+ "import java.util.List;\n"
+				+ "import com.acme.foo.internal.Item;\n"
+				+ "import com.acme.bar.internal.Bar;\n"
+				+ "import com.acme.bar.Api;\n\n"
+				+ "public class Client {\n"
+				+ "\tprivate com.acme.bar.internal.Other other;\n"
+				+ "}\n";
+
+		RuleRunner.apply(rule, "Client.java", source);
+
+		Map<String, Long> violations = new TreeMap<>();
+		violations.put("bar", 2L);
+		violations.put("foo", 1L);
+		assertThat(metrics.getFilesProcessed(), is(1L));
+		assertThat(metrics.getFilesFromAnalysisCache(), is(0L));
+		assertThat(metrics.getImportsResolved(), is(3L)); // java.util.List is rejected by the fast path
+		assertThat(metrics.getViolations(), is(3L));
+		assertThat(metrics.getViolationsPerDomain(), is(violations));
+
+		metrics.reset();
+		assertThat(metrics.getFilesProcessed(), is(0L));
+		assertThat(metrics.getViolationsPerDomain(), is(Collections.<String, Long> emptyMap()));
+	}
+
+	@Test
+	public void resolved_latencies_areCountedInPowerOfTwoBuckets() {
+		RuleMetrics metrics = new RuleMetrics();
+		metrics.resolved(0);
+		metrics.resolved(100); // [64, 128)
+		metrics.resolved(127);
+		metrics.resolved(128); // [128, 256)
+		metrics.resolved(Long.MAX_VALUE);
+
+		long[] histogram = metrics.getResolutionLatencyHistogram();
+		assertThat(histogram[0], is(1L));
+		assertThat(histogram[7], is(2L));
+		assertThat(histogram[8], is(1L));
+		assertThat(histogram[histogram.length - 1], is(1L));
+		assertThat(metrics.getResolutions(), is(5L));
+		assertThat(metrics.latencyQuantile(0.5), is(128L));
+	}
+
+	@Test
+	public void cacheHitRatio_isHitsPerAccessOfTrackedResolvers() throws IOException {
+		RuleMetrics metrics = new RuleMetrics();
+		assertThat(metrics.getCacheHitRatio(), is(0.0));
+		DomainResolver dr = RuleRunner.acmeResolver();
+		metrics.track(dr);
+		dr.resolve("com.acme.Foo", 8);
+		dr.resolve("com.acme.Foo", 8);
+		dr.resolve("com.acme.Foo", 8);
+		dr.resolve("com.acme.Bar", 8);
+
+		assertThat(metrics.getCacheHitRatio(), is(0.5));
+	}
+
+	@Test
+	public void fastPathRejects_areReadFromTrackedResolversSinceReset() throws IOException {
+		RuleMetrics metrics = new RuleMetrics();
+		DomainResolver dr = RuleRunner.acmeResolver();
+		dr.mightHaveDomain("java.util.List");
+		metrics.track(dr);
+		dr.mightHaveDomain("java.util.Map");
+		dr.mightHaveDomain("com.acme.foo.Foo");
+		assertThat(metrics.getFastPathRejects(), is(1L));
+
+		metrics.reset();
+		assertThat(metrics.getFastPathRejects(), is(0L));
+		dr.mightHaveDomain("java.util.Set");
+		assertThat(metrics.getFastPathRejects(), is(1L));
+		assertThat(dr.getFastPathRejectCount(), is(3L));
+	}
+
+	@Test
+	public void metrics_areReadableViaJmx() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName("org.zaploink.pmd:type=ReferenceToInternalTest,name=Metrics");
+		RuleMetrics metrics = new RuleMetrics();
+		metrics.violation("foo");
+		server.registerMBean(metrics, name);
+		try {
+			RuleMetricsMXBean proxy = JMX.newMXBeanProxy(server, name, RuleMetricsMXBean.class);
+			assertThat(proxy.getViolations(), is(1L));
+			assertThat(proxy.getViolationsPerDomain(), is(Collections.singletonMap("foo", 1L)));
+		}
+		finally {
+			server.unregisterMBean(name);
+		}
+	}
+}
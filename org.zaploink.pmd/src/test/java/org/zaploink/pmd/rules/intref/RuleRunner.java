@@ -0,0 +1,129 @@
+package org.zaploink.pmd.rules.intref;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.zaploink.pmd.rules.intref.config.RuleConfigReader;
+
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.lang.LanguageRegistry;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.LanguageVersionHandler;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.java.JavaLanguageModule;
+
+/**
+ * Parses Java sources and applies a rule to them, like a PMD run restricted to that rule would do.
+ */
+class RuleRunner {
+	static final String MESSAGE = "Reference to internal class of module ''{0}'': {1}";
+
+	private static final LanguageVersion JAVA = LanguageRegistry.getLanguage(JavaLanguageModule.NAME)
+			.getDefaultVersion();
+
+	/**
+	 * Rule config of the tests: domains <code>com.acme.&lt;domain&gt;</code> with their private parts in
+	 * <code>com.acme.&lt;domain&gt;.internal</code>.
+	 */
+	static final String ACME_CONFIG = acmeConfig("internal");
+
+	/**
+	 * @return rule config of domains <code>com.acme.&lt;domain&gt;</code> with their private parts in the given
+	 *         sub-package
+	 */
+	static String acmeConfig(String privatePackage) {
+		return "{ \"automaticDomainRecognition\" : { "
+				+ "\"publicPackages\" : [ \"com\\\\.acme\\\\.([^\\\\.]+)\" ], "
+				+ "\"privatePackages\" : [ \"com\\\\.acme\\\\.([^\\\\.]+)\\\\." + privatePackage + "\" ] } }";
+	}
+
+	/**
+	 * @return resolver of the {@link #ACME_CONFIG}
+	 */
+	static DomainResolver acmeResolver() throws IOException {
+		return resolver(ACME_CONFIG);
+	}
+
+	static DomainResolver resolver(String config) throws IOException {
+		return new DomainResolver(RuleConfigReader.DEFAULT_STRATEGY.readConfig(new StringReader(config)));
+	}
+
+	static ReferenceToInternal referenceToInternal(DomainResolver resolver) {
+		ReferenceToInternal rule = new ReferenceToInternal(new ReferenceToInternal.Dependencies(resolver));
+		rule.setMessage(MESSAGE);
+		return rule;
+	}
+
+	static Node parse(String fileName, String source) {
+		return parse(fileName, source, false);
+	}
+
+	/**
+	 * @param typeResolution
+	 *            <code>true</code> to resolve the types from the test class path (like PMD does with the
+	 *            auxclasspath)
+	 */
+	static Node parse(String fileName, String source, boolean typeResolution) {
+		LanguageVersionHandler handler = JAVA.getLanguageVersionHandler();
+		Node compilationUnit = handler.getParser(handler.getDefaultParserOptions())
+				.parse(fileName, new StringReader(source));
+		// scopes are needed to report violations
+		handler.getSymbolFacade().start(compilationUnit);
+		if (typeResolution) {
+			handler.getTypeResolutionFacade(RuleRunner.class.getClassLoader()).start(compilationUnit);
+		}
+		return compilationUnit;
+	}
+
+	/**
+	 * @return violations formatted as <code>fileName:line: message</code>
+	 */
+	static List<String> apply(Rule rule, String fileName, Node compilationUnit) {
+		return apply(rule, fileName, null, compilationUnit);
+	}
+
+	static List<String> apply(Rule rule, File sourceFile) throws IOException {
+		String source = new String(Files.readAllBytes(sourceFile.toPath()), StandardCharsets.UTF_8);
+		return apply(rule, sourceFile, parse(sourceFile.getName(), source));
+	}
+
+	static List<String> apply(Rule rule, File sourceFile, Node compilationUnit) {
+		return apply(rule, sourceFile.getName(), sourceFile, compilationUnit);
+	}
+
+	private static List<String> apply(Rule rule, String fileName, File sourceFile, Node compilationUnit) {
+		RuleContext ctx = new RuleContext();
+		ctx.setReport(new Report());
+		ctx.setLanguageVersion(JAVA);
+		ctx.setSourceCodeFilename(fileName);
+		ctx.setSourceCodeFile(sourceFile);
+		// applied like PMD does (rules may use the rule chain)
+		RuleSets ruleSets = new RuleSets(RuleSet.createFor("test", rule));
+		ruleSets.start(ctx);
+		ruleSets.apply(Collections.singletonList(compilationUnit), ctx, JAVA.getLanguage());
+		ruleSets.end(ctx);
+
+		List<String> violations = new ArrayList<>();
+		for (Iterator<RuleViolation> it = ctx.getReport().iterator(); it.hasNext();) {
+			RuleViolation violation = it.next();
+			violations.add(String.format("%s:%d: %s", fileName, violation.getBeginLine(), violation.getDescription()));
+		}
+		return violations;
+	}
+
+	static List<String> apply(Rule rule, String fileName, String source) {
+		return apply(rule, fileName, parse(fileName, source, rule.usesTypeResolution()));
+	}
+}
@@ -0,0 +1,9 @@
+package org.zaploink.pmd.rules.intref.typeres.foo;
+
+import org.zaploink.pmd.rules.intref.typeres.foo.internal.AbstractFoo;
+
+/**
+ * Public class of domain foo that extends an internal class (fixture of the type resolution tests).
+ */
+public class Foo extends AbstractFoo {
+}
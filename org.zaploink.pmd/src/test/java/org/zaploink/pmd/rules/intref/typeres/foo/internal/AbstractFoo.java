@@ -0,0 +1,10 @@
+package org.zaploink.pmd.rules.intref.typeres.foo.internal;
+
+/**
+ * Internal base class of domain foo (fixture of the type resolution tests).
+ */
+public abstract class AbstractFoo {
+	protected void handle(Item item) {
+		// nothing to do
+	}
+}
@@ -0,0 +1,7 @@
+package org.zaploink.pmd.rules.intref.typeres.foo.internal;
+
+/**
+ * Internal class of domain foo (fixture of the type resolution tests).
+ */
+public class Item {
+}